@@ -0,0 +1,92 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Generation of points into a reused block, one operation per point. Run
+ * with -prof gc to check the bytes allocated per point
+ * (gc.alloc.rate.norm), which only include the sources and the cluster
+ * index created every time the plan is exhausted.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlockFillBenchmark {
+
+    static final int BLOCK_SIZE = 1024;
+
+    @Param({"10000000"})
+    public int points;
+
+    @Param({"2", "6", "12"})
+    public int dimensionality;
+
+    @Param({"8"})
+    public int clusters;
+
+    @Param({"0.1"})
+    public double noiseRatio;
+
+    @Param({"SEQUENTIAL", "CHUNKED"})
+    public GenerationPlan.Mode mode;
+
+    @Param({"LEGACY", "FAST"})
+    public GenerationPlan.RandomEngine randomEngine;
+
+    GaussianPointSpliterator source;
+    PointBlock block;
+
+    @Setup
+    public void setup() {
+        block = new PointBlock(dimensionality, BLOCK_SIZE);
+        restart();
+    }
+
+    void restart() {
+        GenerationPlan plan = GridDatasets.plan(points, dimensionality, clusters, noiseRatio, mode);
+        plan.setRandomEngine(randomEngine);
+        source = new GaussianPointSpliterator(plan, BLOCK_SIZE);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BLOCK_SIZE)
+    public PointBlock fill() {
+        if (!source.fill(block, null)) {
+            restart();
+            source.fill(block, null);
+        }
+        return block;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Blocks of points of a single cluster, sampled from the truncated Gaussian,
+ * for an axis-aligned cluster and for the same cluster randomly rotated.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class CovarianceBenchmark {
+
+    static final int POINTS = 1 << 30;
+
+    @Param({"16", "64"})
+    public int dimensionality;
+
+    @Param({"1024"})
+    public int blockSize;
+
+    PointSource axisAligned;
+    PointSource rotated;
+    PointBlock block;
+
+    @Setup
+    public void setup() {
+        Random rand = new Random(100);
+        int[][] centers = new int[1][dimensionality];
+        int[][] radii = new int[1][dimensionality];
+        for (int k = 0; k < dimensionality; k++) {
+            centers[0][k] = 1000;
+            radii[0][k] = 50 + rand.nextInt(150);
+        }
+        axisAligned = source(centers, radii, null);
+        rotated = source(centers, radii, ClusterCovariance.rotated(radii[0], rand));
+        block = new PointBlock(dimensionality, blockSize);
+    }
+
+    PointSource source(int[][] centers, int[][] radii, ClusterCovariance covariance) {
+        GenerationPlan plan = new GenerationPlan(GridDatasets.domain(dimensionality), centers, radii, new int[]{POINTS}, 0, 100);
+        plan.setChunkSize(POINTS);
+        plan.setClusterSampling(GenerationPlan.ClusterSampling.TRUNCATED);
+        if (covariance != null) {
+            plan.setCovariance(0, covariance);
+        }
+        return plan.createSources().get(0);
+    }
+
+    @Benchmark
+    public PointBlock axisAligned() {
+        block.clear();
+        axisAligned.fill(block, null);
+        return block;
+    }
+
+    @Benchmark
+    public PointBlock rotated() {
+        block.clear();
+        rotated.fill(block, null);
+        return block;
+    }
+}
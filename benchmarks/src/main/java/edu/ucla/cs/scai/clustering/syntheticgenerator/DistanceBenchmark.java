@@ -0,0 +1,95 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Distances of points from the clusters, used to label every point. Every
+ * invocation processes one point, taken from a fixed set of random points of
+ * the domain.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DistanceBenchmark {
+
+    static final int N_POINTS = 4096;
+
+    @Param({"2", "4", "6", "8", "10", "12"})
+    public int dimensionality;
+
+    @Param({"1", "2", "4", "8", "16", "32"})
+    public int clusters;
+
+    int[][] centers;
+    int[][] radii;
+    int[][] points;
+    ClusterIndex.Search search;
+    int next;
+
+    @Setup
+    public void setup() {
+        GridRunner.Job job = GridDatasets.job(100000, dimensionality, clusters, 0.1);
+        centers = job.getCenters();
+        radii = job.getRadii();
+        Range domain = GridDatasets.domain(dimensionality);
+        Random rand = new Random(100);
+        points = new int[N_POINTS][];
+        for (int i = 0; i < N_POINTS; i++) {
+            points[i] = domain.getRandomInnerCell(rand);
+        }
+        search = new ClusterIndex(centers, radii).newSearch();
+    }
+
+    int[] nextPoint() {
+        next = (next + 1) & (N_POINTS - 1);
+        return points[next];
+    }
+
+    @Benchmark
+    public double ellipticalRelativeDistance() {
+        int[] p = nextPoint();
+        return MultidimensionalGaussianGenerator.ellipticalRelativeDistance(centers[next % clusters], radii[next % clusters], p);
+    }
+
+    @Benchmark
+    public int clusterContainer() {
+        return MultidimensionalGaussianGenerator.clusterContainer(nextPoint(), centers, radii);
+    }
+
+    @Benchmark
+    public int clusterIndexContainer() {
+        return search.container(nextPoint());
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * End-to-end generation of a dataset of the grid, either consumed block by
+ * block without being written, or written to a file. The points and bytes
+ * counters give points/s and bytes/s.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GenerateBenchmark {
+
+    @Param({"100000"})
+    public int points;
+
+    @Param({"2", "4", "6", "8", "10", "12"})
+    public int dimensionality;
+
+    @Param({"0", "1", "2", "4", "8", "16", "32"})
+    public int clusters;
+
+    @Param({"0.1", "0"})
+    public double noiseRatio;
+
+    @Param({"SEQUENTIAL", "CHUNKED"})
+    public GenerationPlan.Mode mode;
+
+    GenerationPlan plan;
+    File dir;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("bench").toFile();
+    }
+
+    @Setup(Level.Invocation)
+    public void createPlan() {
+        //plans keep the statistics of their samplers, thus every invocation uses a new plan
+        plan = GridDatasets.plan(points, dimensionality, clusters, noiseRatio, mode);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        GridDatasets.delete(new File(dir, "bench.data").getPath());
+    }
+
+    @Benchmark
+    public void generateToNullSink(Throughput counters, Blackhole bh) throws IOException {
+        MultidimensionalGaussianGenerator.forEachBlock(plan, GaussianPointSpliterator.DEFAULT_BLOCK_SIZE, block -> {
+            bh.consume(block.getCoords());
+            counters.points += block.getSize();
+        });
+    }
+
+    @Benchmark
+    public void generateToFile(Throughput counters) throws IOException {
+        String fileName = new File(dir, "bench.data").getPath();
+        MultidimensionalGaussianGenerator.generate(fileName, plan);
+        counters.points += plan.getNumberOfPoints();
+        counters.bytes += new File(fileName).length() + new File(fileName + "_labels").length();
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Datasets of the benchmarks, with the clusters placed as in the experiment
+ * grid of GenerateGaussian.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+class GridDatasets {
+
+    static final int DOMAIN_WIDTH = 2000;
+
+    static Range domain(int dimensionality) {
+        int[] inf = new int[dimensionality];
+        int[] sup = new int[dimensionality];
+        for (int i = 0; i < dimensionality; i++) {
+            sup[i] = DOMAIN_WIDTH - 1;
+        }
+        return new Range(inf, sup);
+    }
+
+    static GridRunner.Job job(int points, int dimensionality, int clusters, double noiseRatio) {
+        GridConfig config = new GridConfig();
+        config.setDataSetSizes(new int[]{points});
+        config.setDimensions(new int[]{dimensionality});
+        config.setClusters(new int[]{clusters});
+        config.setNoiseRatios(new double[]{noiseRatio});
+        config.zeroClustersNoiseRatios = new double[]{noiseRatio};
+        return new GridRunner(config).createJobs().get(0);
+    }
+
+    static GenerationPlan plan(int points, int dimensionality, int clusters, double noiseRatio, GenerationPlan.Mode mode) {
+        GridRunner.Job job = job(points, dimensionality, clusters, noiseRatio);
+        GenerationPlan plan = new GenerationPlan(domain(dimensionality), points, job.getCenters(), job.getRadii(), noiseRatio, 100);
+        plan.setMode(mode);
+        return plan;
+    }
+
+    /**
+     * Generates a dataset in a new temporary directory and returns the name
+     * of its .data file.
+     */
+    static String generate(int points, int dimensionality, int clusters, double noiseRatio) throws IOException {
+        File dir = Files.createTempDirectory("bench").toFile();
+        String fileName = new File(dir, "bench.data").getPath();
+        MultidimensionalGaussianGenerator.generate(fileName, plan(points, dimensionality, clusters, noiseRatio, GenerationPlan.Mode.SEQUENTIAL));
+        return fileName;
+    }
+
+    /**
+     * Deletes the files of a dataset and the temporary directory containing
+     * them.
+     */
+    static void delete(String fileName) {
+        File dir = new File(fileName).getParentFile();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        dir.delete();
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Images of a dataset of the grid: createImage, which also encodes the PNG,
+ * and the rendering alone, in scatter and density mode.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageBenchmark {
+
+    @Param({"100000"})
+    public int points;
+
+    @Param({"2"})
+    public int dimensionality;
+
+    @Param({"4"})
+    public int clusters;
+
+    @Param({"0.1"})
+    public double noiseRatio;
+
+    String fileName;
+    long bytes;
+    Range domain;
+
+    @Setup
+    public void setup() throws IOException {
+        fileName = GridDatasets.generate(points, dimensionality, clusters, noiseRatio);
+        bytes = new File(fileName).length() + new File(fileName + "_labels").length();
+        domain = GridDatasets.domain(dimensionality);
+    }
+
+    @TearDown
+    public void tearDown() {
+        GridDatasets.delete(fileName);
+    }
+
+    @Benchmark
+    public void createImage(Throughput counters) throws IOException {
+        MultidimensionalGaussianGenerator.createImage(fileName, fileName + "_labels", domain, true);
+        counters.points += points;
+        counters.bytes += bytes;
+    }
+
+    @Benchmark
+    public PointRaster renderScatter(Throughput counters) throws IOException {
+        PointRaster raster = new ImageRenderer(domain).render(fileName, fileName + "_labels");
+        counters.points += points;
+        counters.bytes += bytes;
+        return raster;
+    }
+
+    @Benchmark
+    public PointRaster renderDensity(Throughput counters) throws IOException {
+        PointRaster raster = new ImageRenderer(domain).setScale(4).setMode(PointRaster.Mode.DENSITY).render(fileName, fileName + "_labels");
+        counters.points += points;
+        counters.bytes += bytes;
+        raster.getImage();
+        return raster;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Distances of one high-dimensional point from all the clusters, computed by
+ * the scalar and by the default DistanceKernel, which is vectorized since the
+ * forked JVM is started with the jdk.incubator.vector module.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class KernelBenchmark {
+
+    @Param({"16", "128", "1024"})
+    public int dimensionality;
+
+    @Param({"32"})
+    public int clusters;
+
+    double[] centers;
+    double[] inverseRadii;
+    double[] point;
+    double[] distances;
+
+    @Setup
+    public void setup() {
+        Random rand = new Random(100);
+        centers = new double[clusters * dimensionality];
+        inverseRadii = new double[clusters * dimensionality];
+        for (int i = 0; i < centers.length; i++) {
+            centers[i] = rand.nextInt(2000);
+            inverseRadii[i] = 1.0 / (1 + rand.nextInt(500));
+        }
+        point = new double[dimensionality];
+        for (int k = 0; k < dimensionality; k++) {
+            point[k] = rand.nextInt(2000);
+        }
+        distances = new double[clusters];
+        if (!DistanceKernel.check(DistanceKernel.DEFAULT)) {
+            throw new IllegalStateException("The kernels return different distances");
+        }
+    }
+
+    @Benchmark
+    public double[] scalar() {
+        DistanceKernel.SCALAR.distances(centers, inverseRadii, clusters, point, dimensionality, distances);
+        return distances;
+    }
+
+    @Benchmark
+    public double[] vector() {
+        DistanceKernel.DEFAULT.distances(centers, inverseRadii, clusters, point, dimensionality, distances);
+        return distances;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Random values used to generate the points: Gaussian coordinates of the
+ * clusters and uniform cells of the noise, drawn from java.util.Random and
+ * from a SplittableRandom, as by the LEGACY random engine in SEQUENTIAL and
+ * CHUNKED mode, and from a Xoshiro256Sampler, as by the FAST one.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SamplingBenchmark {
+
+    @Param({"2", "4", "6", "8", "10", "12"})
+    public int dimensionality;
+
+    Random rand;
+    RandomSampler splittableRand;
+    RandomSampler xoshiro;
+    Range domain;
+
+    @Setup
+    public void setup() {
+        rand = new Random(100);
+        splittableRand = RandomSampler.of(new SplittableRandom(100));
+        xoshiro = new Xoshiro256Sampler(100);
+        domain = GridDatasets.domain(dimensionality);
+    }
+
+    @Benchmark
+    public double getGaussian() {
+        return MultidimensionalGaussianGenerator.getGaussian(rand, 1000, 50);
+    }
+
+    @Benchmark
+    public double getGaussianZiggurat() {
+        return MultidimensionalGaussianGenerator.getGaussian(xoshiro, 1000, 50);
+    }
+
+    @Benchmark
+    public int[] getRandomInnerCell() {
+        return domain.getRandomInnerCell(rand);
+    }
+
+    @Benchmark
+    public int[] getRandomInnerCellSplittable() {
+        return domain.getRandomInnerCell(splittableRand);
+    }
+
+    @Benchmark
+    public int[] getRandomInnerCellXoshiro() {
+        return domain.getRandomInnerCell(xoshiro);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.StringTokenizer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing of a text dataset of the grid: line by line with readLine, as the
+ * original tools did, and with TextDataset on one and on all the available
+ * processors.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TextLoadBenchmark {
+
+    @Param({"1000000"})
+    public int points;
+
+    @Param({"2", "8"})
+    public int dimensionality;
+
+    @Param({"4"})
+    public int clusters;
+
+    @Param({"0.1"})
+    public double noiseRatio;
+
+    String fileName;
+    long bytes;
+
+    @Setup
+    public void setup() throws IOException {
+        fileName = GridDatasets.generate(points, dimensionality, clusters, noiseRatio);
+        bytes = new File(fileName).length() + new File(fileName + "_labels").length();
+    }
+
+    @TearDown
+    public void tearDown() {
+        GridDatasets.delete(fileName);
+    }
+
+    @Benchmark
+    public long readLine(Throughput counters) throws IOException {
+        long sum = 0;
+        try (
+                BufferedReader in1 = new BufferedReader(new FileReader(fileName));
+                BufferedReader in2 = new BufferedReader(new FileReader(fileName + "_labels"));) {
+            String l1 = in1.readLine();
+            String l2 = in2.readLine();
+            while (l1 != null && l2 != null) {
+                StringTokenizer st = new StringTokenizer(l1, ",");
+                while (st.hasMoreTokens()) {
+                    sum += Integer.parseInt(st.nextToken());
+                }
+                sum += Integer.parseInt(l2);
+                l1 = in1.readLine();
+                l2 = in2.readLine();
+            }
+        }
+        counters.points += points;
+        counters.bytes += bytes;
+        return sum;
+    }
+
+    @Benchmark
+    public TextDataset loadSingleThread(Throughput counters) throws IOException {
+        TextDataset dataset = TextDataset.load(fileName, fileName + "_labels", 1);
+        counters.points += points;
+        counters.bytes += bytes;
+        return dataset;
+    }
+
+    @Benchmark
+    public TextDataset load(Throughput counters) throws IOException {
+        TextDataset dataset = TextDataset.load(fileName, fileName + "_labels");
+        counters.points += points;
+        counters.bytes += bytes;
+        return dataset;
+    }
+}
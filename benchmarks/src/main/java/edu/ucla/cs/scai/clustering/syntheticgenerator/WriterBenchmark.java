@@ -0,0 +1,102 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writing of the points of a dataset with the PrintWriter-based output used
+ * originally by generate and with TextPointWriter.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WriterBenchmark {
+
+    @Param({"1000000"})
+    public int points;
+
+    @Param({"12"})
+    public int dimensionality;
+
+    int[][] rows;
+    File file;
+
+    @Setup
+    public void setup() throws IOException {
+        Random rand = new Random(100);
+        rows = new int[1024][dimensionality];
+        for (int[] p : rows) {
+            for (int k = 0; k < dimensionality; k++) {
+                p[k] = rand.nextInt(2000);
+            }
+        }
+        file = File.createTempFile("writer", ".data");
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public void printWriter(Throughput counters) throws IOException {
+        try (PrintWriter out = new PrintWriter(new FileOutputStream(file), true)) {
+            for (int i = 0; i < points; i++) {
+                int[] c = rows[i % rows.length];
+                for (int k = 0; k < dimensionality - 1; k++) {
+                    out.print(c[k] + ",");
+                }
+                out.println(c[c.length - 1]);
+            }
+        }
+        counters.points += points;
+        counters.bytes += file.length();
+    }
+
+    @Benchmark
+    public void textPointWriter(Throughput counters) throws IOException {
+        try (TextPointWriter out = new TextPointWriter(file.getPath())) {
+            for (int i = 0; i < points; i++) {
+                out.writePoint(rows[i % rows.length]);
+            }
+        }
+        counters.points += points;
+        counters.bytes += file.length();
+    }
+}
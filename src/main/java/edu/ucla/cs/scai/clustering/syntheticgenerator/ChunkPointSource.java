@@ -0,0 +1,170 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+import static edu.ucla.cs.scai.clustering.syntheticgenerator.DistanceKernel.relativeDistance;
+import java.util.SplittableRandom;
+
+/**
+ * Generates the points of a single chunk of a plan, using the random stream
+ * of the chunk.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+class ChunkPointSource implements PointSource {
+
+    final GenerationPlan plan;
+    final GenerationPlan.Chunk chunk;
+    final RandomSampler rand;
+    final double[] devStandard;
+    final TruncatedEllipsoidSampler sampler;
+    final CovarianceSampler covarianceSampler;
+    final CovarianceSampler.Batch batch;
+    final double[] scratch;
+    final long[] rejections = new long[2];
+    final ClusterIndex.Search search;
+    int remaining;
+
+    ChunkPointSource(GenerationPlan plan, GenerationPlan.Chunk chunk) {
+        this(plan, chunk, plan.chunkSeed(chunk.index));
+    }
+
+    /**
+     * Creates the source of a chunk using the random stream with the given
+     * seed instead of the stream of the chunk.
+     */
+    ChunkPointSource(GenerationPlan plan, GenerationPlan.Chunk chunk, long seed) {
+        this.plan = plan;
+        this.chunk = chunk;
+        rand = plan.randomEngine == GenerationPlan.RandomEngine.FAST ? new Xoshiro256Sampler(seed) : RandomSampler.of(new SplittableRandom(seed));
+        remaining = chunk.size;
+        int dimensionality = plan.getDimensionality();
+        devStandard = new double[dimensionality];
+        if (!chunk.isNoise()) {
+            for (int k = 0; k < dimensionality; k++) {
+                devStandard[k] = plan.radii[chunk.cluster][k] / 4.0; //99% of point will be within radius
+            }
+        }
+        covarianceSampler = chunk.isNoise() ? null : plan.getCovarianceSampler(chunk.cluster);
+        batch = covarianceSampler == null ? null : covarianceSampler.newBatch();
+        sampler = chunk.isNoise() || covarianceSampler != null ? null : plan.getTruncatedSampler(chunk.cluster);
+        scratch = sampler == null ? null : new double[dimensionality];
+        search = chunk.isNoise() ? plan.getClusterIndex().newSearch() : null;
+    }
+
+    @Override
+    public boolean fill(PointBlock block, ClusterStats stats) {
+        if (remaining == 0) {
+            return false;
+        }
+        long start = System.nanoTime();
+        int first = block.getSize();
+        if (covarianceSampler != null) {
+            addCovariancePoints(block, stats);
+        }
+        while (remaining > 0 && !block.isFull()) {
+            if (chunk.isNoise()) {
+                addNoisePoint(block, stats);
+            } else if (sampler != null) {
+                addTruncatedPoint(block, stats);
+            } else {
+                addClusterPoint(block, stats);
+            }
+            remaining--;
+        }
+        if (sampler != null) {
+            sampler.addCounts(block.getSize() - first, rejections);
+        } else if (covarianceSampler != null) {
+            covarianceSampler.addCounts(block.getSize() - first, rejections);
+        }
+        plan.report(chunk.cluster, block, first, rejections, System.nanoTime() - start);
+        rejections[TruncatedEllipsoidSampler.DOMAIN] = 0;
+        rejections[TruncatedEllipsoidSampler.ELLIPSE] = 0;
+        return true;
+    }
+
+    @Override
+    public long getRemaining() {
+        return remaining;
+    }
+
+    private void addClusterPoint(PointBlock block, ClusterStats stats) {
+        Range domain = plan.domain;
+        int i = chunk.cluster;
+        int[] center = plan.centers[i];
+        int[] radius = plan.radii[i];
+        //candidates are written directly into the next row of the block
+        int[] c = block.coords;
+        int offset = block.nextOffset();
+        clusterPoint:
+        while (true) {
+            for (int k = 0; k < devStandard.length; k++) {
+                int v = (int) (center[k] + rand.nextGaussian() * devStandard[k]);
+                c[offset + k] = v;
+                if (v < domain.getInfCoord(k + 1) || v > domain.getSupCoord(k + 1)) {
+                    rejections[TruncatedEllipsoidSampler.DOMAIN]++;
+                    continue clusterPoint;
+                }
+            }
+            if (relativeDistance(center, radius, c, offset) > 1) {
+                rejections[TruncatedEllipsoidSampler.ELLIPSE]++;
+                continue;
+            }
+            block.commit(i);
+            if (stats != null) {
+                stats.add(i, c, offset);
+            }
+            return;
+        }
+    }
+
+    private void addTruncatedPoint(PointBlock block, ClusterStats stats) {
+        int offset = block.nextOffset();
+        sampler.sample(rand, block.coords, offset, scratch, rejections);
+        block.commit(chunk.cluster);
+        if (stats != null) {
+            stats.add(chunk.cluster, block.coords, offset);
+        }
+    }
+
+    /**
+     * Fills the block, or adds the remaining points of the chunk, in
+     * batches.
+     */
+    private void addCovariancePoints(PointBlock block, ClusterStats stats) {
+        int n = Math.min(remaining, block.getCapacity() - block.getSize());
+        int offset = block.nextOffset();
+        covarianceSampler.sample(rand, block.coords, offset, n, batch, rejections);
+        for (int j = 0; j < n; j++) {
+            block.commit(chunk.cluster);
+            if (stats != null) {
+                stats.add(chunk.cluster, block.coords, offset + j * block.dimensionality);
+            }
+        }
+        remaining -= n;
+    }
+
+    private void addNoisePoint(PointBlock block, ClusterStats stats) {
+        int offset = block.nextOffset();
+        plan.domain.getRandomInnerCell(rand, block.coords, offset);
+        int nearestCluster = search.nearest(block.coords, offset);
+        int idCluster = search.getDistance() < 1 ? nearestCluster : -1;
+        block.commit(idCluster);
+        if (stats != null && nearestCluster >= 0) { //nearestCluster is -1 only if there are no clusters
+            stats.add(nearestCluster, block.coords, offset);
+        }
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+import java.util.Random;
+
+/**
+ * The covariance matrix S of a rotated cluster, with the precomputed
+ * factors used to sample and to test its points.
+ *
+ * As for the axis-aligned clusters, whose covariance is diagonal with
+ * standard deviation radius/4, the ellipsoid of the cluster is the set of
+ * points whose Mahalanobis distance from the center is at most 4, i.e., the
+ * points x such that (x - center)' S^-1 (x - center) / 16 &lt;= 1, and the
+ * left-hand side is the relative distance of x from the cluster. With the
+ * Cholesky factorization S = L L', a point is drawn as center + L z, with z
+ * standard Gaussian, and its relative distance is |W (x - center)|^2 with W
+ * = L^-1 / 4. In batches of points, as drawn by CovarianceSampler, the
+ * products are computed by DistanceKernel, vectorized if possible; for a
+ * single point, the columns of the triangular matrix times a scalar are
+ * added to the result. In both cases every coordinate of a product is summed
+ * in increasing order of the column, thus the relative distance of a point
+ * does not depend on how it is computed.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class ClusterCovariance {
+
+    /**
+     * Relative tolerance on the symmetry of the covariance matrix.
+     */
+    static final double SYMMETRY_TOLERANCE = 1e-9;
+
+    final int dimensionality;
+    final double[][] covariance;
+    //column k of L, i.e., factor[k * d + j] = L[j][k], which is 0 for j < k
+    final double[] factor;
+    //column k of W, i.e., whitening[k * d + j] = W[j][k], which is 0 for j < k
+    final double[] whitening;
+    final int[] boundingRadius;
+    final double roundingBound;
+
+    /**
+     * Creates the covariance of a cluster from a symmetric positive definite
+     * matrix.
+     */
+    public ClusterCovariance(double[][] covariance) {
+        int d = covariance.length;
+        dimensionality = d;
+        this.covariance = new double[d][];
+        for (int j = 0; j < d; j++) {
+            if (covariance[j].length != d) {
+                throw new IllegalArgumentException("The covariance matrix is not square");
+            }
+            this.covariance[j] = covariance[j].clone();
+            for (int k = 0; k < j; k++) {
+                double scale = Math.max(Math.abs(covariance[j][k]), Math.abs(covariance[k][j]));
+                if (Math.abs(covariance[j][k] - covariance[k][j]) > SYMMETRY_TOLERANCE * scale) {
+                    throw new IllegalArgumentException("The covariance matrix is not symmetric");
+                }
+            }
+        }
+        //Cholesky-Banachiewicz, on the lower triangle
+        double[][] l = new double[d][d];
+        for (int j = 0; j < d; j++) {
+            for (int k = 0; k <= j; k++) {
+                double s = covariance[j][k];
+                for (int m = 0; m < k; m++) {
+                    s -= l[j][m] * l[k][m];
+                }
+                if (j == k) {
+                    if (!(s > 0)) {
+                        throw new IllegalArgumentException("The covariance matrix is not positive definite");
+                    }
+                    l[j][j] = Math.sqrt(s);
+                } else {
+                    l[j][k] = s / l[k][k];
+                }
+            }
+        }
+        //L^-1 is lower triangular; its column k solves L x = e_k by forward substitution
+        factor = new double[d * d];
+        whitening = new double[d * d];
+        for (int k = 0; k < d; k++) {
+            double[] x = new double[d];
+            x[k] = 1 / l[k][k];
+            for (int j = k + 1; j < d; j++) {
+                double s = 0;
+                for (int m = k; m < j; m++) {
+                    s -= l[j][m] * x[m];
+                }
+                x[j] = s / l[j][j];
+            }
+            for (int j = k; j < d; j++) {
+                factor[k * d + j] = l[j][k];
+                whitening[k * d + j] = x[j] / 4;
+            }
+        }
+        boundingRadius = new int[d];
+        for (int k = 0; k < d; k++) {
+            boundingRadius[k] = (int) Math.ceil(4 * Math.sqrt(covariance[k][k]));
+        }
+        double s = 0;
+        for (int j = 0; j < d; j++) {
+            double row = 0;
+            for (int k = 0; k <= j; k++) {
+                row += Math.abs(whitening[k * d + j]);
+            }
+            s += row * row;
+        }
+        roundingBound = Math.sqrt(s);
+    }
+
+    /**
+     * Returns the covariance of a cluster whose ellipsoid has the given radii
+     * along its axes, which are randomly rotated: S = R D R', where D is
+     * diagonal with standard deviations radius/4 and R is a random
+     * orthogonal matrix, uniformly distributed, obtained by Gram-Schmidt
+     * orthonormalization of Gaussian vectors.
+     */
+    public static ClusterCovariance rotated(int[] radius, Random rand) {
+        int d = radius.length;
+        double[][] r = new double[d][d];
+        for (int i = 0; i < d; i++) {
+            while (true) {
+                for (int k = 0; k < d; k++) {
+                    r[i][k] = rand.nextGaussian();
+                }
+                for (int j = 0; j < i; j++) {
+                    double dot = 0;
+                    for (int k = 0; k < d; k++) {
+                        dot += r[i][k] * r[j][k];
+                    }
+                    for (int k = 0; k < d; k++) {
+                        r[i][k] -= dot * r[j][k];
+                    }
+                }
+                double norm = 0;
+                for (int k = 0; k < d; k++) {
+                    norm += r[i][k] * r[i][k];
+                }
+                norm = Math.sqrt(norm);
+                if (norm > 1e-6) {
+                    for (int k = 0; k < d; k++) {
+                        r[i][k] /= norm;
+                    }
+                    break;
+                }
+            }
+        }
+        //the rows of r are the axes of the ellipsoid
+        double[][] s = new double[d][d];
+        for (int j = 0; j < d; j++) {
+            for (int k = 0; k <= j; k++) {
+                double v = 0;
+                for (int i = 0; i < d; i++) {
+                    double dev = radius[i] / 4.0;
+                    v += r[i][j] * r[i][k] * dev * dev;
+                }
+                s[j][k] = v;
+                s[k][j] = v;
+            }
+        }
+        return new ClusterCovariance(s);
+    }
+
+    public int getDimensionality() {
+        return dimensionality;
+    }
+
+    /**
+     * Returns a copy of the covariance matrix.
+     */
+    public double[][] getCovariance() {
+        double[][] c = new double[dimensionality][];
+        for (int j = 0; j < dimensionality; j++) {
+            c[j] = covariance[j].clone();
+        }
+        return c;
+    }
+
+    /**
+     * Returns the half-widths of the bounding box of the ellipsoid, i.e.,
+     * 4 sqrt(S[k][k]) rounded up, which are used as the radii of the
+     * cluster.
+     */
+    public int[] getBoundingRadius() {
+        return boundingRadius.clone();
+    }
+
+    /**
+     * Returns an upper bound on |W t| for the vectors t whose coordinates are
+     * in (-1, 1), i.e., on how much the square root of the relative distance
+     * of a point can change when its coordinates are truncated to integers:
+     * the norm of the vector of the sums of the absolute values of the rows
+     * of W.
+     */
+    public double getRoundingBound() {
+        return roundingBound;
+    }
+
+    /**
+     * Writes into x the products of L and rows vectors stored in z, see
+     * DistanceKernel.multiply.
+     */
+    void transform(double[] z, double[] x, int stride, int rows) {
+        multiply(factor, z, x, stride, rows);
+    }
+
+    /**
+     * Writes into y the products of W and rows vectors stored in t, see
+     * DistanceKernel.multiply.
+     */
+    void whiten(double[] t, double[] y, int stride, int rows) {
+        multiply(whitening, t, y, stride, rows);
+    }
+
+    private void multiply(double[] m, double[] in, double[] out, int stride, int rows) {
+        DistanceKernel.DEFAULT.multiply(m, dimensionality, in, out, stride, rows);
+    }
+
+    /**
+     * Returns the relative distance of the point stored in p starting at
+     * offset from the cluster with the given center, using y as a scratch
+     * array of length d.
+     */
+    public double relativeDistance(int[] center, int[] p, int offset, double[] y) {
+        int d = dimensionality;
+        for (int j = 0; j < d; j++) {
+            y[j] = 0;
+        }
+        for (int k = 0; k < d; k++) {
+            double t = (double) p[offset + k] - center[k];
+            int col = k * d;
+            for (int j = k; j < d; j++) {
+                y[j] += whitening[col + j] * t;
+            }
+        }
+        double s = 0;
+        for (int j = 0; j < d; j++) {
+            s += y[j] * y[j];
+        }
+        return s;
+    }
+
+    public double relativeDistance(int[] center, int[] p) {
+        return relativeDistance(center, p, 0, new double[dimensionality]);
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+import static edu.ucla.cs.scai.clustering.syntheticgenerator.MultidimensionalGaussianGenerator.ellipticalRelativeDistance;
+import java.util.Arrays;
+
+/**
+ * A kd-tree over the clusters, used to find the cluster with the smallest
+ * elliptical relative distance from a point without computing the distance
+ * from every cluster.
+ *
+ * Every node stores the bounding box of the centers of its clusters and the
+ * largest radius of its clusters on every dimension. For a point p, the sum
+ * over the dimensions of (gap / largest radius)^2, where gap is the distance
+ * of p from the bounding box along the dimension, is a lower bound of the
+ * distance of p from every cluster of the node, so that nodes whose bound
+ * exceeds the best distance found so far are skipped.
+ *
+ * Among clusters at the same distance the one with the smallest index is
+ * chosen, thus the results are the same as those of a linear scan. The
+ * distances are computed by DistanceKernel.relativeDistance: in
+ * high-dimensional spaces the centers and the inverse radii are stored in
+ * flat arrays, and the distances are computed by DistanceKernel, vectorized
+ * if possible. An index that does not use the kernels, as in SEQUENTIAL mode
+ * with the LEGACY engine, computes them with ellipticalRelativeDistance, with
+ * the same results as MultidimensionalGaussianGenerator.nearestCluster. If
+ * some radius is not
+ * positive, distances can be infinite or NaN and the index falls back to a
+ * linear scan.
+ *
+ * The distance from a cluster with a covariance matrix is its Mahalanobis
+ * form computed by ClusterCovariance, and its radii are the half-widths h of
+ * the bounding box of its ellipsoid. Since (gap / h)^2 along any single
+ * dimension is a lower bound of that distance, but their sum is not, if some
+ * cluster has a covariance the maximum over the dimensions is used as the
+ * bound instead of the sum.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class ClusterIndex {
+
+    static final int LEAF_SIZE = 8;
+
+    /**
+     * Relative tolerance on the lower bounds, which are computed differently
+     * from the distances and might exceed them by rounding errors.
+     */
+    static final double BOUND_TOLERANCE = 1e-9;
+
+    final int[][] centers;
+    final int[][] radii;
+    final ClusterCovariance[] covariances;
+    final int dimensionality;
+    final boolean linear;
+    final boolean rotated;
+    final int[] order;
+    final DistanceKernel kernel;
+    final double[] flatCenters;
+    final double[] inverseRadii;
+    int[] lo;
+    int[] hi;
+    int[] left;
+    int[] right;
+    double[] min;
+    double[] max;
+    double[] maxRadius;
+    int nNodes;
+
+    public ClusterIndex(int[][] centers, int[][] radii) {
+        this(centers, radii, null);
+    }
+
+    /**
+     * Creates the index of clusters some of which may have a covariance
+     * matrix; covariances, or any of its elements, can be null.
+     */
+    public ClusterIndex(int[][] centers, int[][] radii, ClusterCovariance[] covariances) {
+        this(centers, radii, covariances, true);
+    }
+
+    /**
+     * Creates the index computing the distances of the axis-aligned clusters
+     * by DistanceKernel.relativeDistance if kernels is true, by
+     * ellipticalRelativeDistance otherwise.
+     */
+    public ClusterIndex(int[][] centers, int[][] radii, ClusterCovariance[] covariances, boolean kernels) {
+        this.centers = centers;
+        this.radii = radii;
+        boolean anyCovariance = false;
+        if (covariances != null) {
+            for (ClusterCovariance c : covariances) {
+                anyCovariance |= c != null;
+            }
+        }
+        this.covariances = anyCovariance ? covariances : null;
+        rotated = anyCovariance;
+        dimensionality = centers.length == 0 ? 0 : centers[0].length;
+        boolean positive = true;
+        for (int[] r : radii) {
+            for (int v : r) {
+                positive &= v > 0;
+            }
+        }
+        linear = !positive || centers.length <= LEAF_SIZE;
+        order = new int[centers.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        if (kernels && dimensionality >= DistanceKernel.MIN_DIMENSIONALITY) {
+            kernel = DistanceKernel.DEFAULT;
+            flatCenters = new double[centers.length * dimensionality];
+            inverseRadii = new double[centers.length * dimensionality];
+            for (int i = 0; i < centers.length; i++) {
+                for (int k = 0; k < dimensionality; k++) {
+                    flatCenters[i * dimensionality + k] = centers[i][k];
+                    inverseRadii[i * dimensionality + k] = 1.0 / radii[i][k];
+                }
+            }
+        } else {
+            kernel = null;
+            flatCenters = null;
+            inverseRadii = null;
+        }
+        if (!linear) {
+            int capacity = 2 * centers.length;
+            lo = new int[capacity];
+            hi = new int[capacity];
+            left = new int[capacity];
+            right = new int[capacity];
+            min = new double[capacity * dimensionality];
+            max = new double[capacity * dimensionality];
+            maxRadius = new double[capacity * dimensionality];
+            build(0, order.length);
+        }
+    }
+
+    private int build(int from, int to) {
+        int node = nNodes++;
+        lo[node] = from;
+        hi[node] = to;
+        left[node] = -1;
+        right[node] = -1;
+        int offset = node * dimensionality;
+        for (int k = 0; k < dimensionality; k++) {
+            min[offset + k] = Double.POSITIVE_INFINITY;
+            max[offset + k] = Double.NEGATIVE_INFINITY;
+        }
+        for (int j = from; j < to; j++) {
+            int i = order[j];
+            for (int k = 0; k < dimensionality; k++) {
+                min[offset + k] = Math.min(min[offset + k], centers[i][k]);
+                max[offset + k] = Math.max(max[offset + k], centers[i][k]);
+                maxRadius[offset + k] = Math.max(maxRadius[offset + k], radii[i][k]);
+            }
+        }
+        if (to - from > LEAF_SIZE) {
+            //split at the median of the dimension with the largest spread relative to the radii
+            int splitDim = 0;
+            double maxSpread = -1;
+            for (int k = 0; k < dimensionality; k++) {
+                double spread = (max[offset + k] - min[offset + k]) / maxRadius[offset + k];
+                if (spread > maxSpread) {
+                    maxSpread = spread;
+                    splitDim = k;
+                }
+            }
+            final int dim = splitDim;
+            Integer[] sorted = new Integer[to - from];
+            for (int j = from; j < to; j++) {
+                sorted[j - from] = order[j];
+            }
+            Arrays.sort(sorted, (i1, i2) -> Integer.compare(centers[i1][dim], centers[i2][dim]));
+            for (int j = from; j < to; j++) {
+                order[j] = sorted[j - from];
+            }
+            int mid = (from + to) >>> 1;
+            left[node] = build(from, mid);
+            right[node] = build(mid, to);
+        }
+        return node;
+    }
+
+    /**
+     * Returns a new search object. Search objects are not thread-safe, while
+     * the index can be shared by several threads, each using its own search
+     * object.
+     */
+    public Search newSearch() {
+        return new Search();
+    }
+
+    public class Search {
+
+        int best;
+        double bestDist;
+        final double[] point = kernel == null ? null : new double[dimensionality];
+        final double[] scratch = rotated ? new double[dimensionality] : null;
+
+        /**
+         * Returns the cluster with the smallest elliptical relative distance
+         * from p, or -1 if there are no clusters, with the same result as a
+         * linear scan.
+         */
+        public int nearest(int[] p) {
+            return nearest(p, 0);
+        }
+
+        /**
+         * Returns the nearest cluster of the point stored in p starting at
+         * offset.
+         */
+        public int nearest(int[] p, int offset) {
+            best = -1;
+            bestDist = Double.POSITIVE_INFINITY;
+            if (point != null) {
+                for (int k = 0; k < dimensionality; k++) {
+                    point[k] = p[offset + k];
+                }
+            }
+            if (linear) {
+                scan(p, offset, 0, order.length);
+            } else {
+                search(p, offset, 0);
+            }
+            return best;
+        }
+
+        /**
+         * Returns the distance of the cluster found by the last call to
+         * nearest.
+         */
+        public double getDistance() {
+            return bestDist;
+        }
+
+        /**
+         * Returns the cluster containing p, i.e., the nearest cluster if its
+         * distance is less than 1, or -1.
+         */
+        public int container(int[] p) {
+            int i = nearest(p);
+            return bestDist < 1 ? i : -1;
+        }
+
+        /**
+         * Writes into distances the elliptical relative distance of the point
+         * stored in p starting at offset from every cluster.
+         */
+        public void distances(int[] p, int offset, double[] distances) {
+            if (kernel == null) {
+                for (int i = 0; i < centers.length; i++) {
+                    distances[i] = ellipticalRelativeDistance(centers[i], radii[i], p, offset);
+                }
+            } else {
+                for (int k = 0; k < dimensionality; k++) {
+                    point[k] = p[offset + k];
+                }
+                kernel.distances(flatCenters, inverseRadii, centers.length, point, dimensionality, distances);
+            }
+            if (rotated) {
+                for (int i = 0; i < centers.length; i++) {
+                    if (covariances[i] != null) {
+                        distances[i] = covariances[i].relativeDistance(centers[i], p, offset, scratch);
+                    }
+                }
+            }
+        }
+
+        private double distance(int i, int[] p, int offset) {
+            if (rotated && covariances[i] != null) {
+                return covariances[i].relativeDistance(centers[i], p, offset, scratch);
+            }
+            return kernel == null ? ellipticalRelativeDistance(centers[i], radii[i], p, offset) : kernel.distance(flatCenters, inverseRadii, i * dimensionality, point, dimensionality);
+        }
+
+        private void scan(int[] p, int offset, int from, int to) {
+            for (int j = from; j < to; j++) {
+                int i = order[j];
+                double d = distance(i, p, offset);
+                if (d < bestDist || d == bestDist && i < best) {
+                    best = i;
+                    bestDist = d;
+                }
+            }
+        }
+
+        private void search(int[] p, int offset, int node) {
+            if (left[node] == -1) {
+                scan(p, offset, lo[node], hi[node]);
+                return;
+            }
+            double boundLeft = lowerBound(p, offset, left[node]);
+            double boundRight = lowerBound(p, offset, right[node]);
+            int first = boundLeft <= boundRight ? left[node] : right[node];
+            int second = boundLeft <= boundRight ? right[node] : left[node];
+            if (Math.min(boundLeft, boundRight) <= bestDist) {
+                search(p, offset, first);
+            }
+            if (Math.max(boundLeft, boundRight) <= bestDist) {
+                search(p, offset, second);
+            }
+        }
+
+        private double lowerBound(int[] p, int pOffset, int node) {
+            int offset = node * dimensionality;
+            double bound = 0;
+            for (int k = 0; k < dimensionality; k++) {
+                int v = p[pOffset + k];
+                double gap = Math.max(0, Math.max(min[offset + k] - v, v - max[offset + k]));
+                double g = gap / maxRadius[offset + k];
+                if (rotated) {
+                    bound = Math.max(bound, g * g);
+                } else {
+                    bound += g * g;
+                }
+            }
+            return bound * (1 - BOUND_TOLERANCE);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+/**
+ * Streaming statistics of the points of every cluster, used to compute the
+ * variance ratio clusterability reported in the _info file.
+ *
+ * For every cluster and dimension, the mean and the sum of the squared
+ * deviations from the mean are updated with Welford's algorithm, which
+ * neither overflows nor suffers the cancellation of the sum-of-squares
+ * formula. Partial statistics computed on different chunks are merged with
+ * the pairwise formulas of Chan, Golub and LeVeque.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class ClusterStats {
+
+    final long[] n;
+    final double[][] mean;
+    final double[][] m2;
+    final int dimensionality;
+    long nTot;
+
+    public ClusterStats(int numberOfClusters, int dimensionality) {
+        this.dimensionality = dimensionality;
+        n = new long[numberOfClusters];
+        mean = new double[numberOfClusters][dimensionality];
+        m2 = new double[numberOfClusters][dimensionality];
+    }
+
+    public void add(int cluster, int[] p) {
+        add(cluster, p, 0);
+    }
+
+    /**
+     * Adds the point stored in p starting at offset.
+     */
+    public void add(int cluster, int[] p, int offset) {
+        long count = ++n[cluster];
+        double[] meanI = mean[cluster];
+        double[] m2I = m2[cluster];
+        for (int k = 0; k < dimensionality; k++) {
+            double v = p[offset + k];
+            double delta = v - meanI[k];
+            meanI[k] += delta / count;
+            m2I[k] += delta * (v - meanI[k]);
+        }
+        nTot++;
+    }
+
+    /**
+     * Adds the points of other, which must follow those already added. The
+     * statistics of a cluster with no points are copied, so merging the
+     * statistics of the chunks in plan order gives the same result however
+     * the chunks are generated.
+     */
+    public void merge(ClusterStats other) {
+        for (int i = 0; i < n.length; i++) {
+            long na = n[i];
+            long nb = other.n[i];
+            if (nb == 0) {
+                continue;
+            }
+            if (na == 0) {
+                System.arraycopy(other.mean[i], 0, mean[i], 0, dimensionality);
+                System.arraycopy(other.m2[i], 0, m2[i], 0, dimensionality);
+                n[i] = nb;
+                continue;
+            }
+            long count = na + nb;
+            for (int k = 0; k < dimensionality; k++) {
+                double delta = other.mean[i][k] - mean[i][k];
+                mean[i][k] += delta * nb / count;
+                m2[i][k] += other.m2[i][k] + delta * delta * ((double) na * nb / count);
+            }
+            n[i] = count;
+        }
+        nTot += other.nTot;
+    }
+
+    public long getNumberOfPoints() {
+        return nTot;
+    }
+
+    public int getNumberOfClusters() {
+        return n.length;
+    }
+
+    public long getNumberOfPoints(int cluster) {
+        return n[cluster];
+    }
+
+    public double getMean(int cluster, int k) {
+        return mean[cluster][k];
+    }
+
+    /**
+     * Returns the (population) variance of the k-th coordinate of the points
+     * of the cluster.
+     */
+    public double getVariance(int cluster, int k) {
+        return n[cluster] == 0 ? 0 : m2[cluster][k] / n[cluster];
+    }
+
+    public double getWithinClusterVariance() {
+        double wc = 0;
+        for (int i = 0; i < n.length; i++) {
+            double wci = 0;
+            for (int k = 0; k < dimensionality; k++) {
+                wci += m2[i][k];
+            }
+            wc += wci / nTot;
+        }
+        return wc;
+    }
+
+    public double getBetweenClusterVariance() {
+        double[] meanTot = new double[dimensionality];
+        for (int i = 0; i < n.length; i++) {
+            for (int k = 0; k < dimensionality; k++) {
+                meanTot[k] += mean[i][k] * n[i];
+            }
+        }
+        for (int k = 0; k < dimensionality; k++) {
+            meanTot[k] /= nTot;
+        }
+        double bc = 0;
+        for (int i = 0; i < n.length; i++) {
+            if (n[i] > 0) {
+                double pi = 1.0 * n[i] / nTot;
+                bc += pi * MultidimensionalGaussianGenerator.sqrDistance(meanTot, mean[i]);
+            }
+        }
+        return bc;
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+import static edu.ucla.cs.scai.clustering.syntheticgenerator.DistanceKernel.relativeDistance;
+
+/**
+ * Generates the points with indexes in [from, to) of a plan in COUNTER mode,
+ * all belonging to the same cluster or all noise.
+ *
+ * Every point is generated from its own Philox stream, selected by the index
+ * of the point, and every candidate rejected by the sampler consumes further
+ * values of the same stream. Thus a point only depends on the seed and on its
+ * index, and any range of points can be generated without generating the
+ * previous ones.
+ *
+ * The points of a rotated cluster are drawn in batches: the first candidate
+ * of every point of the batch is drawn from the stream of the point, and a
+ * point whose first candidate is rejected is drawn again from the start of
+ * its stream, one candidate at a time, so that it does not depend on the
+ * batch.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+class CounterPointSource implements PointSource, GaussianSource {
+
+    final GenerationPlan plan;
+    final int cluster;
+    final Philox rand;
+    final double[] devStandard;
+    final TruncatedEllipsoidSampler sampler;
+    final CovarianceSampler covarianceSampler;
+    final CovarianceSampler.Batch batch;
+    final CovarianceSampler.Batch retry;
+    final double[] scratch;
+    final long[] rejections = new long[2];
+    final ClusterIndex.Search search;
+    long next;
+    final long to;
+    final boolean ziggurat;
+
+    CounterPointSource(GenerationPlan plan, int cluster, long from, long to) {
+        this.plan = plan;
+        this.cluster = cluster;
+        this.next = from;
+        this.to = to;
+        rand = new Philox(plan.seed);
+        ziggurat = plan.randomEngine == GenerationPlan.RandomEngine.FAST;
+        int dimensionality = plan.getDimensionality();
+        devStandard = new double[dimensionality];
+        if (cluster != GenerationPlan.Chunk.NOISE) {
+            for (int k = 0; k < dimensionality; k++) {
+                devStandard[k] = plan.radii[cluster][k] / 4.0; //99% of point will be within radius
+            }
+        }
+        covarianceSampler = cluster == GenerationPlan.Chunk.NOISE ? null : plan.getCovarianceSampler(cluster);
+        batch = covarianceSampler == null ? null : covarianceSampler.newBatch();
+        retry = covarianceSampler == null ? null : covarianceSampler.newBatch();
+        sampler = cluster == GenerationPlan.Chunk.NOISE || covarianceSampler != null ? null : plan.getTruncatedSampler(cluster);
+        scratch = sampler == null ? null : new double[dimensionality];
+        search = cluster == GenerationPlan.Chunk.NOISE ? plan.getClusterIndex().newSearch() : null;
+    }
+
+    @Override
+    public boolean fill(PointBlock block, ClusterStats stats) {
+        if (next == to) {
+            return false;
+        }
+        long start = System.nanoTime();
+        int first = block.getSize();
+        if (covarianceSampler != null) {
+            addCovariancePoints(block, stats);
+        }
+        while (next < to && !block.isFull()) {
+            rand.seek(next);
+            if (cluster == GenerationPlan.Chunk.NOISE) {
+                addNoisePoint(block, stats);
+            } else if (sampler != null) {
+                addTruncatedPoint(block, stats);
+            } else {
+                addClusterPoint(block, stats);
+            }
+            next++;
+        }
+        if (sampler != null) {
+            sampler.addCounts(block.getSize() - first, rejections);
+        } else if (covarianceSampler != null) {
+            covarianceSampler.addCounts(block.getSize() - first, rejections);
+        }
+        plan.report(cluster, block, first, rejections, System.nanoTime() - start);
+        rejections[TruncatedEllipsoidSampler.DOMAIN] = 0;
+        rejections[TruncatedEllipsoidSampler.ELLIPSE] = 0;
+        return true;
+    }
+
+    @Override
+    public long getRemaining() {
+        return to - next;
+    }
+
+    private void addClusterPoint(PointBlock block, ClusterStats stats) {
+        Range domain = plan.domain;
+        int[] center = plan.centers[cluster];
+        int[] radius = plan.radii[cluster];
+        int[] c = block.coords;
+        int offset = block.nextOffset();
+        clusterPoint:
+        while (true) {
+            for (int k = 0; k < devStandard.length; k++) {
+                int v = (int) (center[k] + nextGaussian() * devStandard[k]);
+                c[offset + k] = v;
+                if (v < domain.getInfCoord(k + 1) || v > domain.getSupCoord(k + 1)) {
+                    rejections[TruncatedEllipsoidSampler.DOMAIN]++;
+                    continue clusterPoint;
+                }
+            }
+            if (relativeDistance(center, radius, c, offset) > 1) {
+                rejections[TruncatedEllipsoidSampler.ELLIPSE]++;
+                continue;
+            }
+            block.commit(cluster);
+            if (stats != null) {
+                stats.add(cluster, c, offset);
+            }
+            return;
+        }
+    }
+
+    private void addTruncatedPoint(PointBlock block, ClusterStats stats) {
+        int offset = block.nextOffset();
+        sampler.sample(this, block.coords, offset, scratch, rejections);
+        block.commit(cluster);
+        if (stats != null) {
+            stats.add(cluster, block.coords, offset);
+        }
+    }
+
+    private void addCovariancePoints(PointBlock block, ClusterStats stats) {
+        while (next < to && !block.isFull()) {
+            int rows = (int) Math.min(Math.min(to - next, block.getCapacity() - block.getSize()), CovarianceSampler.BATCH_SIZE);
+            for (int r = 0; r < rows; r++) {
+                rand.seek(next + r);
+                covarianceSampler.draw(this, batch, r);
+            }
+            covarianceSampler.evaluate(batch, rows);
+            for (int r = 0; r < rows; r++) {
+                int offset = block.nextOffset();
+                long domainRejections = rejections[TruncatedEllipsoidSampler.DOMAIN];
+                long ellipseRejections = rejections[TruncatedEllipsoidSampler.ELLIPSE];
+                if (!covarianceSampler.accept(batch, r, block.coords, offset, rejections)) {
+                    //the rejected candidate is drawn and counted again
+                    rejections[TruncatedEllipsoidSampler.DOMAIN] = domainRejections;
+                    rejections[TruncatedEllipsoidSampler.ELLIPSE] = ellipseRejections;
+                    rand.seek(next);
+                    covarianceSampler.sample(this, block.coords, offset, 1, retry, rejections);
+                }
+                block.commit(cluster);
+                if (stats != null) {
+                    stats.add(cluster, block.coords, offset);
+                }
+                next++;
+            }
+        }
+    }
+
+    private void addNoisePoint(PointBlock block, ClusterStats stats) {
+        int offset = block.nextOffset();
+        int[] inf = plan.domain.getInf();
+        int[] sup = plan.domain.getSup();
+        for (int k = 0; k < inf.length; k++) {
+            block.coords[offset + k] = inf[k] + rand.nextInt(sup[k] - inf[k] + 1);
+        }
+        int nearestCluster = search.nearest(block.coords, offset);
+        int idCluster = search.getDistance() < 1 ? nearestCluster : -1;
+        block.commit(idCluster);
+        if (stats != null && nearestCluster >= 0) { //nearestCluster is -1 only if there are no clusters
+            stats.add(nearestCluster, block.coords, offset);
+        }
+    }
+
+    @Override
+    public double nextDouble() {
+        return rand.nextDouble();
+    }
+
+    /**
+     * Returns a Gaussian value by the Ziggurat method with the FAST random
+     * engine, or by the polar method otherwise, from the stream the
+     * generator is positioned at.
+     */
+    @Override
+    public double nextGaussian() {
+        return ziggurat ? Ziggurat.nextGaussian(rand) : rand.nextGaussian();
+    }
+}
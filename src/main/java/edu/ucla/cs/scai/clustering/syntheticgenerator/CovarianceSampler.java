@@ -0,0 +1,189 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+/**
+ * Samples the points of a rotated cluster, described by a
+ * ClusterCovariance, in batches: the standard Gaussian vectors of a batch
+ * are drawn into the columns of a matrix Z, which is multiplied by the
+ * Cholesky factor of the covariance; the products are truncated to integers,
+ * and their relative distances are computed by multiplying the batch by the
+ * whitening matrix. Both products are small dense matrix multiplications.
+ * The candidates are then accepted or rejected one by one.
+ *
+ * If the sampler is truncated, z is drawn as a uniform direction times a
+ * radius from the chi-square distribution truncated to the ball enclosing the
+ * standardized points that can be truncated into the ellipsoid, as by the
+ * fallback of TruncatedEllipsoidSampler: the Mahalanobis distance of center +
+ * L z is |z|, and the truncation moves the relative distance by at most
+ * ClusterCovariance.getRoundingBound. Otherwise z is standard Gaussian. In
+ * both cases the candidates outside the domain or the ellipsoid are
+ * rejected, thus the truncated sampler has the same distribution as the
+ * rejection sampler. The accepted points are the accepted candidates in the
+ * order they are drawn, thus they do not depend on the size of the batches.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class CovarianceSampler extends TruncatedEllipsoidSampler {
+
+    static final int BATCH_SIZE = 32;
+
+    final ClusterCovariance covariance;
+    final boolean truncated;
+
+    public CovarianceSampler(int[] center, ClusterCovariance covariance, Range domain, boolean truncated) {
+        super(center, covariance.boundingRadius, domain, covariance.getRoundingBound());
+        this.covariance = covariance;
+        this.truncated = truncated;
+    }
+
+    public ClusterCovariance getCovariance() {
+        return covariance;
+    }
+
+    /**
+     * Returns true if the points are drawn from the truncated Gaussian,
+     * false if they are drawn by rejection.
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * Returns new scratch arrays, to be used by a single thread.
+     */
+    Batch newBatch() {
+        return new Batch(center.length);
+    }
+
+    /**
+     * Writes n new points of the cluster into consecutive rows of c, starting
+     * at offset. The residual rejections are counted as by
+     * TruncatedEllipsoidSampler.sample.
+     */
+    void sample(GaussianSource rand, int[] c, int offset, int n, Batch batch, long[] rejections) {
+        while (n > 0) {
+            int rows = Math.min(n, BATCH_SIZE);
+            for (int r = 0; r < rows; r++) {
+                draw(rand, batch, r);
+            }
+            evaluate(batch, rows);
+            for (int r = 0; r < rows; r++) {
+                if (accept(batch, r, c, offset, rejections)) {
+                    offset += center.length;
+                    n--;
+                }
+            }
+        }
+    }
+
+    @Override
+    void sample(GaussianSource rand, int[] c, int offset, double[] g, long[] rejections) {
+        sample(rand, c, offset, 1, newBatch(), rejections);
+    }
+
+    /**
+     * Draws the r-th vector of the batch, a standard Gaussian vector,
+     * truncated to the enclosing ball if the sampler is truncated.
+     */
+    void draw(GaussianSource rand, Batch batch, int r) {
+        double[] z = batch.z;
+        double norm2 = 0;
+        for (int k = 0; k < center.length; k++) {
+            double g = rand.nextGaussian();
+            z[k * BATCH_SIZE + r] = g;
+            norm2 += g * g;
+        }
+        if (truncated) {
+            double scale = norm2 == 0 ? 0 : Math.sqrt(2 * inverseCdf(rand.nextDouble()) / norm2);
+            for (int k = 0; k < center.length; k++) {
+                z[k * BATCH_SIZE + r] *= scale;
+            }
+        }
+    }
+
+    /**
+     * Computes the candidates of the first rows vectors of the batch, i.e.,
+     * center + L z truncated to integers, and whether they lie in the domain
+     * and their relative distances.
+     */
+    void evaluate(Batch batch, int rows) {
+        double[] x = batch.x;
+        covariance.transform(batch.z, x, BATCH_SIZE, rows);
+        for (int r = 0; r < rows; r++) {
+            batch.inDomain[r] = true;
+        }
+        for (int k = 0; k < center.length; k++) {
+            int inf = domain.getInfCoord(k + 1);
+            int sup = domain.getSupCoord(k + 1);
+            int o = k * BATCH_SIZE;
+            for (int r = 0; r < rows; r++) {
+                int v = (int) (center[k] + x[o + r]);
+                batch.inDomain[r] &= v >= inf && v <= sup;
+                //the offset from the center is an integer, thus exact
+                x[o + r] = (double) v - center[k];
+            }
+        }
+        double[] y = batch.z;
+        covariance.whiten(x, y, BATCH_SIZE, rows);
+        for (int r = 0; r < rows; r++) {
+            batch.distance[r] = 0;
+        }
+        for (int j = 0; j < center.length; j++) {
+            int o = j * BATCH_SIZE;
+            for (int r = 0; r < rows; r++) {
+                batch.distance[r] += y[o + r] * y[o + r];
+            }
+        }
+    }
+
+    /**
+     * Returns true if the r-th candidate of an evaluated batch lies in the
+     * domain and in the ellipsoid, and writes it into c starting at offset;
+     * otherwise the rejection is counted.
+     */
+    boolean accept(Batch batch, int r, int[] c, int offset, long[] rejections) {
+        if (!batch.inDomain[r]) {
+            rejections[DOMAIN]++;
+            return false;
+        }
+        if (batch.distance[r] > 1) {
+            rejections[ELLIPSE]++;
+            return false;
+        }
+        for (int k = 0; k < center.length; k++) {
+            c[offset + k] = center[k] + (int) batch.x[k * BATCH_SIZE + r];
+        }
+        return true;
+    }
+
+    /**
+     * Scratch arrays of a batch, where the k-th coordinate of the r-th vector
+     * is stored at k * BATCH_SIZE + r.
+     */
+    static class Batch {
+
+        final double[] z;
+        final double[] x;
+        final boolean[] inDomain = new boolean[BATCH_SIZE];
+        final double[] distance = new double[BATCH_SIZE];
+
+        Batch(int dimensionality) {
+            z = new double[BATCH_SIZE * dimensionality];
+            x = new double[BATCH_SIZE * dimensionality];
+        }
+    }
+}
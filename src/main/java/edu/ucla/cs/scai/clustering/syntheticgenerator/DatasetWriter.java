@@ -0,0 +1,116 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.zip.CRC32;
+
+/**
+ * Writes blocks of points to a .data file and their labels to the
+ * corresponding _labels file.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class DatasetWriter implements PointBlockConsumer, Closeable {
+
+    final TextPointWriter out;
+    final TextPointWriter out2;
+    long nOutlier;
+    long nRows;
+    CRC32 dataChecksum;
+    CRC32 labelsChecksum;
+
+    public DatasetWriter(String fileName) throws IOException {
+        this(fileName, fileName + "_labels");
+    }
+
+    public DatasetWriter(String fileName, String fileNameLabels) throws IOException {
+        out = new TextPointWriter(fileName);
+        try {
+            out2 = new TextPointWriter(fileNameLabels);
+        } catch (IOException e) {
+            out.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void accept(PointBlock block) throws IOException {
+        for (int i = 0; i < block.size; i++) {
+            out.writePoint(block.coords, i * block.dimensionality, block.dimensionality);
+            out2.writeLabel(block.labels[i]);
+            if (block.labels[i] == -1) {
+                nOutlier++;
+            }
+        }
+        nRows += block.size;
+    }
+
+    /**
+     * Computes the CRC32 of the two files; it must be called before writing
+     * any point.
+     */
+    public void computeChecksums() {
+        dataChecksum = new CRC32();
+        labelsChecksum = new CRC32();
+        out.setChecksum(dataChecksum);
+        out2.setChecksum(labelsChecksum);
+    }
+
+    /**
+     * Returns the CRC32 of the data file; it is complete after close.
+     */
+    public long getDataChecksum() {
+        return dataChecksum.getValue();
+    }
+
+    public long getLabelsChecksum() {
+        return labelsChecksum.getValue();
+    }
+
+    public long getRows() {
+        return nRows;
+    }
+
+    /**
+     * Returns the number of points written with label -1.
+     */
+    public long getOutliers() {
+        return nOutlier;
+    }
+
+    public long getBytesWritten() {
+        return out.getBytesWritten() + out2.getBytesWritten();
+    }
+
+    public long getDataBytes() {
+        return out.getBytesWritten();
+    }
+
+    public long getLabelsBytes() {
+        return out2.getBytesWritten();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            out.close();
+        } finally {
+            out2.close();
+        }
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Sums of squares used by the distances of high-dimensional points, i.e.,
+ * with at least MIN_DIMENSIONALITY dimensions, in the CHUNKED and COUNTER
+ * modes and with the FAST random engine; with the LEGACY engine, the
+ * SEQUENTIAL mode sums the terms in order, as the original generator, so
+ * that it generates the same points. This class is the scalar
+ * implementation; VectorDistanceKernel computes the same sums with the
+ * jdk.incubator.vector API and is used when the module is available, i.e.,
+ * when the JVM is started with --add-modules jdk.incubator.vector, unless
+ * the system property clugen.vectorize is false.
+ *
+ * The terms are summed in a fixed order, which both implementations follow
+ * exactly: term k is added to the partial sum k mod 8 for the largest prefix
+ * whose length is a multiple of 8, then the terms of the next 4 dimensions,
+ * if any, to the partial sums 0 to 3; the partial sums are combined as ((s0
+ * + s4) + (s1 + s5)) + ((s2 + s6) + (s3 + s7)), and the remaining terms are
+ * added one by one. Since no fused multiply-add is used, the scalar and the
+ * vector kernels return the same values on every platform.
+ *
+ * The kernels also compute the products of triangular matrices and batches
+ * of vectors used by CovarianceSampler, where every coordinate of a product
+ * is summed in increasing order of the column.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+class DistanceKernel {
+
+    /**
+     * Points with fewer dimensions are summed sequentially, as by the
+     * original generator.
+     */
+    static final int MIN_DIMENSIONALITY = 16;
+
+    static final DistanceKernel SCALAR = new DistanceKernel();
+
+    static final DistanceKernel DEFAULT = load();
+
+    private static DistanceKernel load() {
+        Logger logger = Logger.getLogger(DistanceKernel.class.getName());
+        if (!Boolean.parseBoolean(System.getProperty("clugen.vectorize", "true"))
+                || !ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            return SCALAR;
+        }
+        try {
+            DistanceKernel vector = (DistanceKernel) Class.forName("edu.ucla.cs.scai.clustering.syntheticgenerator.VectorDistanceKernel").getDeclaredConstructor().newInstance();
+            if (vector.isVectorized() && check(vector)) {
+                return vector;
+            }
+            if (vector.isVectorized()) {
+                logger.warning("The vector distance kernel is not used, since its results differ from the scalar ones");
+            } else {
+                logger.fine("The vector distance kernel is not used, since the hardware has no 256-bit vectors");
+            }
+        } catch (ReflectiveOperationException | LinkageError e) {
+            logger.log(Level.FINE, "The vector distance kernel is not available", e);
+        }
+        return SCALAR;
+    }
+
+    /**
+     * Compares the kernel with the scalar one on random inputs.
+     */
+    static boolean check(DistanceKernel kernel) {
+        Random rand = new Random(0);
+        for (int d = 1; d <= 70; d++) {
+            double[] centers = new double[2 * d + 3];
+            double[] inverseRadii = new double[centers.length];
+            double[] p = new double[d];
+            for (int k = 0; k < centers.length; k++) {
+                centers[k] = rand.nextInt(2000);
+                inverseRadii[k] = 1.0 / (1 + rand.nextInt(500));
+            }
+            for (int k = 0; k < d; k++) {
+                p[k] = rand.nextInt(2000);
+            }
+            if (Double.doubleToLongBits(kernel.distance(centers, inverseRadii, 3, p, d)) != Double.doubleToLongBits(SCALAR.distance(centers, inverseRadii, 3, p, d))) {
+                return false;
+            }
+            int rows = 1 + rand.nextInt(40);
+            double[] m = new double[d * d];
+            double[] in = new double[d * rows];
+            for (int k = 0; k < m.length; k++) {
+                m[k] = rand.nextGaussian();
+            }
+            for (int k = 0; k < in.length; k++) {
+                in[k] = rand.nextGaussian();
+            }
+            double[] out = new double[in.length];
+            double[] expected = new double[in.length];
+            kernel.multiply(m, d, in, out, rows, rows);
+            SCALAR.multiply(m, d, in, expected, rows, rows);
+            for (int k = 0; k < out.length; k++) {
+                if (Double.doubleToLongBits(out[k]) != Double.doubleToLongBits(expected[k])) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    boolean isVectorized() {
+        return false;
+    }
+
+    /**
+     * Returns the sum over k in [0, d) of ((centers[offset + k] - p[k]) *
+     * inverseRadii[offset + k])^2.
+     */
+    double distance(double[] centers, double[] inverseRadii, int offset, double[] p, int d) {
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0, s4 = 0, s5 = 0, s6 = 0, s7 = 0;
+        int k = 0;
+        for (; k + 8 <= d; k += 8) {
+            int o = offset + k;
+            double t0 = (centers[o] - p[k]) * inverseRadii[o];
+            double t1 = (centers[o + 1] - p[k + 1]) * inverseRadii[o + 1];
+            double t2 = (centers[o + 2] - p[k + 2]) * inverseRadii[o + 2];
+            double t3 = (centers[o + 3] - p[k + 3]) * inverseRadii[o + 3];
+            double t4 = (centers[o + 4] - p[k + 4]) * inverseRadii[o + 4];
+            double t5 = (centers[o + 5] - p[k + 5]) * inverseRadii[o + 5];
+            double t6 = (centers[o + 6] - p[k + 6]) * inverseRadii[o + 6];
+            double t7 = (centers[o + 7] - p[k + 7]) * inverseRadii[o + 7];
+            s0 += t0 * t0;
+            s1 += t1 * t1;
+            s2 += t2 * t2;
+            s3 += t3 * t3;
+            s4 += t4 * t4;
+            s5 += t5 * t5;
+            s6 += t6 * t6;
+            s7 += t7 * t7;
+        }
+        if (k + 4 <= d) {
+            int o = offset + k;
+            double t0 = (centers[o] - p[k]) * inverseRadii[o];
+            double t1 = (centers[o + 1] - p[k + 1]) * inverseRadii[o + 1];
+            double t2 = (centers[o + 2] - p[k + 2]) * inverseRadii[o + 2];
+            double t3 = (centers[o + 3] - p[k + 3]) * inverseRadii[o + 3];
+            s0 += t0 * t0;
+            s1 += t1 * t1;
+            s2 += t2 * t2;
+            s3 += t3 * t3;
+            k += 4;
+        }
+        double s = ((s0 + s4) + (s1 + s5)) + ((s2 + s6) + (s3 + s7));
+        for (; k < d; k++) {
+            double t = (centers[offset + k] - p[k]) * inverseRadii[offset + k];
+            s += t * t;
+        }
+        return s;
+    }
+
+    /**
+     * Writes into out the distances of p from all the n clusters whose
+     * centers and inverse radii are stored in consecutive rows of d values.
+     */
+    void distances(double[] centers, double[] inverseRadii, int n, double[] p, int d, double[] out) {
+        for (int i = 0; i < n; i++) {
+            out[i] = distance(centers, inverseRadii, i * d, p, d);
+        }
+    }
+
+    /**
+     * Returns the elliptical relative distance of the point stored in p
+     * starting at offset, as used by the CHUNKED and COUNTER modes and by the
+     * FAST random engine: summed as by distance from MIN_DIMENSIONALITY
+     * dimensions on, as by
+     * MultidimensionalGaussianGenerator.ellipticalRelativeDistance otherwise.
+     */
+    static double relativeDistance(int[] center, int[] radius, int[] p, int offset) {
+        if (radius.length >= MIN_DIMENSIONALITY) {
+            return distance(center, radius, p, offset);
+        }
+        return MultidimensionalGaussianGenerator.ellipticalRelativeDistance(center, radius, p, offset);
+    }
+
+    /**
+     * Returns the elliptical relative distance of the point stored in p
+     * starting at pOffset, computing the inverse radii on the fly, with the
+     * same result as distance on the converted arrays.
+     */
+    static double distance(int[] center, int[] radius, int[] p, int pOffset) {
+        int d = radius.length;
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0, s4 = 0, s5 = 0, s6 = 0, s7 = 0;
+        int k = 0;
+        for (; k + 8 <= d; k += 8) {
+            s0 += term(center, radius, p, pOffset, k);
+            s1 += term(center, radius, p, pOffset, k + 1);
+            s2 += term(center, radius, p, pOffset, k + 2);
+            s3 += term(center, radius, p, pOffset, k + 3);
+            s4 += term(center, radius, p, pOffset, k + 4);
+            s5 += term(center, radius, p, pOffset, k + 5);
+            s6 += term(center, radius, p, pOffset, k + 6);
+            s7 += term(center, radius, p, pOffset, k + 7);
+        }
+        if (k + 4 <= d) {
+            s0 += term(center, radius, p, pOffset, k);
+            s1 += term(center, radius, p, pOffset, k + 1);
+            s2 += term(center, radius, p, pOffset, k + 2);
+            s3 += term(center, radius, p, pOffset, k + 3);
+            k += 4;
+        }
+        double s = ((s0 + s4) + (s1 + s5)) + ((s2 + s6) + (s3 + s7));
+        for (; k < d; k++) {
+            s += term(center, radius, p, pOffset, k);
+        }
+        return s;
+    }
+
+    private static double term(int[] center, int[] radius, int[] p, int pOffset, int k) {
+        double t = ((double) center[k] - p[pOffset + k]) * (1.0 / radius[k]);
+        return t * t;
+    }
+
+    /**
+     * Multiplies the lower triangular d x d matrix whose k-th column is
+     * stored in m starting at k * d by rows vectors stored by column in in,
+     * i.e., the k-th coordinate of the r-th vector is in[k * stride + r], and
+     * stores the products in the same way in out. The j-th coordinate of a
+     * product is the sum of m[k * d + j] * in[k * stride + r] for k from 0 to
+     * j, added in this order.
+     */
+    void multiply(double[] m, int d, double[] in, double[] out, int stride, int rows) {
+        for (int j = 0; j < d; j++) {
+            int o = j * stride;
+            for (int r = 0; r < rows; r++) {
+                out[o + r] = 0;
+            }
+            for (int k = 0; k <= j; k++) {
+                double v = m[k * d + j];
+                int i = k * stride;
+                for (int r = 0; r < rows; r++) {
+                    out[o + r] += v * in[i + r];
+                }
+            }
+        }
+    }
+}
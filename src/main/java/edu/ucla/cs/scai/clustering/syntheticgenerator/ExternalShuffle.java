@@ -0,0 +1,140 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Disk-backed shuffle of a dataset and its labels, using a bounded amount of
+ * memory. Every row is first assigned to a random bucket file, then every
+ * bucket is loaded and shuffled in memory. Since the assignment to buckets is
+ * uniform and every bucket is uniformly shuffled, the resulting permutation
+ * is uniform as well.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class ExternalShuffle {
+
+    public static final long DEFAULT_MEMORY_BUDGET = 256L << 20;
+
+    /**
+     * Estimated heap overhead of a row held in memory as two Strings, in
+     * addition to its characters.
+     */
+    static final int ROW_OVERHEAD = 112;
+
+    static final int BUCKET_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Shuffles the rows of fileDataIn and fileLabelsIn, keeping data and
+     * labels paired. If the rows fit in memoryBudget bytes, the result is the
+     * same as the in-memory shuffleDataset with the same random generator.
+     * Otherwise, the bucket files are created in tmpDir, or in the default
+     * temporary directory if tmpDir is null.
+     */
+    public static void shuffleDataset(String fileDataIn, String fileLabelsIn, String fileDataOut, String fileLabelsOut, Random rand, long memoryBudget, File tmpDir) throws IOException {
+        int nBuckets = numberOfBuckets(new File(fileDataIn).length(), new File(fileLabelsIn).length(), memoryBudget);
+        if (nBuckets == 1) {
+            MultidimensionalGaussianGenerator.shuffleDataset(fileDataIn, fileLabelsIn, fileDataOut, fileLabelsOut, rand);
+            return;
+        }
+        System.out.println("Shuffling with " + nBuckets + " buckets");
+        File dir = tmpDir == null ? Files.createTempDirectory("shuffle").toFile() : Files.createTempDirectory(tmpDir.toPath(), "shuffle").toFile();
+        File[] bucketFiles = new File[nBuckets];
+        try {
+            BufferedWriter[] buckets = new BufferedWriter[nBuckets];
+            try (
+                    BufferedReader in1 = new BufferedReader(new FileReader(fileDataIn));
+                    BufferedReader in2 = new BufferedReader(new FileReader(fileLabelsIn));) {
+                for (int i = 0; i < nBuckets; i++) {
+                    bucketFiles[i] = new File(dir, "bucket" + i);
+                    buckets[i] = new BufferedWriter(new FileWriter(bucketFiles[i]), BUCKET_BUFFER_SIZE);
+                }
+                String l1 = in1.readLine();
+                String l2 = in2.readLine();
+                while ((l1 != null && l1.length() > 0) && (l2 != null && l2.length() > 0)) {
+                    BufferedWriter bucket = buckets[rand.nextInt(nBuckets)];
+                    bucket.write(l1);
+                    bucket.newLine();
+                    bucket.write(l2);
+                    bucket.newLine();
+                    l1 = in1.readLine();
+                    l2 = in2.readLine();
+                }
+                if (l1 != null && l1.length() > 0 || l2 != null && l2.length() > 0) {
+                    throw new IOException("File lengths mismatch");
+                }
+            } finally {
+                for (BufferedWriter bucket : buckets) {
+                    if (bucket != null) {
+                        bucket.close();
+                    }
+                }
+            }
+
+            try (
+                    BufferedWriter out1 = new BufferedWriter(new FileWriter(fileDataOut));
+                    BufferedWriter out2 = new BufferedWriter(new FileWriter(fileLabelsOut));) {
+                for (File bucketFile : bucketFiles) {
+                    ArrayList<String> data = new ArrayList<>();
+                    ArrayList<String> labels = new ArrayList<>();
+                    try (BufferedReader in = new BufferedReader(new FileReader(bucketFile))) {
+                        String l1 = in.readLine();
+                        while (l1 != null) {
+                            data.add(l1);
+                            labels.add(in.readLine());
+                            l1 = in.readLine();
+                        }
+                    }
+                    bucketFile.delete();
+                    MultidimensionalGaussianGenerator.shuffle(rand, data, labels);
+                    for (int i = 0; i < data.size(); i++) {
+                        out1.write(data.get(i));
+                        out1.newLine();
+                        out2.write(labels.get(i));
+                        out2.newLine();
+                    }
+                }
+            }
+        } finally {
+            for (File bucketFile : bucketFiles) {
+                if (bucketFile != null) {
+                    bucketFile.delete();
+                }
+            }
+            dir.delete();
+        }
+    }
+
+    /**
+     * Returns the number of buckets needed so that every bucket is expected
+     * to fit in memoryBudget bytes. The number of rows is overestimated
+     * assuming that every label takes two bytes.
+     */
+    static int numberOfBuckets(long dataBytes, long labelsBytes, long memoryBudget) {
+        long estimatedRows = labelsBytes / 2;
+        long estimatedMemory = dataBytes + labelsBytes + estimatedRows * ROW_OVERHEAD;
+        return (int) Math.max(1, (estimatedMemory + memoryBudget - 1) / memoryBudget);
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Lazily generates the points of a plan. Points are generated block by block
+ * from the sources of the plan; the spliterator splits at source boundaries,
+ * i.e., by cluster and noise chunks, so it cannot be split in SEQUENTIAL
+ * mode.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class GaussianPointSpliterator implements Spliterator<LabeledPoint> {
+
+    public static final int DEFAULT_BLOCK_SIZE = 4096;
+
+    final List<PointSource> sources;
+    final int dimensionality;
+    final int blockSize;
+    int from;
+    final int to;
+    PointBlock block;
+    int next;
+    ClusterStats sourceStats;
+
+    public GaussianPointSpliterator(GenerationPlan plan) {
+        this(plan, DEFAULT_BLOCK_SIZE);
+    }
+
+    public GaussianPointSpliterator(GenerationPlan plan, int blockSize) {
+        this(plan.createSources(), plan.getDimensionality(), blockSize, 0, -1);
+    }
+
+    /**
+     * Creates a spliterator over the points with indexes in [from, to) of a
+     * plan in COUNTER mode.
+     */
+    public GaussianPointSpliterator(GenerationPlan plan, long from, long to, int blockSize) {
+        this(plan.createSources(from, to), plan.getDimensionality(), blockSize, 0, -1);
+    }
+
+    GaussianPointSpliterator(List<PointSource> sources, int dimensionality, int blockSize, int from, int to) {
+        this.sources = sources;
+        this.dimensionality = dimensionality;
+        this.blockSize = blockSize;
+        this.from = from;
+        this.to = to < 0 ? sources.size() : to;
+    }
+
+    /**
+     * Fills the block with the next points of the sources in [from, to). The
+     * statistics of every source are computed separately and merged into
+     * stats, if not null, when the source is exhausted, as
+     * ParallelGaussianGenerator does.
+     *
+     * @return false if there are no more points
+     */
+    boolean fill(PointBlock block, ClusterStats stats) {
+        block.clear();
+        while (from < to && !block.isFull()) {
+            if (stats != null && sourceStats == null) {
+                sourceStats = new ClusterStats(stats.getNumberOfClusters(), dimensionality);
+            }
+            if (!sources.get(from).fill(block, sourceStats)) {
+                if (stats != null) {
+                    stats.merge(sourceStats);
+                    sourceStats = null;
+                }
+                from++;
+            }
+        }
+        return block.getSize() > 0;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super LabeledPoint> action) {
+        if (block == null) {
+            block = new PointBlock(dimensionality, blockSize);
+        }
+        if (next == block.getSize()) {
+            next = 0;
+            if (!fill(block, null)) {
+                return false;
+            }
+        }
+        action.accept(new LabeledPoint(block.getPoint(next), block.getLabel(next)));
+        next++;
+        return true;
+    }
+
+    /**
+     * Passes all the remaining points to the consumer, block by block,
+     * without creating a LabeledPoint for every point.
+     */
+    public void forEachRemainingBlock(PointBlockConsumer consumer) throws IOException {
+        forEachRemainingBlock(consumer, null);
+    }
+
+    void forEachRemainingBlock(PointBlockConsumer consumer, ClusterStats stats) throws IOException {
+        if (block != null && next < block.getSize()) {
+            PointBlock rest = new PointBlock(dimensionality, block.getSize() - next);
+            System.arraycopy(block.coords, next * dimensionality, rest.coords, 0, rest.coords.length);
+            System.arraycopy(block.labels, next, rest.labels, 0, rest.labels.length);
+            rest.size = rest.labels.length;
+            next = block.getSize();
+            consumer.accept(rest);
+        }
+        PointBlock b = new PointBlock(dimensionality, blockSize);
+        while (fill(b, stats)) {
+            consumer.accept(b);
+        }
+    }
+
+    @Override
+    public Spliterator<LabeledPoint> trySplit() {
+        //the source at position from may be partially consumed: it goes to the prefix, together with the current block
+        if (to - from < 2) {
+            return null;
+        }
+        int mid = (from + to) >>> 1;
+        GaussianPointSpliterator prefix = new GaussianPointSpliterator(sources, dimensionality, blockSize, from, mid);
+        prefix.block = block;
+        prefix.next = next;
+        block = null;
+        next = 0;
+        from = mid;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        long size = block == null ? 0 : block.getSize() - next;
+        for (int i = from; i < to; i++) {
+            size += sources.get(i).getRemaining();
+        }
+        return size;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+/**
+ * Receives the progress of the generation of a dataset, set with
+ * GenerationPlan.setListener.
+ *
+ * Sources report their counters once per block of points, not once per
+ * point, and blocks of different chunks can be reported concurrently by
+ * different threads, thus implementations must be thread-safe.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public interface GenerationListener {
+
+    /**
+     * CLUSTERS and NOISE measure the time spent generating the points of the
+     * clusters and the noise points, WRITE the time spent passing the points
+     * to the output, STATS the time spent computing and printing the
+     * description of the clusters, IMAGE and SHUFFLE the time spent drawing
+     * and shuffling the dataset.
+     */
+    enum Phase {
+        CLUSTERS, NOISE, WRITE, STATS, IMAGE, SHUFFLE
+    }
+
+    /**
+     * Called after generating accepted points of a cluster, with the
+     * candidates rejected because they were outside the domain or outside
+     * the ellipsoid of the cluster.
+     */
+    default void clusterPoints(int cluster, long accepted, long rejectedDomain, long rejectedEllipse) {
+    }
+
+    /**
+     * Called after generating noise points: absorbed points fell inside a
+     * cluster and were labeled with it, the others are outliers.
+     */
+    default void noisePoints(long absorbed, long outliers) {
+    }
+
+    default void bytesWritten(long bytes) {
+    }
+
+    /**
+     * Called after spending nanos nanoseconds in a phase, processing the
+     * given number of points (0 if not relevant).
+     */
+    default void phase(Phase phase, long nanos, long points) {
+    }
+
+    /**
+     * Returns a listener forwarding every call to all the listeners.
+     */
+    static GenerationListener of(GenerationListener... listeners) {
+        return new GenerationListener() {
+            @Override
+            public void clusterPoints(int cluster, long accepted, long rejectedDomain, long rejectedEllipse) {
+                for (GenerationListener l : listeners) {
+                    l.clusterPoints(cluster, accepted, rejectedDomain, rejectedEllipse);
+                }
+            }
+
+            @Override
+            public void noisePoints(long absorbed, long outliers) {
+                for (GenerationListener l : listeners) {
+                    l.noisePoints(absorbed, outliers);
+                }
+            }
+
+            @Override
+            public void bytesWritten(long bytes) {
+                for (GenerationListener l : listeners) {
+                    l.bytesWritten(bytes);
+                }
+            }
+
+            @Override
+            public void phase(Phase phase, long nanos, long points) {
+                for (GenerationListener l : listeners) {
+                    l.phase(phase, nanos, points);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/**
+ * A GenerationListener accumulating the counters of a generation: accepted
+ * and rejected points for every cluster, absorbed and outlier noise points,
+ * bytes written, and time and points for every phase.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class GenerationMetrics implements GenerationListener {
+
+    long[] accepted = new long[0];
+    long[] rejectedDomain = new long[0];
+    long[] rejectedEllipse = new long[0];
+    long absorbed;
+    long outliers;
+    long bytes;
+    final long[] phaseNanos = new long[Phase.values().length];
+    final long[] phasePoints = new long[Phase.values().length];
+
+    @Override
+    public synchronized void clusterPoints(int cluster, long accepted, long rejectedDomain, long rejectedEllipse) {
+        if (cluster >= this.accepted.length) {
+            this.accepted = Arrays.copyOf(this.accepted, cluster + 1);
+            this.rejectedDomain = Arrays.copyOf(this.rejectedDomain, cluster + 1);
+            this.rejectedEllipse = Arrays.copyOf(this.rejectedEllipse, cluster + 1);
+        }
+        this.accepted[cluster] += accepted;
+        this.rejectedDomain[cluster] += rejectedDomain;
+        this.rejectedEllipse[cluster] += rejectedEllipse;
+    }
+
+    @Override
+    public synchronized void noisePoints(long absorbed, long outliers) {
+        this.absorbed += absorbed;
+        this.outliers += outliers;
+    }
+
+    @Override
+    public synchronized void bytesWritten(long bytes) {
+        this.bytes += bytes;
+    }
+
+    @Override
+    public synchronized void phase(Phase phase, long nanos, long points) {
+        phaseNanos[phase.ordinal()] += nanos;
+        phasePoints[phase.ordinal()] += points;
+    }
+
+    public synchronized int getNumberOfClusters() {
+        return accepted.length;
+    }
+
+    public synchronized long getAccepted(int cluster) {
+        return cluster < accepted.length ? accepted[cluster] : 0;
+    }
+
+    public synchronized long getRejectedDomain(int cluster) {
+        return cluster < rejectedDomain.length ? rejectedDomain[cluster] : 0;
+    }
+
+    public synchronized long getRejectedEllipse(int cluster) {
+        return cluster < rejectedEllipse.length ? rejectedEllipse[cluster] : 0;
+    }
+
+    public synchronized long getAccepted() {
+        return sum(accepted);
+    }
+
+    public synchronized long getRejectedDomain() {
+        return sum(rejectedDomain);
+    }
+
+    public synchronized long getRejectedEllipse() {
+        return sum(rejectedEllipse);
+    }
+
+    public synchronized long getAbsorbed() {
+        return absorbed;
+    }
+
+    public synchronized long getOutliers() {
+        return outliers;
+    }
+
+    public synchronized long getBytesWritten() {
+        return bytes;
+    }
+
+    public synchronized long getNanos(Phase phase) {
+        return phaseNanos[phase.ordinal()];
+    }
+
+    public synchronized long getPoints(Phase phase) {
+        return phasePoints[phase.ordinal()];
+    }
+
+    private static long sum(long[] a) {
+        long s = 0;
+        for (long v : a) {
+            s += v;
+        }
+        return s;
+    }
+
+    /**
+     * Prints the counters, the acceptance rate of every cluster and the
+     * throughput of every phase.
+     */
+    public synchronized void print(PrintStream out) {
+        for (int i = 0; i < accepted.length; i++) {
+            long candidates = accepted[i] + rejectedDomain[i] + rejectedEllipse[i];
+            out.printf("Cluster %d: %d accepted, %d rejected outside the domain, %d rejected outside the ellipse (acceptance %.3f)%n",
+                    i, accepted[i], rejectedDomain[i], rejectedEllipse[i], candidates == 0 ? 1.0 : (double) accepted[i] / candidates);
+        }
+        out.println("Noise: " + absorbed + " absorbed by clusters, " + outliers + " outliers");
+        out.println("Bytes written: " + bytes);
+        for (Phase phase : Phase.values()) {
+            long nanos = phaseNanos[phase.ordinal()];
+            if (nanos > 0) {
+                long points = phasePoints[phase.ordinal()];
+                out.printf("%s: %.3f s, %d points (%.0f points/s)%n", phase, nanos / 1e9, points, points * 1e9 / nanos);
+            }
+        }
+    }
+}
@@ -0,0 +1,491 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Description of a dataset to be generated, split into chunks that can be
+ * generated independently. Every chunk contains either points of a single
+ * cluster or noise points, and has its own random stream derived from the
+ * seed and the position of the chunk, so that the generated points do not
+ * depend on the order in which chunks are processed.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class GenerationPlan {
+
+    public static final int DEFAULT_CHUNK_SIZE = 65536;
+
+    /**
+     * SEQUENTIAL generates all the points from a single java.util.Random
+     * seeded with the seed of the plan, exactly as the original generator
+     * does, also summing the relative distances in the same order at every
+     * dimensionality; the dataset cannot be split. CHUNKED gives every chunk its own
+     * random stream, so that chunks can be generated in parallel. COUNTER
+     * generates every point from a counter-based stream selected by the index
+     * of the point, so that any range of points can be generated on its own;
+     * it is split into chunks as CHUNKED.
+     */
+    public enum Mode {
+        SEQUENTIAL, CHUNKED, COUNTER
+    }
+
+    /**
+     * How the points of the clusters are sampled in CHUNKED and COUNTER mode. REJECTION
+     * draws from the Gaussian and rejects the points outside the ellipsoid or
+     * the domain, as the original generator does. TRUNCATED uses a
+     * TruncatedEllipsoidSampler, which draws the points from the same
+     * distribution with far fewer rejections at high dimensionality. AUTO
+     * uses the TruncatedEllipsoidSampler for the clusters where the rejection
+     * sampler would reject most of the points.
+     */
+    public enum ClusterSampling {
+        REJECTION, TRUNCATED, AUTO
+    }
+
+    /**
+     * The random values the points are generated from. LEGACY uses the
+     * generators of the previous versions, and generates the same datasets:
+     * java.util.Random in SEQUENTIAL mode and SplittableRandom in CHUNKED
+     * mode, with Gaussian values drawn by the polar method. FAST uses a
+     * Xoshiro256Sampler, drawing Gaussian values by the Ziggurat method. In
+     * COUNTER mode the streams are always Philox streams, and FAST only
+     * replaces the polar method with the Ziggurat method.
+     */
+    public enum RandomEngine {
+        LEGACY, FAST
+    }
+
+    protected Range domain;
+    protected int[][] centers;
+    protected int[][] radii;
+    protected int[] nClusterPoints;
+    protected int nNoisePoints;
+    protected long seed;
+    protected int chunkSize = DEFAULT_CHUNK_SIZE;
+    protected Mode mode = Mode.CHUNKED;
+    protected ClusterSampling clusterSampling = ClusterSampling.REJECTION;
+    protected RandomEngine randomEngine = RandomEngine.LEGACY;
+    protected TruncatedEllipsoidSampler[] truncatedSamplers;
+    protected ClusterCovariance[] covariances;
+    protected CovarianceSampler[] covarianceSamplers;
+    protected ClusterIndex clusterIndex;
+    protected GenerationListener listener;
+
+    public GenerationPlan(Range domain, int[][] centers, int[][] radii, int[] nClusterPoints, int nNoisePoints, long seed) {
+        this.domain = domain;
+        this.centers = centers;
+        this.radii = radii;
+        this.nClusterPoints = nClusterPoints;
+        this.nNoisePoints = nNoisePoints;
+        this.seed = seed;
+    }
+
+    public GenerationPlan(Range domain, int numberOfPoints, int[][] centers, int[][] radii, double noiseRatio, long seed) {
+        this(domain, centers, radii, clusterSizes(numberOfPoints, centers.length, noiseRatio), 0, seed);
+        nNoisePoints = numberOfPoints;
+        for (int n : nClusterPoints) {
+            nNoisePoints -= n;
+        }
+    }
+
+    public static int[] clusterSizes(int numberOfPoints, int numberOfClusters, double noiseRatio) {
+        int nPointsPerCluster = numberOfClusters == 0 ? 0 : (int) (0.5 + numberOfPoints * (1 - noiseRatio) / numberOfClusters);
+        int[] nClusterPoints = new int[numberOfClusters];
+        for (int i = 0; i < nClusterPoints.length; i++) {
+            nClusterPoints[i] = nPointsPerCluster;
+        }
+        return nClusterPoints;
+    }
+
+    public Range getDomain() {
+        return domain;
+    }
+
+    public int getDimensionality() {
+        return domain.getDimensionality();
+    }
+
+    public int[][] getCenters() {
+        return centers;
+    }
+
+    public int[][] getRadii() {
+        return radii;
+    }
+
+    public int getNumberOfClusters() {
+        return centers.length;
+    }
+
+    public int[] getClusterPoints() {
+        return nClusterPoints;
+    }
+
+    public int getNoisePoints() {
+        return nNoisePoints;
+    }
+
+    public long getNumberOfPoints() {
+        long n = Math.max(0, nNoisePoints);
+        for (int c : nClusterPoints) {
+            n += Math.max(0, c);
+        }
+        return n;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public synchronized void setMode(Mode mode) {
+        this.mode = mode;
+        covarianceSamplers = null;
+        clusterIndex = null;
+    }
+
+    public RandomEngine getRandomEngine() {
+        return randomEngine;
+    }
+
+    public synchronized void setRandomEngine(RandomEngine randomEngine) {
+        this.randomEngine = randomEngine;
+        clusterIndex = null;
+    }
+
+    /**
+     * Returns true if the relative distances are computed by DistanceKernel,
+     * i.e., unless the plan is in SEQUENTIAL mode with the LEGACY engine,
+     * which sums them in order as the original generator.
+     */
+    boolean usesDistanceKernels() {
+        return mode != Mode.SEQUENTIAL || randomEngine != RandomEngine.LEGACY;
+    }
+
+    public GenerationListener getListener() {
+        return listener;
+    }
+
+    /**
+     * Sets the listener receiving the counters and timings of the generation
+     * of this plan, or null for none.
+     */
+    public void setListener(GenerationListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Reports to the listener the points added to the block from position
+     * first on, all generated for the given cluster (or noise) in nanos
+     * nanoseconds, with the rejected candidates counted in rejections.
+     */
+    void report(int cluster, PointBlock block, int first, long[] rejections, long nanos) {
+        GenerationListener l = listener;
+        if (l == null) {
+            return;
+        }
+        int points = block.size - first;
+        if (cluster == Chunk.NOISE) {
+            long absorbed = 0;
+            for (int i = first; i < block.size; i++) {
+                if (block.labels[i] != -1) {
+                    absorbed++;
+                }
+            }
+            l.noisePoints(absorbed, points - absorbed);
+            l.phase(GenerationListener.Phase.NOISE, nanos, points);
+        } else {
+            l.clusterPoints(cluster, points, rejections[TruncatedEllipsoidSampler.DOMAIN], rejections[TruncatedEllipsoidSampler.ELLIPSE]);
+            l.phase(GenerationListener.Phase.CLUSTERS, nanos, points);
+        }
+    }
+
+    public ClusterSampling getClusterSampling() {
+        return clusterSampling;
+    }
+
+    /**
+     * Sets how the points of the clusters are sampled. It is ignored in
+     * SEQUENTIAL mode, which always uses rejection sampling.
+     */
+    public synchronized void setClusterSampling(ClusterSampling clusterSampling) {
+        this.clusterSampling = clusterSampling;
+        truncatedSamplers = null;
+        covarianceSamplers = null;
+    }
+
+    /**
+     * Returns the truncated sampler used for the i-th cluster, or null if the
+     * cluster uses rejection sampling, has a covariance matrix or a zero
+     * radius.
+     */
+    public synchronized TruncatedEllipsoidSampler getTruncatedSampler(int i) {
+        if (clusterSampling == ClusterSampling.REJECTION) {
+            return null;
+        }
+        if (truncatedSamplers == null) {
+            truncatedSamplers = new TruncatedEllipsoidSampler[centers.length];
+            for (int j = 0; j < centers.length; j++) {
+                truncatedSamplers[j] = createTruncatedSampler(j);
+            }
+        }
+        return truncatedSamplers[i];
+    }
+
+    private TruncatedEllipsoidSampler createTruncatedSampler(int i) {
+        if (getCovariance(i) != null || hasZeroRadius(radii[i])) {
+            return null;
+        }
+        TruncatedEllipsoidSampler sampler = new TruncatedEllipsoidSampler(centers[i], radii[i], domain);
+        return clusterSampling == ClusterSampling.TRUNCATED || sampler.getNaiveAcceptance() < 0.5 ? sampler : null;
+    }
+
+    /**
+     * Moves the i-th cluster, which must not have a covariance matrix, e.g.,
+     * while it drifts. Only the sampler of the cluster is rebuilt, and the
+     * index used to label the noise points when it is next needed. The i-th
+     * center and radius of the arrays passed to the constructor are replaced.
+     */
+    synchronized void setCluster(int i, int[] center, int[] radius) {
+        if (getCovariance(i) != null) {
+            throw new IllegalStateException("Cluster " + i + " has a covariance matrix");
+        }
+        centers[i] = center;
+        radii[i] = radius;
+        if (truncatedSamplers != null) {
+            truncatedSamplers[i] = createTruncatedSampler(i);
+        }
+        clusterIndex = null;
+    }
+
+    private static boolean hasZeroRadius(int[] radius) {
+        for (int r : radius) {
+            if (r == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the covariance of the i-th cluster, or null if the cluster is
+     * axis-aligned.
+     */
+    public synchronized ClusterCovariance getCovariance(int i) {
+        return covariances == null ? null : covariances[i];
+    }
+
+    /**
+     * Sets the covariance of the i-th cluster, whose points are then drawn
+     * from the Gaussian with that covariance, truncated to the points at
+     * Mahalanobis distance at most 4 from the center. The radii of the
+     * cluster are replaced by the half-widths of the bounding box of its
+     * ellipsoid; the arrays passed to the constructor are not modified.
+     */
+    public synchronized void setCovariance(int i, ClusterCovariance covariance) {
+        if (covariance.getDimensionality() != getDimensionality()) {
+            throw new IllegalArgumentException("The covariance matrix has " + covariance.getDimensionality() + " dimensions instead of " + getDimensionality());
+        }
+        if (covariances == null) {
+            covariances = new ClusterCovariance[centers.length];
+            radii = radii.clone();
+        }
+        covariances[i] = covariance;
+        radii[i] = covariance.getBoundingRadius();
+        truncatedSamplers = null;
+        covarianceSamplers = null;
+        clusterIndex = null;
+    }
+
+    /**
+     * Returns the sampler of the i-th cluster, or null if the cluster is
+     * axis-aligned. The sampler draws from the truncated Gaussian unless the
+     * plan is in SEQUENTIAL mode, or the cluster sampling is REJECTION, or
+     * it is AUTO and the rejection sampler would accept most of the points.
+     */
+    public synchronized CovarianceSampler getCovarianceSampler(int i) {
+        if (covariances == null || covariances[i] == null) {
+            return null;
+        }
+        if (covarianceSamplers == null) {
+            covarianceSamplers = new CovarianceSampler[centers.length];
+        }
+        if (covarianceSamplers[i] == null) {
+            boolean truncated = mode != Mode.SEQUENTIAL && clusterSampling != ClusterSampling.REJECTION;
+            CovarianceSampler sampler = new CovarianceSampler(centers[i], covariances[i], domain, truncated);
+            if (truncated && clusterSampling == ClusterSampling.AUTO && sampler.getNaiveAcceptance() >= 0.5) {
+                sampler = new CovarianceSampler(centers[i], covariances[i], domain, false);
+            }
+            covarianceSamplers[i] = sampler;
+        }
+        return covarianceSamplers[i];
+    }
+
+    /**
+     * Returns the index used to label the noise points.
+     */
+    public synchronized ClusterIndex getClusterIndex() {
+        if (clusterIndex == null) {
+            clusterIndex = new ClusterIndex(centers, radii, covariances, usesDistanceKernels());
+        }
+        return clusterIndex;
+    }
+
+    /**
+     * Returns the sources generating the points of this plan, in output
+     * order: a single source in SEQUENTIAL mode, one source per chunk in
+     * CHUNKED and COUNTER mode.
+     */
+    List<PointSource> createSources() {
+        ArrayList<PointSource> sources = new ArrayList<>();
+        if (mode == Mode.SEQUENTIAL) {
+            sources.add(new LegacyPointSource(this));
+        } else {
+            for (Chunk chunk : getChunks()) {
+                sources.add(createSource(chunk));
+            }
+        }
+        return sources;
+    }
+
+    /**
+     * Returns the source generating the points of the chunk, in CHUNKED or
+     * COUNTER mode.
+     */
+    PointSource createSource(Chunk chunk) {
+        if (mode == Mode.COUNTER) {
+            return new CounterPointSource(this, chunk.cluster, chunk.start, chunk.start + chunk.size);
+        }
+        return new ChunkPointSource(this, chunk);
+    }
+
+    /**
+     * Returns the sources generating the points with indexes in [from, to),
+     * in output order, one source for every chunk overlapping the range. The
+     * plan must be in COUNTER mode.
+     */
+    List<PointSource> createSources(long from, long to) {
+        if (mode != Mode.COUNTER) {
+            throw new IllegalStateException("Ranges of points can only be generated in COUNTER mode");
+        }
+        if (from < 0 || to > getNumberOfPoints() || from > to) {
+            throw new IndexOutOfBoundsException("Invalid range [" + from + ", " + to + ") of " + getNumberOfPoints() + " points");
+        }
+        ArrayList<PointSource> sources = new ArrayList<>();
+        for (Chunk chunk : getChunks()) {
+            long a = Math.max(from, chunk.start);
+            long b = Math.min(to, chunk.start + chunk.size);
+            if (a < b) {
+                sources.add(new CounterPointSource(this, chunk.cluster, a, b));
+            }
+        }
+        return sources;
+    }
+
+    /**
+     * Returns the chunks of this plan, in output order: the chunks of the
+     * first cluster, then those of the second cluster, and so on, and
+     * finally the noise chunks.
+     */
+    public List<Chunk> getChunks() {
+        ArrayList<Chunk> chunks = new ArrayList<>();
+        for (int i = 0; i < nClusterPoints.length; i++) {
+            addChunks(chunks, i, nClusterPoints[i]);
+        }
+        addChunks(chunks, Chunk.NOISE, nNoisePoints);
+        return chunks;
+    }
+
+    private void addChunks(List<Chunk> chunks, int cluster, int points) {
+        Chunk last = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+        long start = last == null ? 0 : last.start + last.size;
+        for (int from = 0; from < points; from += chunkSize) {
+            chunks.add(new Chunk(chunks.size(), cluster, start + from, Math.min(chunkSize, points - from)));
+        }
+    }
+
+    /**
+     * Returns the seed of the random stream of the chunk with the given
+     * index.
+     */
+    long chunkSeed(int index) {
+        return mix64(seed + (index + 1) * 0x9E3779B97F4A7C15L);
+    }
+
+    static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    public static class Chunk {
+
+        public static final int NOISE = -1;
+
+        final int index;
+        final int cluster;
+        final long start;
+        final int size;
+
+        Chunk(int index, int cluster, long start, int size) {
+            this.index = index;
+            this.cluster = cluster;
+            this.start = start;
+            this.size = size;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public int getCluster() {
+            return cluster;
+        }
+
+        /**
+         * Returns the position in the dataset of the first point of the
+         * chunk.
+         */
+        public long getStart() {
+            return start;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public boolean isNoise() {
+            return cluster == NOISE;
+        }
+    }
+}
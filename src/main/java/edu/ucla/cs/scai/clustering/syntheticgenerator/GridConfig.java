@@ -0,0 +1,271 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Properties;
+import java.util.StringTokenizer;
+
+/**
+ * Configuration of an experiment grid. The defaults are the values
+ * originally hard-coded in GenerateGaussian, except for the output paths,
+ * which are the directories data/ and shuffled_data/ of the working
+ * directory. A configuration file is a
+ * properties file where lists are comma-separated, e.g.
+ *
+ * <pre>
+ * basePath=/data/gaussian/data/
+ * shuffledPath=/data/gaussian/shuffled_data/
+ * dataSetSizes=100000,1000000
+ * clusters=0,1,2,4
+ * dimensions=2,4
+ * noiseRatios=0.1,0
+ * threads=8
+ * fused=true
+ * keepUnshuffled=false
+ * metrics=true
+ * rotated=false
+ * randomEngine=LEGACY
+ * </pre>
+ *
+ * With fused=true, every dataset is generated, drawn and shuffled in a single
+ * pass, and the unshuffled copy is written only if keepUnshuffled is true.
+ * With metrics=true, the counters and timings of every job are printed when
+ * it ends. They are always emitted as JFR events, see JfrGenerationListener.
+ * With rotated=true, the axes of every cluster are randomly rotated, see
+ * ClusterCovariance.rotated, keeping the radii along the axes.
+ * With randomEngine=FAST, the points are drawn from a Xoshiro256Sampler
+ * instead of java.util.Random, see GenerationPlan.RandomEngine; the datasets
+ * are different from the LEGACY ones, but drawn from the same distributions.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class GridConfig {
+
+    //relative to the working directory
+    protected String basePath = "data/";
+    protected String shuffledPath = "shuffled_data/";
+    protected int domainWidth = 2000;
+    protected int[] dataSetSizes = {100000, 1000000, 10000000};
+    protected int[] nClusters = {0, 1, 2, 4, 8, 16, 32};
+    protected int[] nDimensions = {2, 4, 6, 8, 10, 12};
+    protected double[] noiseRatios = {0.1, 0.08, 0.06, 0.04, 0.02, 0};
+    protected double[] zeroClustersNoiseRatios = {1};
+    protected long placementSeed = 100;
+    protected long seed = 100;
+    protected int threads = Runtime.getRuntime().availableProcessors();
+    protected long memoryLimit = Runtime.getRuntime().maxMemory() / 4 * 3;
+    protected long shuffleMemoryBudget = ExternalShuffle.DEFAULT_MEMORY_BUDGET;
+    protected boolean createImages = true;
+    protected boolean shuffle = true;
+    protected boolean verifyChecksums = false;
+    protected boolean fused = false;
+    protected boolean keepUnshuffled = true;
+    protected boolean metrics = false;
+    protected boolean rotated = false;
+    protected GenerationPlan.RandomEngine randomEngine = GenerationPlan.RandomEngine.LEGACY;
+
+    public GridConfig() {
+    }
+
+    public static GridConfig load(String fileName) throws IOException {
+        Properties p = new Properties();
+        try (Reader in = new FileReader(fileName)) {
+            p.load(in);
+        }
+        GridConfig c = new GridConfig();
+        c.basePath = p.getProperty("basePath", c.basePath);
+        c.shuffledPath = p.getProperty("shuffledPath", c.shuffledPath);
+        c.domainWidth = Integer.parseInt(p.getProperty("domainWidth", "" + c.domainWidth));
+        if (p.containsKey("dataSetSizes")) {
+            c.dataSetSizes = parseInts(p.getProperty("dataSetSizes"));
+        }
+        if (p.containsKey("clusters")) {
+            c.nClusters = parseInts(p.getProperty("clusters"));
+        }
+        if (p.containsKey("dimensions")) {
+            c.nDimensions = parseInts(p.getProperty("dimensions"));
+        }
+        if (p.containsKey("noiseRatios")) {
+            c.noiseRatios = parseDoubles(p.getProperty("noiseRatios"));
+        }
+        if (p.containsKey("zeroClustersNoiseRatios")) {
+            c.zeroClustersNoiseRatios = parseDoubles(p.getProperty("zeroClustersNoiseRatios"));
+        }
+        c.placementSeed = Long.parseLong(p.getProperty("placementSeed", "" + c.placementSeed));
+        c.seed = Long.parseLong(p.getProperty("seed", "" + c.seed));
+        c.threads = Integer.parseInt(p.getProperty("threads", "" + c.threads));
+        if (p.containsKey("memoryLimitMB")) {
+            c.memoryLimit = Long.parseLong(p.getProperty("memoryLimitMB")) << 20;
+        }
+        if (p.containsKey("shuffleMemoryMB")) {
+            c.shuffleMemoryBudget = Long.parseLong(p.getProperty("shuffleMemoryMB")) << 20;
+        }
+        c.createImages = Boolean.parseBoolean(p.getProperty("images", "" + c.createImages));
+        c.shuffle = Boolean.parseBoolean(p.getProperty("shuffle", "" + c.shuffle));
+        c.verifyChecksums = Boolean.parseBoolean(p.getProperty("verifyChecksums", "" + c.verifyChecksums));
+        c.fused = Boolean.parseBoolean(p.getProperty("fused", "" + c.fused));
+        c.keepUnshuffled = Boolean.parseBoolean(p.getProperty("keepUnshuffled", "" + c.keepUnshuffled));
+        c.metrics = Boolean.parseBoolean(p.getProperty("metrics", "" + c.metrics));
+        c.rotated = Boolean.parseBoolean(p.getProperty("rotated", "" + c.rotated));
+        c.randomEngine = GenerationPlan.RandomEngine.valueOf(p.getProperty("randomEngine", c.randomEngine.name()));
+        return c;
+    }
+
+    static int[] parseInts(String s) {
+        StringTokenizer st = new StringTokenizer(s, " ,");
+        int[] v = new int[st.countTokens()];
+        for (int i = 0; i < v.length; i++) {
+            v[i] = Integer.parseInt(st.nextToken());
+        }
+        return v;
+    }
+
+    static double[] parseDoubles(String s) {
+        StringTokenizer st = new StringTokenizer(s, " ,");
+        double[] v = new double[st.countTokens()];
+        for (int i = 0; i < v.length; i++) {
+            v[i] = Double.parseDouble(st.nextToken());
+        }
+        return v;
+    }
+
+    public String getBasePath() {
+        return basePath;
+    }
+
+    public void setBasePath(String basePath) {
+        this.basePath = basePath;
+    }
+
+    public String getShuffledPath() {
+        return shuffledPath;
+    }
+
+    public void setShuffledPath(String shuffledPath) {
+        this.shuffledPath = shuffledPath;
+    }
+
+    public int getDomainWidth() {
+        return domainWidth;
+    }
+
+    public int[] getDataSetSizes() {
+        return dataSetSizes;
+    }
+
+    public void setDataSetSizes(int[] dataSetSizes) {
+        this.dataSetSizes = dataSetSizes;
+    }
+
+    public int[] getClusters() {
+        return nClusters;
+    }
+
+    public void setClusters(int[] nClusters) {
+        this.nClusters = nClusters;
+    }
+
+    public int[] getDimensions() {
+        return nDimensions;
+    }
+
+    public void setDimensions(int[] nDimensions) {
+        this.nDimensions = nDimensions;
+    }
+
+    public double[] getNoiseRatios() {
+        return noiseRatios;
+    }
+
+    public void setNoiseRatios(double[] noiseRatios) {
+        this.noiseRatios = noiseRatios;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public long getMemoryLimit() {
+        return memoryLimit;
+    }
+
+    public void setMemoryLimit(long memoryLimit) {
+        this.memoryLimit = memoryLimit;
+    }
+
+    public boolean isCreateImages() {
+        return createImages;
+    }
+
+    public void setCreateImages(boolean createImages) {
+        this.createImages = createImages;
+    }
+
+    public boolean isShuffle() {
+        return shuffle;
+    }
+
+    public void setShuffle(boolean shuffle) {
+        this.shuffle = shuffle;
+    }
+
+    public boolean isFused() {
+        return fused;
+    }
+
+    public void setFused(boolean fused) {
+        this.fused = fused;
+    }
+
+    public boolean isKeepUnshuffled() {
+        return keepUnshuffled;
+    }
+
+    public void setKeepUnshuffled(boolean keepUnshuffled) {
+        this.keepUnshuffled = keepUnshuffled;
+    }
+
+    public boolean isMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(boolean metrics) {
+        this.metrics = metrics;
+    }
+
+    public boolean isRotated() {
+        return rotated;
+    }
+
+    public void setRotated(boolean rotated) {
+        this.rotated = rotated;
+    }
+
+    public GenerationPlan.RandomEngine getRandomEngine() {
+        return randomEngine;
+    }
+
+    public void setRandomEngine(GenerationPlan.RandomEngine randomEngine) {
+        this.randomEngine = randomEngine;
+    }
+}
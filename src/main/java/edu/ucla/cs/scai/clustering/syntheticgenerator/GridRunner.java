@@ -0,0 +1,441 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.zip.CRC32;
+
+/**
+ * Runs the experiment grid of GenerateGaussian: every combination of size,
+ * number of clusters, noise ratio and dimensionality is a job that generates
+ * the dataset, its image and its shuffled copy. Jobs run on a bounded pool of
+ * workers, and a job only starts when its estimated memory fits in the
+ * configured limit together with the running jobs.
+ *
+ * When a job completes, a manifest with its parameters and the size and CRC32
+ * of its outputs is written next to the dataset; jobs whose manifest matches
+ * are skipped, thus an interrupted run can be resumed. The duration of every
+ * job is appended to summary.tsv in the base path.
+ *
+ * The positions and radii of the clusters are computed exactly as in the
+ * original GenerateGaussian, including the random numbers that the original
+ * program consumed while shuffling the datasets generated before the first
+ * use of every number of clusters, so that the generated datasets are the
+ * same. The shuffled copies use a random generator seeded from the seed and
+ * the name of the job, so that they do not depend on the order of the jobs.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class GridRunner {
+
+    static final long IMAGE_BYTES_PER_PIXEL = 8;
+    static final long GENERATION_MEMORY = 32L << 20;
+    static final long SHUFFLE_BYTES_PER_COORDINATE = Integer.BYTES;
+
+    final GridConfig config;
+
+    public GridRunner(GridConfig config) {
+        this.config = config;
+    }
+
+    public static class Job {
+
+        final int nTuples;
+        final int nOfClusters;
+        final double noiseRatio;
+        final int dimensionality;
+        final int[][] centers;
+        final int[][] radii;
+        final String name;
+
+        Job(int nTuples, int nOfClusters, double noiseRatio, int dimensionality, int[][] centers, int[][] radii) {
+            this.nTuples = nTuples;
+            this.nOfClusters = nOfClusters;
+            this.noiseRatio = noiseRatio;
+            this.dimensionality = dimensionality;
+            this.centers = centers;
+            this.radii = radii;
+            name = nTuples + "p_" + dimensionality + "d_" + nOfClusters + "c_" + noiseRatio + "n.data";
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int[][] getCenters() {
+            return centers;
+        }
+
+        public int[][] getRadii() {
+            return radii;
+        }
+
+        /**
+         * Returns the number of rows of the dataset generated by the job.
+         */
+        long getRows() {
+            int[] nClusterPoints = GenerationPlan.clusterSizes(nTuples, nOfClusters, noiseRatio);
+            long rows = 0;
+            for (int n : nClusterPoints) {
+                rows += n;
+            }
+            return rows + Math.max(0, nTuples - rows);
+        }
+    }
+
+    /**
+     * Returns the jobs of the grid, in the order of the original program.
+     * Repeated values in the grid produce the same file, which is generated
+     * only once.
+     */
+    public List<Job> createJobs() {
+        Random rand = new Random(config.placementSeed);
+        int domainWidth = config.domainWidth;
+        int maxDimension = 0;
+        for (int d : config.nDimensions) {
+            maxDimension = Math.max(maxDimension, d);
+        }
+        int missingPlacements = 0;
+        for (int i = 0; i < config.nClusters.length; i++) {
+            boolean first = true;
+            for (int j = 0; j < i; j++) {
+                first &= config.nClusters[j] != config.nClusters[i];
+            }
+            if (first) {
+                missingPlacements++;
+            }
+        }
+
+        HashMap<Integer, List<List<Double>>> clusterPositions = new HashMap<>();
+        HashMap<Integer, double[][]> clusterRadii = new HashMap<>();
+        ArrayList<Job> jobs = new ArrayList<>();
+        HashSet<String> names = new HashSet<>();
+
+        for (int nTuples : config.dataSetSizes) {
+            for (int nOfClusters : config.nClusters) {
+                if (!clusterPositions.containsKey(nOfClusters)) {
+                    List<List<Double>> positions = new ArrayList<>(maxDimension);
+                    clusterPositions.put(nOfClusters, positions);
+                    double interval = 1.0 / (nOfClusters + 1);
+                    for (int dim = 0; dim < maxDimension; dim++) {
+                        List<Double> position = new ArrayList<>();
+                        for (int clus = 0; clus < nOfClusters; clus++) {
+                            position.add((clus + 1) * interval - 0.05 * interval + 0.1 * interval * rand.nextDouble());
+                        }
+                        Collections.shuffle(position, rand);
+                        positions.add(position);
+                    }
+                    double allRadii[][] = new double[nOfClusters][maxDimension];
+                    clusterRadii.put(nOfClusters, allRadii);
+                    for (int clus = 0; clus < nOfClusters; clus++) {
+                        for (int i = 0; i < maxDimension; i++) {
+                            allRadii[clus][i] = 0.2 * interval + 0.8 * rand.nextDouble() * interval;
+                        }
+                    }
+                    missingPlacements--;
+                }
+
+                List<List<Double>> positions = clusterPositions.get(nOfClusters);
+                double allRadii[][] = clusterRadii.get(nOfClusters);
+
+                for (double noiseRatio : nOfClusters > 0 ? config.noiseRatios : config.zeroClustersNoiseRatios) {
+                    for (int dimensionality : config.nDimensions) {
+                        int[][] centers = new int[nOfClusters][dimensionality];
+                        int[][] radii = new int[nOfClusters][dimensionality];
+                        for (int i = 0; i < nOfClusters; i++) {
+                            for (int j = 0; j < dimensionality; j++) {
+                                centers[i][j] = ((int) (domainWidth * positions.get(j).get(i) + 0.5));
+                                radii[i][j] = (int) (allRadii[i][j] * domainWidth);
+                            }
+                        }
+                        Job job = new Job(nTuples, nOfClusters, noiseRatio, dimensionality, centers, radii);
+                        if (names.add(job.name)) {
+                            jobs.add(job);
+                        }
+                        if (missingPlacements > 0) {
+                            //the original program shuffled every dataset with the same random generator
+                            skipShuffle(rand, job.getRows());
+                        }
+                    }
+                }
+            }
+        }
+        return jobs;
+    }
+
+    /**
+     * Consumes the random numbers used by the in-memory shuffleDataset on a
+     * dataset with the given number of rows.
+     */
+    static void skipShuffle(Random rand, long rows) {
+        for (long i = 0; i < rows - 1; i++) {
+            rand.nextInt((int) (rows - i));
+        }
+    }
+
+    public void run() throws IOException, InterruptedException {
+        List<Job> jobs = createJobs();
+        new File(config.basePath).mkdirs();
+        if (config.shuffle) {
+            new File(config.shuffledPath).mkdirs();
+        }
+        long totalPermits = Math.max(1, config.memoryLimit >> 20);
+        Semaphore memory = new Semaphore((int) Math.min(Integer.MAX_VALUE, totalPermits));
+        File summaryFile = new File(config.basePath, "summary.tsv");
+        boolean newSummary = !summaryFile.exists();
+        ExecutorService pool = Executors.newFixedThreadPool(config.threads);
+        try (PrintWriter summary = new PrintWriter(new FileWriter(summaryFile, true), true)) {
+            if (newSummary) {
+                summary.println("job\tstatus\tseconds\trows");
+            }
+            System.out.println("Running " + jobs.size() + " jobs with " + config.threads + " threads and " + totalPermits + " MB");
+            ArrayList<Future<?>> futures = new ArrayList<>();
+            for (Job job : jobs) {
+                futures.add(pool.submit(() -> {
+                    int permits = (int) Math.min(totalPermits, Math.max(1, estimateMemory(job) >> 20));
+                    memory.acquireUninterruptibly(permits);
+                    long start = System.nanoTime();
+                    String status;
+                    try {
+                        status = runJob(job) ? "generated" : "skipped";
+                    } catch (Exception e) {
+                        System.out.println("Job " + job.name + " failed: " + e);
+                        status = "failed";
+                    } finally {
+                        memory.release(permits);
+                    }
+                    synchronized (summary) {
+                        summary.printf("%s\t%s\t%.3f\t%d%n", job.name, status, (System.nanoTime() - start) / 1e9, job.getRows());
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    throw new IOException(e.getCause());
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Returns the memory used by the job: the generation buffers, the raster
+     * of the image, and the points held in memory to shuffle them, i.e., the
+     * coordinates, the label and the shuffle index of every row, up to the
+     * shuffle memory budget, beyond which they are scattered to files.
+     */
+    long estimateMemory(Job job) {
+        long m = GENERATION_MEMORY;
+        if (config.createImages) {
+            m += IMAGE_BYTES_PER_PIXEL * config.domainWidth * config.domainWidth;
+        }
+        if (config.shuffle) {
+            m += Math.min(config.shuffleMemoryBudget, job.getRows() * SHUFFLE_BYTES_PER_COORDINATE * (job.dimensionality + 2));
+        }
+        return m;
+    }
+
+    /**
+     * Runs the job, unless its outputs are already complete.
+     *
+     * @return false if the job was skipped
+     */
+    boolean runJob(Job job) throws IOException {
+        String fileName = config.basePath + job.name;
+        File manifestFile = new File(fileName + ".manifest");
+        Properties parameters = parameters(job);
+        if (isComplete(manifestFile, parameters)) {
+            System.out.println("Skipping " + fileName);
+            return false;
+        }
+        manifestFile.delete();
+        System.out.println("Generating " + fileName);
+
+        int[] inf = new int[job.dimensionality];
+        int[] sup = new int[job.dimensionality];
+        for (int i = 0; i < job.dimensionality; i++) {
+            inf[i] = 0;
+            sup[i] = config.domainWidth - 1;
+        }
+        Range r = new Range(inf, sup);
+
+        ArrayList<String> outputs = new ArrayList<>();
+        String fileNameOut = config.shuffledPath + job.name;
+        Random rand = new Random(GenerationPlan.mix64(config.seed ^ job.name.hashCode()));
+        GenerationMetrics metrics = config.metrics ? new GenerationMetrics() : null;
+        GenerationListener listener = metrics == null ? new JfrGenerationListener(job.name) : GenerationListener.of(metrics, new JfrGenerationListener(job.name));
+        GenerationPlan plan = new GenerationPlan(r, job.nTuples, job.centers, job.radii, job.noiseRatio, config.seed);
+        plan.setMode(GenerationPlan.Mode.SEQUENTIAL);
+        plan.setRandomEngine(config.randomEngine);
+        plan.setListener(listener);
+        if (config.rotated) {
+            Random rotations = new Random(GenerationPlan.mix64(config.placementSeed ^ job.name.hashCode()));
+            for (int i = 0; i < job.nOfClusters; i++) {
+                plan.setCovariance(i, ClusterCovariance.rotated(job.radii[i], rotations));
+            }
+        }
+        if (config.fused && config.shuffle) {
+            MultidimensionalGaussianGenerator.generateShuffled(fileName, fileNameOut, plan, rand, config.shuffleMemoryBudget, new File(config.shuffledPath), config.keepUnshuffled, config.createImages);
+            if (config.keepUnshuffled) {
+                outputs.addAll(Arrays.asList(fileName, fileName + "_labels"));
+            }
+            outputs.add(fileName + "_info");
+            if (config.createImages) {
+                outputs.add(fileName + ".png");
+            }
+            outputs.addAll(Arrays.asList(fileNameOut, fileNameOut + "_labels"));
+        } else {
+            MultidimensionalGaussianGenerator.generate(fileName, plan);
+            outputs.addAll(Arrays.asList(fileName, fileName + "_labels", fileName + "_info"));
+            TextDataset dataset = null;
+            long start = System.nanoTime();
+            if (config.createImages && config.shuffle && ExternalShuffle.numberOfBuckets(new File(fileName).length(), new File(fileName + "_labels").length(), config.shuffleMemoryBudget) == 1) {
+                //the dataset fits in memory: it is parsed once for both the image and the shuffle
+                dataset = TextDataset.load(fileName, fileName + "_labels");
+            }
+            if (config.createImages) {
+                if (dataset != null) {
+                    MultidimensionalGaussianGenerator.createImage(dataset, r, true, fileName + ".png");
+                } else {
+                    MultidimensionalGaussianGenerator.createImage(fileName, fileName + "_labels", r, true);
+                }
+                listener.phase(GenerationListener.Phase.IMAGE, System.nanoTime() - start, job.getRows());
+                outputs.add(fileName + ".png");
+            }
+            if (config.shuffle) {
+                start = System.nanoTime();
+                if (dataset != null) {
+                    MultidimensionalGaussianGenerator.shuffleDataset(dataset, fileNameOut, fileNameOut + "_labels", rand);
+                } else {
+                    ExternalShuffle.shuffleDataset(fileName, fileName + "_labels", fileNameOut, fileNameOut + "_labels", rand, config.shuffleMemoryBudget, null);
+                }
+                listener.phase(GenerationListener.Phase.SHUFFLE, System.nanoTime() - start, job.getRows());
+                listener.bytesWritten(new File(fileNameOut).length() + new File(fileNameOut + "_labels").length());
+                outputs.addAll(Arrays.asList(fileNameOut, fileNameOut + "_labels"));
+            }
+        }
+        if (metrics != null) {
+            synchronized (System.out) {
+                System.out.println("Metrics of " + fileName);
+                metrics.print(System.out);
+            }
+        }
+        writeManifest(manifestFile, parameters, outputs);
+        return true;
+    }
+
+    Properties parameters(Job job) {
+        Properties p = new Properties();
+        p.setProperty("points", "" + job.nTuples);
+        p.setProperty("clusters", "" + job.nOfClusters);
+        p.setProperty("noiseRatio", "" + job.noiseRatio);
+        p.setProperty("dimensions", "" + job.dimensionality);
+        p.setProperty("domainWidth", "" + config.domainWidth);
+        p.setProperty("seed", "" + config.seed);
+        p.setProperty("centers", Arrays.deepToString(job.centers));
+        p.setProperty("radii", Arrays.deepToString(job.radii));
+        p.setProperty("rotated", "" + config.rotated);
+        if (config.randomEngine != GenerationPlan.RandomEngine.LEGACY) {
+            //LEGACY datasets are the same as those of the manifests without randomEngine
+            p.setProperty("randomEngine", config.randomEngine.name());
+        }
+        p.setProperty("images", "" + config.createImages);
+        p.setProperty("shuffle", "" + config.shuffle);
+        p.setProperty("fused", "" + config.fused);
+        p.setProperty("keepUnshuffled", "" + config.keepUnshuffled);
+        return p;
+    }
+
+    boolean isComplete(File manifestFile, Properties parameters) throws IOException {
+        if (!manifestFile.exists()) {
+            return false;
+        }
+        Properties manifest = new Properties();
+        try (InputStream in = new FileInputStream(manifestFile)) {
+            manifest.load(in);
+        }
+        for (String key : parameters.stringPropertyNames()) {
+            if (!parameters.getProperty(key).equals(manifest.getProperty(key))) {
+                return false;
+            }
+        }
+        int nFiles = Integer.parseInt(manifest.getProperty("files", "0"));
+        for (int i = 0; i < nFiles; i++) {
+            File f = new File(manifest.getProperty("file." + i));
+            if (!f.exists() || f.length() != Long.parseLong(manifest.getProperty("file." + i + ".size"))) {
+                return false;
+            }
+            if (config.verifyChecksums && checksum(f) != Long.parseLong(manifest.getProperty("file." + i + ".crc32"))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void writeManifest(File manifestFile, Properties parameters, List<String> outputs) throws IOException {
+        Properties manifest = new Properties();
+        manifest.putAll(parameters);
+        manifest.setProperty("files", "" + outputs.size());
+        for (int i = 0; i < outputs.size(); i++) {
+            File f = new File(outputs.get(i));
+            manifest.setProperty("file." + i, outputs.get(i));
+            manifest.setProperty("file." + i + ".size", "" + f.length());
+            manifest.setProperty("file." + i + ".crc32", "" + checksum(f));
+        }
+        File tmp = new File(manifestFile.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            manifest.store(out, "Outputs of " + manifestFile.getName());
+        }
+        Files.move(tmp.toPath(), manifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    static long checksum(File f) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream in = new FileInputStream(f)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                crc.update(buffer, 0, n);
+            }
+        }
+        return crc.getValue();
+    }
+}
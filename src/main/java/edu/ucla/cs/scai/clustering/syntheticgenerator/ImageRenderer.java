@@ -0,0 +1,415 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Renders a dataset stored in a .data file and its _labels file, or any
+ * PointDataset, into a PointRaster.
+ *
+ * The points are processed in parts: the chunks of the text files, which are
+ * parsed as in TextDataset, or ranges of BATCH_SIZE points of a dataset.
+ * Parts are read in parallel, and the pixels of the points of every part are
+ * binned by band, a band being a range of rows of the image. Parts are then
+ * drawn in the order of the file, every band by a different thread, which
+ * only scans the points of the part falling in its band. Since colors are
+ * assigned in the order of first appearance of the labels and points are
+ * drawn in the order of the file within every band, the image is the same as
+ * with a single thread.
+ *
+ * Unlike IntParser, the text files are parsed strictly: every row of the
+ * .data file must have as many values as the first one.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class ImageRenderer {
+
+    static final int BATCH_SIZE = 1 << 20;
+    static final long CHUNK_SIZE = 1 << 23;
+    static final int BUFFER_SIZE = 1 << 20;
+
+    final Range domain;
+    int dimX = 1;
+    int dimY = 2;
+    int scale = 1;
+    PointRaster.Mode mode = PointRaster.Mode.SCATTER;
+    boolean colors = true;
+    boolean translate = true;
+    int threads = Runtime.getRuntime().availableProcessors();
+
+    public ImageRenderer(Range domain) {
+        this.domain = domain;
+    }
+
+    /**
+     * Projects the points on dimensions dimX and dimY (1-based).
+     */
+    public ImageRenderer setDimensions(int dimX, int dimY) {
+        this.dimX = dimX;
+        this.dimY = dimY;
+        return this;
+    }
+
+    /**
+     * Sets the number of units of the domain covered by a pixel along each
+     * axis.
+     */
+    public ImageRenderer setScale(int scale) {
+        this.scale = scale;
+        return this;
+    }
+
+    public ImageRenderer setMode(PointRaster.Mode mode) {
+        this.mode = mode;
+        return this;
+    }
+
+    public ImageRenderer setColors(boolean colors) {
+        this.colors = colors;
+        return this;
+    }
+
+    /**
+     * If false, coordinates are not translated by the lower corner of the
+     * domain, as in the original createImage.
+     */
+    public ImageRenderer setTranslate(boolean translate) {
+        this.translate = translate;
+        return this;
+    }
+
+    public ImageRenderer setThreads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    public PointRaster createRaster() {
+        return new PointRaster(domain, dimX, dimY, scale, mode, colors, translate);
+    }
+
+    /**
+     * Renders the points of fileName, with the labels of fileNameLabels, into
+     * a new raster.
+     */
+    public PointRaster render(String fileName, String fileNameLabels) throws IOException {
+        PointRaster raster = createRaster();
+        int nThreads = Math.max(1, threads);
+        ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+        try {
+            TextDataset.Chunk[] dataChunks = TextDataset.split(fileName, nThreads, CHUNK_SIZE);
+            TextDataset.count(dataChunks, pool);
+            TextDataset.Chunk[] labelChunks = TextDataset.splitAtRows(fileNameLabels, dataChunks);
+            int dimensionality = dataChunks.length == 0 ? 0 : dataChunks[0].countValues();
+            if (dataChunks.length > 0 && Math.max(dimX, dimY) > dimensionality) {
+                throw new IOException("The points of " + fileName + " have " + dimensionality + " dimensions");
+            }
+            int bands = Math.max(1, Math.min(nThreads, raster.getHeight()));
+            int bandSize = (raster.getHeight() + bands - 1) / bands * raster.getWidth();
+            ArrayList<Callable<Bins>> parts = new ArrayList<>();
+            for (int i = 0; i < dataChunks.length; i++) {
+                TextDataset.Chunk data = dataChunks[i];
+                TextDataset.Chunk labels = labelChunks[i];
+                parts.add(() -> {
+                    int[][] columns = new int[dimensionality][];
+                    columns[dimX - 1] = new int[data.rows];
+                    if (columns[dimY - 1] == null) {
+                        columns[dimY - 1] = new int[data.rows];
+                    }
+                    data.parse(columns, data.firstRow);
+                    int[] label = new int[labels.rows];
+                    labels.parse(new int[][]{label}, labels.firstRow);
+                    return new Bins(raster, columns[dimX - 1], columns[dimY - 1], label, data.rows, bands, bandSize);
+                });
+            }
+            draw(raster, parts, bands, nThreads, pool);
+        } finally {
+            pool.shutdown();
+        }
+        return raster;
+    }
+
+    /**
+     * Renders the points of a dataset, such as a PackedDataset, into a new
+     * raster.
+     */
+    public PointRaster render(PointDataset dataset) throws IOException {
+        PointRaster raster = createRaster();
+        int nThreads = Math.max(1, threads);
+        ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+        try {
+            int bands = Math.max(1, Math.min(nThreads, raster.getHeight()));
+            int bandSize = (raster.getHeight() + bands - 1) / bands * raster.getWidth();
+            ArrayList<Callable<Bins>> parts = new ArrayList<>();
+            long size = dataset.size();
+            for (long first = 0; first < size; first += BATCH_SIZE) {
+                long from = first;
+                int n = (int) Math.min(BATCH_SIZE, size - from);
+                parts.add(() -> {
+                    int[] x = new int[n];
+                    int[] y = new int[n];
+                    int[] label = new int[n];
+                    for (int i = 0; i < n; i++) {
+                        x[i] = dataset.getCoord(from + i, dimX - 1);
+                        y[i] = dataset.getCoord(from + i, dimY - 1);
+                        label[i] = dataset.getLabel(from + i);
+                    }
+                    return new Bins(raster, x, y, label, n, bands, bandSize);
+                });
+            }
+            draw(raster, parts, bands, nThreads, pool);
+        } finally {
+            pool.shutdown();
+        }
+        return raster;
+    }
+
+    /**
+     * Renders the dataset and writes the image to pngFileName.
+     */
+    public void render(String fileName, String fileNameLabels, String pngFileName) throws IOException {
+        render(fileName, fileNameLabels).write(pngFileName);
+    }
+
+    /**
+     * Reads the parts in the pool, keeping at most one more part than the
+     * threads of the pool in memory, and draws them in order.
+     */
+    private static void draw(PointRaster raster, ArrayList<Callable<Bins>> parts, int bands, int nThreads, ExecutorService pool) throws IOException {
+        ExecutorService bandPool = bands > 1 ? Executors.newFixedThreadPool(bands - 1) : null;
+        int ahead = nThreads + 1;
+        ArrayDeque<Future<Bins>> pending = new ArrayDeque<>();
+        try {
+            int next = 0;
+            while (next < parts.size() || !pending.isEmpty()) {
+                while (next < parts.size() && pending.size() < ahead) {
+                    pending.add(pool.submit(parts.get(next++)));
+                }
+                drawBands(raster, pending.poll().get(), bandPool);
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        } finally {
+            for (Future<Bins> f : pending) {
+                f.cancel(true);
+            }
+            if (bandPool != null) {
+                bandPool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Assigns the colors of the new labels of the part, in order of first
+     * appearance, then draws every band of the part in a different thread.
+     */
+    private static void drawBands(PointRaster raster, Bins bins, ExecutorService bandPool) throws InterruptedException, ExecutionException {
+        int[] color = new int[bins.labels.length];
+        for (int k = 0; k < color.length; k++) {
+            color[k] = raster.colorOf(bins.labels[k]);
+        }
+        ArrayList<Future<?>> futures = new ArrayList<>();
+        for (int b = 1; b < bins.pixels.length; b++) {
+            int band = b;
+            futures.add(bandPool.submit(() -> drawBand(raster, bins, band, color)));
+        }
+        drawBand(raster, bins, 0, color);
+        for (Future<?> f : futures) {
+            f.get();
+        }
+    }
+
+    private static void drawBand(PointRaster raster, Bins bins, int band, int[] color) {
+        int[] pixels = bins.pixels[band];
+        int[] ids = bins.ids[band];
+        for (int i = 0; i < pixels.length; i++) {
+            raster.plot(pixels[i], color[ids[i]]);
+        }
+    }
+
+    /**
+     * The points of a part inside the image, binned by band. Labels are
+     * replaced by their index in labels, the distinct labels of the part in
+     * order of first appearance, so that colors can be assigned when the part
+     * is drawn.
+     */
+    static class Bins {
+
+        final int[] labels;
+        final int[][] pixels;
+        final int[][] ids;
+
+        Bins(PointRaster raster, int[] x, int[] y, int[] label, int n, int bands, int bandSize) {
+            int[] pixel = new int[n];
+            int[] id = new int[n];
+            int[] counts = new int[bands];
+            HashMap<Integer, Integer> index = new HashMap<>();
+            int[] distinct = new int[16];
+            int lastLabel = 0;
+            int lastId = -1;
+            for (int i = 0; i < n; i++) {
+                if (lastId < 0 || label[i] != lastLabel) {
+                    lastLabel = label[i];
+                    Integer k = index.get(lastLabel);
+                    if (k == null) {
+                        k = index.size();
+                        index.put(lastLabel, k);
+                        if (k == distinct.length) {
+                            distinct = Arrays.copyOf(distinct, 2 * k);
+                        }
+                        distinct[k] = lastLabel;
+                    }
+                    lastId = k;
+                }
+                id[i] = lastId;
+                int p = raster.pixelIndex(x[i], y[i]);
+                pixel[i] = p;
+                if (p >= 0) {
+                    counts[p / bandSize]++;
+                }
+            }
+            labels = Arrays.copyOf(distinct, index.size());
+            pixels = new int[bands][];
+            ids = new int[bands][];
+            for (int b = 0; b < bands; b++) {
+                pixels[b] = new int[counts[b]];
+                ids[b] = new int[counts[b]];
+                counts[b] = 0;
+            }
+            for (int i = 0; i < n; i++) {
+                int p = pixel[i];
+                if (p >= 0) {
+                    int b = p / bandSize;
+                    pixels[b][counts[b]] = p;
+                    ids[b][counts[b]++] = id[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the comma- or space-separated integers of a text file, line by
+     * line.
+     */
+    static class IntParser implements AutoCloseable {
+
+        final FileChannel channel;
+        final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        boolean eof;
+
+        IntParser(String fileName) throws IOException {
+            channel = new FileInputStream(fileName).getChannel();
+            buffer.flip();
+        }
+
+        private boolean fill() throws IOException {
+            if (eof) {
+                return false;
+            }
+            buffer.compact();
+            int n = channel.read(buffer);
+            buffer.flip();
+            if (n < 0) {
+                eof = true;
+            }
+            return buffer.hasRemaining();
+        }
+
+        /**
+         * Returns true if there is another non-empty line.
+         */
+        boolean hasNextLine() throws IOException {
+            while (true) {
+                while (buffer.hasRemaining()) {
+                    byte b = buffer.get(buffer.position());
+                    if (b != '\n' && b != '\r') {
+                        return true;
+                    }
+                    buffer.get();
+                }
+                if (!fill()) {
+                    return false;
+                }
+            }
+        }
+
+        private int peek() throws IOException {
+            if (!buffer.hasRemaining() && !fill()) {
+                return -1;
+            }
+            return buffer.get(buffer.position());
+        }
+
+        /**
+         * Returns the next integer of the current line.
+         */
+        int nextInt() throws IOException {
+            int b = peek();
+            while (b == ' ' || b == ',' || b == '\t') {
+                buffer.get();
+                b = peek();
+            }
+            boolean negative = b == '-';
+            if (negative) {
+                buffer.get();
+                b = peek();
+            }
+            if (b < '0' || b > '9') {
+                throw new IOException("Number expected");
+            }
+            int v = 0;
+            while (b >= '0' && b <= '9') {
+                v = v * 10 + (b - '0');
+                buffer.get();
+                b = peek();
+            }
+            return negative ? -v : v;
+        }
+
+        /**
+         * Skips the rest of the current line.
+         */
+        void skipLine() throws IOException {
+            int b = peek();
+            while (b != -1 && b != '\n') {
+                buffer.get();
+                b = peek();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A GenerationListener emitting JFR events, recorded when a flight recording
+ * is running, e.g., with -XX:StartFlightRecording=filename=grid.jfr, and
+ * printed with "jfr print --events edu.ucla.cs.scai.clustering.* grid.jfr".
+ * Every event carries the name of the dataset, so that the events of the
+ * jobs of a grid running in parallel can be told apart.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class JfrGenerationListener implements GenerationListener {
+
+    final String dataset;
+
+    public JfrGenerationListener(String dataset) {
+        this.dataset = dataset;
+    }
+
+    @Override
+    public void clusterPoints(int cluster, long accepted, long rejectedDomain, long rejectedEllipse) {
+        ClusterPointsEvent event = new ClusterPointsEvent();
+        if (event.shouldCommit()) {
+            event.dataset = dataset;
+            event.cluster = cluster;
+            event.accepted = accepted;
+            event.rejectedDomain = rejectedDomain;
+            event.rejectedEllipse = rejectedEllipse;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void noisePoints(long absorbed, long outliers) {
+        NoisePointsEvent event = new NoisePointsEvent();
+        if (event.shouldCommit()) {
+            event.dataset = dataset;
+            event.absorbed = absorbed;
+            event.outliers = outliers;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void bytesWritten(long bytes) {
+        BytesWrittenEvent event = new BytesWrittenEvent();
+        if (event.shouldCommit()) {
+            event.dataset = dataset;
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void phase(Phase phase, long nanos, long points) {
+        PhaseEvent event = new PhaseEvent();
+        if (event.shouldCommit()) {
+            event.dataset = dataset;
+            event.phase = phase.name();
+            event.time = nanos;
+            event.points = points;
+            event.commit();
+        }
+    }
+
+    @Name("edu.ucla.cs.scai.clustering.ClusterPoints")
+    @Label("Cluster Points")
+    @Category({"Clustering", "Generator"})
+    @Description("Points accepted and rejected while sampling a block of a cluster")
+    @StackTrace(false)
+    static class ClusterPointsEvent extends Event {
+
+        @Label("Dataset")
+        String dataset;
+
+        @Label("Cluster")
+        int cluster;
+
+        @Label("Accepted")
+        long accepted;
+
+        @Label("Rejected Outside Domain")
+        long rejectedDomain;
+
+        @Label("Rejected Outside Ellipse")
+        long rejectedEllipse;
+    }
+
+    @Name("edu.ucla.cs.scai.clustering.NoisePoints")
+    @Label("Noise Points")
+    @Category({"Clustering", "Generator"})
+    @Description("Noise points absorbed by clusters and outliers in a block")
+    @StackTrace(false)
+    static class NoisePointsEvent extends Event {
+
+        @Label("Dataset")
+        String dataset;
+
+        @Label("Absorbed")
+        long absorbed;
+
+        @Label("Outliers")
+        long outliers;
+    }
+
+    @Name("edu.ucla.cs.scai.clustering.BytesWritten")
+    @Label("Bytes Written")
+    @Category({"Clustering", "Generator"})
+    @StackTrace(false)
+    static class BytesWrittenEvent extends Event {
+
+        @Label("Dataset")
+        String dataset;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("edu.ucla.cs.scai.clustering.Phase")
+    @Label("Generation Phase")
+    @Category({"Clustering", "Generator"})
+    @Description("Time spent in a phase of the generation and points processed")
+    @StackTrace(false)
+    static class PhaseEvent extends Event {
+
+        @Label("Dataset")
+        String dataset;
+
+        @Label("Phase")
+        String phase;
+
+        @Label("Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long time;
+
+        @Label("Points")
+        long points;
+    }
+}
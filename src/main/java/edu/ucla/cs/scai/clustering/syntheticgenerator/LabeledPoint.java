@@ -0,0 +1,54 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+/**
+ * A generated point with its label: the index of the cluster the point
+ * belongs to, or -1 for noise points falling outside every cluster.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class LabeledPoint {
+
+    protected int[] coords;
+    protected int label;
+
+    public LabeledPoint(int[] coords, int label) {
+        this.coords = coords;
+        this.label = label;
+    }
+
+    public int[] getCoords() {
+        return coords;
+    }
+
+    public int getCoord(int i) {
+        return coords[i - 1];
+    }
+
+    public int getLabel() {
+        return label;
+    }
+
+    @Override
+    public String toString() {
+        String s = "";
+        for (int i = 0; i < coords.length; i++) {
+            s += (i > 0 ? "," : "") + coords[i];
+        }
+        return s + " " + label;
+    }
+}
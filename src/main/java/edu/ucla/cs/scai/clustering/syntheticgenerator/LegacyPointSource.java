@@ -0,0 +1,187 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+import static edu.ucla.cs.scai.clustering.syntheticgenerator.MultidimensionalGaussianGenerator.ellipticalRelativeDistance;
+import static edu.ucla.cs.scai.clustering.syntheticgenerator.MultidimensionalGaussianGenerator.getGaussian;
+import java.util.Random;
+
+/**
+ * Generates all the points of a plan from a single sampler, in the same
+ * order as the original sequential generator: the points of the first
+ * cluster, then those of the second cluster, and so on, and finally the
+ * noise points. With the LEGACY random engine the sampler wraps a
+ * java.util.Random, and the points are the same as those of the original
+ * generator, whose relative distances are summed in order at every
+ * dimensionality; with the FAST engine they are computed by DistanceKernel,
+ * as in the CHUNKED and COUNTER modes. The points of the rotated clusters are drawn in batches by
+ * their CovarianceSampler, from the same sampler.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+class LegacyPointSource implements PointSource {
+
+    final GenerationPlan plan;
+    final RandomSampler rand;
+    final double[][] devStandard;
+    final CovarianceSampler[] covarianceSamplers;
+    CovarianceSampler.Batch batch;
+    final ClusterIndex.Search search;
+    final boolean kernels;
+    final long[] rejections = new long[2];
+    int cluster;
+    int pointsAdded;
+    int nearestCluster = -1;
+    long remaining;
+
+    LegacyPointSource(GenerationPlan plan) {
+        this.plan = plan;
+        rand = plan.randomEngine == GenerationPlan.RandomEngine.FAST ? new Xoshiro256Sampler(plan.seed) : RandomSampler.of(new Random(plan.seed));
+        int dimensionality = plan.getDimensionality();
+        int numberOfDenseRegions = plan.getNumberOfClusters();
+        devStandard = new double[numberOfDenseRegions][dimensionality];
+        for (int i = 0; i < numberOfDenseRegions; i++) {
+            for (int j = 0; j < dimensionality; j++) {
+                devStandard[i][j] = plan.radii[i][j] / 4.0; //99% of point will be within radius
+            }
+        }
+        covarianceSamplers = new CovarianceSampler[numberOfDenseRegions];
+        for (int i = 0; i < numberOfDenseRegions; i++) {
+            covarianceSamplers[i] = plan.getCovarianceSampler(i);
+            if (covarianceSamplers[i] != null && batch == null) {
+                batch = covarianceSamplers[i].newBatch();
+            }
+        }
+        remaining = plan.getNumberOfPoints();
+        search = plan.getClusterIndex().newSearch();
+        kernels = plan.usesDistanceKernels();
+    }
+
+    @Override
+    public boolean fill(PointBlock block, ClusterStats stats) {
+        if (remaining == 0) {
+            return false;
+        }
+        long start = System.nanoTime();
+        int first = block.getSize();
+        int current = GenerationPlan.Chunk.NOISE;
+        while (remaining > 0 && !block.isFull()) {
+            while (cluster < plan.nClusterPoints.length && pointsAdded >= plan.nClusterPoints[cluster]) {
+                cluster++;
+                pointsAdded = 0;
+            }
+            int c = cluster < plan.nClusterPoints.length ? cluster : GenerationPlan.Chunk.NOISE;
+            if (c != current) {
+                //the points of every cluster and the noise points are reported separately
+                long now = System.nanoTime();
+                report(current, block, first, now - start);
+                start = now;
+                first = block.getSize();
+                current = c;
+            }
+            if (cluster < plan.nClusterPoints.length) {
+                if (covarianceSamplers[cluster] != null) {
+                    int n = addCovariancePoints(block, stats);
+                    pointsAdded += n;
+                    remaining -= n;
+                    continue;
+                }
+                addClusterPoint(block, stats);
+                pointsAdded++;
+            } else {
+                addNoisePoint(block, stats);
+            }
+            remaining--;
+        }
+        report(current, block, first, System.nanoTime() - start);
+        return true;
+    }
+
+    private void report(int cluster, PointBlock block, int first, long nanos) {
+        if (block.getSize() > first) {
+            plan.report(cluster, block, first, rejections, nanos);
+        }
+        rejections[TruncatedEllipsoidSampler.DOMAIN] = 0;
+        rejections[TruncatedEllipsoidSampler.ELLIPSE] = 0;
+    }
+
+    @Override
+    public long getRemaining() {
+        return remaining;
+    }
+
+    private void addClusterPoint(PointBlock block, ClusterStats stats) {
+        Range domain = plan.domain;
+        int i = cluster;
+        int dimensionality = domain.getDimensionality();
+        //candidates are written directly into the next row of the block
+        int[] c = block.coords;
+        int offset = block.nextOffset();
+        clusterPoints:
+        while (true) {
+
+            for (int k = 0; k < dimensionality; k++) {
+                int v = (int) getGaussian(rand, plan.centers[i][k], devStandard[i][k]);
+                c[offset + k] = v;
+                if (v < domain.getInfCoord(k + 1) || v > domain.getSupCoord(k + 1)) {
+                    rejections[TruncatedEllipsoidSampler.DOMAIN]++;
+                    continue clusterPoints;
+                }
+            }
+            double distance = kernels ? DistanceKernel.relativeDistance(plan.centers[i], plan.radii[i], c, offset) : ellipticalRelativeDistance(plan.centers[i], plan.radii[i], c, offset);
+            if (distance > 1) {
+                rejections[TruncatedEllipsoidSampler.ELLIPSE]++;
+                continue;
+            }
+            block.commit(i);
+            if (stats != null) {
+                stats.add(i, c, offset);
+            }
+            return;
+        }
+    }
+
+    /**
+     * Adds the remaining points of the current cluster, or fills the block,
+     * and returns the number of points added.
+     */
+    private int addCovariancePoints(PointBlock block, ClusterStats stats) {
+        int n = Math.min(plan.nClusterPoints[cluster] - pointsAdded, block.getCapacity() - block.getSize());
+        int offset = block.nextOffset();
+        covarianceSamplers[cluster].sample(rand, block.coords, offset, n, batch, rejections);
+        for (int j = 0; j < n; j++) {
+            block.commit(cluster);
+            if (stats != null) {
+                stats.add(cluster, block.coords, offset + j * block.dimensionality);
+            }
+        }
+        return n;
+    }
+
+    private void addNoisePoint(PointBlock block, ClusterStats stats) {
+        int offset = block.nextOffset();
+        plan.domain.getRandomInnerCell(rand, block.coords, offset);
+        int nearest = search.nearest(block.coords, offset);
+        int idCluster = search.getDistance() < 1 ? nearest : -1;
+        if (nearest != -1) { //if no distance is finite, the previous nearest cluster is kept
+            nearestCluster = nearest;
+        }
+        block.commit(idCluster);
+        if (stats != null && nearestCluster >= 0) { //nearestCluster is -1 only if there are no clusters
+            stats.add(nearestCluster, block.coords, offset);
+        }
+    }
+}
@@ -16,9 +16,8 @@
 package edu.ucla.cs.scai.clustering.syntheticgenerator;
 
 import java.awt.Color;
-import java.awt.Graphics2D;
-import java.awt.image.BufferedImage;
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
@@ -28,10 +27,10 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Random;
-import java.util.StringTokenizer;
-import javax.imageio.ImageIO;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  *
@@ -54,6 +53,10 @@ public class MultidimensionalGaussianGenerator {
         return mean + rand.nextGaussian() * devStandard;
     }
 
+    public static double getGaussian(RandomSampler rand, double mean, double devStandard) {
+        return mean + rand.nextGaussian() * devStandard;
+    }
+
     public static void generate(
             String fileName,
             Range domain,
@@ -63,15 +66,40 @@ public class MultidimensionalGaussianGenerator {
             double noiseRatio,
             long seed) throws FileNotFoundException, IOException {
 
-        int nPointsPerCluster = centers.length == 0 ? 0 : (int) (0.5 + numberOfPoints * (1 - noiseRatio) / centers.length);
-        int nNoisePoints = numberOfPoints - nPointsPerCluster * centers.length;
-        int[] nClusterPoints = new int[centers.length];
-        if (nClusterPoints.length > 0) {
-            for (int i = 0; i < nClusterPoints.length; i++) {
-                nClusterPoints[i] = nPointsPerCluster;
-            }
-        }
-        generate(fileName, domain, centers, radii, nClusterPoints, nNoisePoints, seed);
+        GenerationPlan plan = new GenerationPlan(domain, numberOfPoints, centers, radii, noiseRatio, seed);
+        plan.setMode(GenerationPlan.Mode.SEQUENTIAL);
+        generate(fileName, plan);
+    }
+
+    /**
+     * Parallel version of generate: the clusters and the noise are split into
+     * chunks generated by a fork/join pool with the given parallelism. Every
+     * chunk has its own random stream, thus the output only depends on the
+     * seed and not on the number of threads. However, it is different from
+     * the output of the sequential version with the same seed.
+     */
+    public static void generate(
+            String fileName,
+            Range domain,
+            int numberOfPoints,
+            int[][] centers,
+            int[][] radii,
+            double noiseRatio,
+            long seed,
+            int parallelism) throws IOException {
+        ParallelGaussianGenerator.generate(fileName, new GenerationPlan(domain, numberOfPoints, centers, radii, noiseRatio, seed), parallelism);
+    }
+
+    public static void generate(
+            String fileName,
+            Range domain,
+            int[][] centers,
+            int[][] radii,
+            int[] nClusterPoints,
+            int nNoisePoints,
+            long seed,
+            int parallelism) throws IOException {
+        ParallelGaussianGenerator.generate(fileName, new GenerationPlan(domain, centers, radii, nClusterPoints, nNoisePoints, seed), parallelism);
     }
 
     public static void generate(
@@ -83,152 +111,284 @@ public class MultidimensionalGaussianGenerator {
             int nNoisePoints,
             long seed) throws FileNotFoundException, IOException {
 
-        try (
-                PrintWriter out = new PrintWriter(new FileOutputStream(fileName), true);
-                PrintWriter out2 = new PrintWriter(new FileOutputStream(fileName + "_labels"), true);
-                PrintWriter out3 = new PrintWriter(new FileOutputStream(fileName + "_info"), true);) {
-            System.out.println("File opened");
+        GenerationPlan plan = new GenerationPlan(domain, centers, radii, nClusterPoints, nNoisePoints, seed);
+        plan.setMode(GenerationPlan.Mode.SEQUENTIAL);
+        generate(fileName, plan);
+    }
+
+    /**
+     * Writes the points of the plan to fileName, their labels to
+     * fileName_labels, and the description of the clusters to fileName_info.
+     * The points are generated by the current thread.
+     */
+    public static void generate(String fileName, GenerationPlan plan) throws IOException {
+        DatasetWriter out = new DatasetWriter(fileName);
+        try {
+            generate(fileName + "_info", plan, timed(plan.getListener(), GenerationListener.Phase.WRITE, out));
+        } finally {
+            out.close();
+        }
+        reportBytes(plan.getListener(), out.getBytesWritten());
+    }
 
-            int dimensionality = domain.getDimensionality();
+    /**
+     * Writes the points of the plan and their labels to fileName in the
+     * bit-packed format of PackedDatasetWriter, and the description of the
+     * clusters to fileName_info.
+     */
+    public static void generatePacked(String fileName, GenerationPlan plan) throws IOException {
+        try (PackedDatasetWriter out = PackedDatasetWriter.forPlan(fileName, plan)) {
+            generate(fileName + "_info", plan, timed(plan.getListener(), GenerationListener.Phase.WRITE, out));
+        }
+        reportBytes(plan.getListener(), new File(fileName).length());
+    }
 
-            Random rand = new Random(seed);
+    /**
+     * Returns a consumer passing the blocks to consumer and reporting the
+     * time spent in it to the listener as the given phase, or consumer itself
+     * if listener is null.
+     */
+    static PointBlockConsumer timed(GenerationListener listener, GenerationListener.Phase phase, PointBlockConsumer consumer) {
+        if (listener == null) {
+            return consumer;
+        }
+        return block -> {
+            long start = System.nanoTime();
+            consumer.accept(block);
+            listener.phase(phase, System.nanoTime() - start, block.size);
+        };
+    }
 
-            int numberOfDenseRegions = centers.length;
+    static void reportPhase(GenerationListener listener, GenerationListener.Phase phase, long start, long points) {
+        if (listener != null) {
+            listener.phase(phase, System.nanoTime() - start, points);
+        }
+    }
 
-            double[][] devStandard = new double[numberOfDenseRegions][dimensionality];
+    static void reportBytes(GenerationListener listener, long bytes) {
+        if (listener != null) {
+            listener.bytesWritten(bytes);
+        }
+    }
 
-            for (int i = 0; i < numberOfDenseRegions; i++) {
-                for (int j = 0; j < dimensionality; j++) {
-                    devStandard[i][j] = radii[i][j] / 4.0; //99% of point will be within radius
+    /**
+     * Generates the dataset in a single pass: the points are written in
+     * random order to shuffledFileName and shuffledFileName_labels, drawn in
+     * fileName.png if image is true, and written in generation order to
+     * fileName and fileName_labels only if keepUnshuffled is true. The
+     * description of the clusters is written to fileName_info. The image and
+     * the unshuffled files are the same as those produced by generate and
+     * createImage.
+     *
+     * @param memoryBudget the memory used to shuffle the points; if they do
+     * not fit, they are scattered to temporary files in tmpDir (the default
+     * temporary directory if tmpDir is null)
+     */
+    public static void generateShuffled(String fileName, String shuffledFileName, GenerationPlan plan, Random rand, long memoryBudget, File tmpDir, boolean keepUnshuffled, boolean image) throws IOException {
+        GenerationListener listener = plan.getListener();
+        PointRaster raster = image ? new PointRaster(plan.getDomain(), true) : null;
+        PointBlockConsumer rasterConsumer = raster == null ? null : timed(listener, GenerationListener.Phase.IMAGE, raster);
+        ShuffledDatasetWriter shuffled = new ShuffledDatasetWriter(shuffledFileName, shuffledFileName + "_labels", plan.getDimensionality(), plan.getNumberOfPoints(), rand, memoryBudget, tmpDir);
+        DatasetWriter out = null;
+        try {
+            out = keepUnshuffled ? new DatasetWriter(fileName) : null;
+            PointBlockConsumer shuffledConsumer = timed(listener, GenerationListener.Phase.SHUFFLE, shuffled);
+            PointBlockConsumer outConsumer = out == null ? null : timed(listener, GenerationListener.Phase.WRITE, out);
+            generate(fileName + "_info", plan, block -> {
+                shuffledConsumer.accept(block);
+                if (outConsumer != null) {
+                    outConsumer.accept(block);
+                }
+                if (rasterConsumer != null) {
+                    rasterConsumer.accept(block);
                 }
+            });
+        } finally {
+            try {
+                if (out != null) {
+                    out.close();
+                }
+            } finally {
+                long start = System.nanoTime();
+                shuffled.close();
+                reportPhase(listener, GenerationListener.Phase.SHUFFLE, start, 0);
             }
+        }
+        if (raster != null) {
+            long start = System.nanoTime();
+            raster.write(fileName + ".png");
+            reportPhase(listener, GenerationListener.Phase.IMAGE, start, 0);
+        }
+        reportBytes(listener, (out == null ? 0 : out.getBytesWritten()) + new File(shuffledFileName).length() + new File(shuffledFileName + "_labels").length());
+    }
 
-            double[][] q = new double[numberOfDenseRegions][dimensionality];
-            double[][] s = new double[numberOfDenseRegions][dimensionality];
-            int[] n = new int[numberOfDenseRegions];
-            double[] sTot = new double[dimensionality];
-            int nTot = 0;
+    /**
+     * Passes the points of the plan to the consumer, and writes the
+     * description of the clusters to infoFileName.
+     */
+    static void generate(String infoFileName, GenerationPlan plan, PointBlockConsumer consumer) throws IOException {
+        generateWithInfo(infoFileName, plan, stats -> {
+            System.out.println("Generating " + plan.getNumberOfPoints() + " points...");
+            long[] nOutlier = new long[1];
+            new GaussianPointSpliterator(plan).forEachRemainingBlock(block -> {
+                for (int i = 0; i < block.size; i++) {
+                    if (block.labels[i] == -1) {
+                        nOutlier[0]++;
+                    }
+                }
+                consumer.accept(block);
+            }, stats);
+            return nOutlier[0];
+        });
+    }
 
-            for (int i = 0; i < numberOfDenseRegions; i++) {
+    /**
+     * Generates the points of a plan, adding them to the statistics in
+     * source order.
+     */
+    interface StatsGeneration {
 
-                System.out.println("Creating region " + (i + 1) + "...");
-                out3.println("Cluster " + (i + 1));
-                out3.println("Points: " + nClusterPoints[i]);
-                out3.print("Center: " + centers[i][0]);
-                for (int j = 1; j < dimensionality; j++) {
-                    out3.print("\t" + centers[i][j]);
-                }
-                out3.println();
-                out3.print("Radius: " + radii[i][0]);
-                for (int j = 1; j < dimensionality; j++) {
-                    out3.print("\t" + radii[i][j]);
-                }
-                out3.println();
-                out3.println();
+        /**
+         * @return the number of noise points not adsorbed by any cluster
+         */
+        long generate(ClusterStats stats) throws IOException;
+    }
 
-                int pointsAdded = 0;
+    /**
+     * Writes the description of the clusters to infoFileName, runs the
+     * generation and appends the clusterability of the generated points.
+     * Every generator writes the _info file through this method, so the file
+     * only depends on the plan.
+     */
+    static void generateWithInfo(String infoFileName, GenerationPlan plan, StatsGeneration generation) throws IOException {
 
-                clusterPoints:
-                while (pointsAdded < nClusterPoints[i]) {
+        GenerationListener listener = plan.getListener();
+        try (PrintWriter out3 = new PrintWriter(new FileOutputStream(infoFileName), true)) {
+            System.out.println("File opened");
 
-                    int[] c = new int[dimensionality];
+            long start = System.nanoTime();
+            for (int i = 0; i < plan.getNumberOfClusters(); i++) {
+                printClusterInfo(out3, i, plan.nClusterPoints[i], plan.centers[i], plan.radii[i], plan.getCovariance(i));
+            }
+            reportPhase(listener, GenerationListener.Phase.STATS, start, 0);
 
-                    for (int k = 0; k < dimensionality; k++) {
-                        c[k] = (int) getGaussian(rand, centers[i][k], devStandard[i][k]);
-                        if (c[k] < domain.getInfCoord(k + 1) || c[k] > domain.getSupCoord(k + 1)) {
-                            continue clusterPoints;
-                        }
-                    }
-                    if (ellipticalRelativeDistance(centers[i], radii[i], c) > 1) {
-                        continue;
-                    }
-                    pointsAdded++;
-                    for (int k = 0; k < dimensionality - 1; k++) {
-                        out.print(c[k] + ",");
-                        q[i][k] += c[k] * c[k];
-                        s[i][k] += c[k];
-                        sTot[k] += c[k];
-                    }
-                    out.println(c[c.length - 1]);
-                    q[i][c.length - 1] += c[c.length - 1] * c[c.length - 1];
-                    s[i][c.length - 1] += c[c.length - 1];
-                    sTot[c.length - 1] += c[c.length - 1];
-                    n[i]++;
-                    nTot++;
-                    out2.println(i);
+            ClusterStats stats = new ClusterStats(plan.getNumberOfClusters(), plan.getDimensionality());
+            long nOutlier = generation.generate(stats);
 
+            System.out.println(nOutlier + " outliers added while adding " + plan.nNoisePoints + " noise points (the rest of noise was adsorbed by clusters)");
+            printSamplingReport(plan);
+            start = System.nanoTime();
+            printClusterability(out3, stats);
+            reportPhase(listener, GenerationListener.Phase.STATS, start, stats.getNumberOfPoints());
+        }
+    }
+
+    /**
+     * Returns the points of the plan as a lazily generated stream. In CHUNKED
+     * mode, the stream can be efficiently processed in parallel.
+     */
+    public static Stream<LabeledPoint> stream(GenerationPlan plan) {
+        return StreamSupport.stream(new GaussianPointSpliterator(plan), false);
+    }
+
+    /**
+     * Passes the points of the plan to the consumer, in blocks of at most
+     * blockSize points.
+     */
+    public static void forEachBlock(GenerationPlan plan, int blockSize, PointBlockConsumer consumer) throws IOException {
+        new GaussianPointSpliterator(plan, blockSize).forEachRemainingBlock(consumer);
+    }
+
+    /**
+     * Writes the description of a cluster; the covariance, if not null, is
+     * written one row per line.
+     */
+    static void printClusterInfo(PrintWriter out3, int i, int points, int[] center, int[] radius, ClusterCovariance covariance) {
+        out3.println("Cluster " + (i + 1));
+        out3.println("Points: " + points);
+        out3.print("Center: " + center[0]);
+        for (int j = 1; j < center.length; j++) {
+            out3.print("\t" + center[j]);
+        }
+        out3.println();
+        out3.print("Radius: " + radius[0]);
+        for (int j = 1; j < radius.length; j++) {
+            out3.print("\t" + radius[j]);
+        }
+        out3.println();
+        if (covariance != null) {
+            for (double[] row : covariance.covariance) {
+                out3.print("Covariance: " + row[0]);
+                for (int j = 1; j < row.length; j++) {
+                    out3.print("\t" + row[j]);
                 }
+                out3.println();
             }
+        }
+        out3.println();
+    }
 
-            int nOutlier = 0;
-            if (nNoisePoints > 0) {
-                System.out.println("Adding noise...");
-
-                //noise tuples are inserted		
-                int nearestCluster = -1;
-                for (int i = 0; i < nNoisePoints; i++) {
-                    int[] p = domain.getRandomInnerCell(rand);
-                    int idCluster = clusterContainer(p, centers, radii);
-                    if (idCluster == -1) {
-                        nOutlier++;
-                        //find the nearest cluster
-                        double minDist = Double.POSITIVE_INFINITY;
-                        for (int r = 0; r < numberOfDenseRegions; r++) {
-                            double dist = ellipticalRelativeDistance(centers[r], radii[r], p);
-                            if (dist < minDist) {
-                                minDist = dist;
-                                nearestCluster = r;
-                            }
-                        }
-                    } else {
-                        nearestCluster = idCluster;
-                    }
-                    for (int k = 0; k < dimensionality - 1; k++) {
-                        out.print(p[k] + ",");
-                    }
-                    out.println(p[p.length - 1]);
-                    out2.println(idCluster);
-
-                    if (nearestCluster >= 0) { //nearestCluster is -1 only if there are no clusters
-                        for (int k = 0; k < dimensionality; k++) {
-                            q[nearestCluster][k] += p[k] * p[k];
-                            s[nearestCluster][k] += p[k];
-                            sTot[k] += p[k];
-                        }
-                        n[nearestCluster]++;
-                        nTot++;
-                    }
-                }
+    static void printSamplingReport(GenerationPlan plan) {
+        if (plan.getMode() == GenerationPlan.Mode.SEQUENTIAL) {
+            return;
+        }
+        for (int i = 0; i < plan.getNumberOfClusters(); i++) {
+            TruncatedEllipsoidSampler sampler = plan.getTruncatedSampler(i);
+            CovarianceSampler covarianceSampler = plan.getCovarianceSampler(i);
+            if (covarianceSampler != null && covarianceSampler.isTruncated()) {
+                sampler = covarianceSampler;
             }
-            System.out.println(nOutlier + " outliers added while adding " + nNoisePoints + " noise points (the rest of noise was adsorbed by clusters)");
-            double wc = 0;
-            double bc = 0;
-            for (int k=0; k<dimensionality; k++) {
-                sTot[k]/=nTot;
+            if (sampler != null) {
+                System.out.println("Cluster " + (i + 1) + ": " + sampler.getAccepted() + " points sampled from the truncated Gaussian with "
+                        + sampler.getDomainRejections() + " out-of-domain and " + sampler.getEllipseRejections() + " outside-ellipsoid rejections; the rejection sampler would have made about "
+                        + Math.round(sampler.getExpectedRejections()) + " outside-ellipsoid rejections");
             }
-            for (int i = 0; i < numberOfDenseRegions; i++) {
-                double pi=1.0*n[i]/nTot;
-                double wci=0;
-                for (int k=0; k<dimensionality; k++) {
-                    wci+=q[i][k]-(s[i][k]/n[i])*s[i][k];
-                    s[i][k]/=n[i];
-                }
-                double bci=pi*sqrDistance(sTot, s[i]);
-                wci/=nTot;
-                wc+=wci;
-                bc+=bci;
+        }
+    }
+
+    /**
+     * Writes the variance ratio clusterability, followed by the number of
+     * points, the mean and the variance of the points nearest to every
+     * cluster, i.e., the points used to compute the clusterability, including
+     * noise.
+     */
+    static void printClusterability(PrintWriter out3, ClusterStats stats) {
+        double wc = stats.getWithinClusterVariance();
+        double bc = stats.getBetweenClusterVariance();
+        if (wc != 0) {
+            out3.println("VarianceRatioClusterability: " + (bc / wc));
+        }
+        for (int i = 0; i < stats.getNumberOfClusters(); i++) {
+            out3.println();
+            out3.println("Cluster " + (i + 1) + " statistics");
+            out3.println("Nearest points: " + stats.getNumberOfPoints(i));
+            out3.print("Mean: " + stats.getMean(i, 0));
+            for (int k = 1; k < stats.dimensionality; k++) {
+                out3.print("\t" + stats.getMean(i, k));
             }
-            if (wc!=0) {
-                out3.println("VarianceRatioClusterability: "+(bc/wc));
+            out3.println();
+            out3.print("Variance: " + stats.getVariance(i, 0));
+            for (int k = 1; k < stats.dimensionality; k++) {
+                out3.print("\t" + stats.getVariance(i, k));
             }
+            out3.println();
         }
     }
 
-    private static int clusterContainer(int[] p, int[][] centers, int[][] radius) {
+    static int clusterContainer(int[] p, int[][] centers, int[][] radius) {
+        return clusterContainer(p, centers, radius, null);
+    }
+
+    /**
+     * Returns the cluster containing p, or -1; the relative distance from the
+     * clusters with a covariance is computed in its Mahalanobis form.
+     */
+    static int clusterContainer(int[] p, int[][] centers, int[][] radius, ClusterCovariance[] covariances) {
         double dMin = 1;
         int iMin = -1;
+        double[] scratch = covariances == null ? null : new double[p.length];
         for (int i = 0; i < centers.length; i++) {
-            double d = ellipticalRelativeDistance(centers[i], radius[i], p);
+            double d = covariances != null && covariances[i] != null ? covariances[i].relativeDistance(centers[i], p, 0, scratch) : ellipticalRelativeDistance(centers[i], radius[i], p);
             if (d < dMin) {
                 iMin = i;
                 dMin = d;
@@ -237,67 +397,118 @@ public class MultidimensionalGaussianGenerator {
         return iMin;
     }
 
+    /**
+     * Returns the cluster with the smallest elliptical relative distance from
+     * p, or -1 if there are no clusters.
+     */
+    static int nearestCluster(int[] p, int[][] centers, int[][] radius) {
+        double minDist = Double.POSITIVE_INFINITY;
+        int nearestCluster = -1;
+        for (int r = 0; r < centers.length; r++) {
+            double dist = ellipticalRelativeDistance(centers[r], radius[r], p);
+            if (dist < minDist) {
+                minDist = dist;
+                nearestCluster = r;
+            }
+        }
+        return nearestCluster;
+    }
+
     public static double ellipticalRelativeDistance(int[] center, int[] radius, int[] p) {
+        return ellipticalRelativeDistance(center, radius, p, 0);
+    }
+
+    /**
+     * Returns the elliptical relative distance of the point stored in p
+     * starting at offset, summing the terms in order at every
+     * dimensionality, as the original generator does. The CHUNKED and
+     * COUNTER modes use DistanceKernel.relativeDistance instead.
+     */
+    public static double ellipticalRelativeDistance(int[] center, int[] radius, int[] p, int offset) {
         double d = 0;
         for (int i = 0; i < radius.length; i++) {
-            d += Math.pow((1.0 * center[i] - p[i]) / radius[i], 2);
+            double t = (1.0 * center[i] - p[offset + i]) / radius[i];
+            d += t * t;
         }
         return d;
     }
-    
+
+    /**
+     * Returns the squared Euclidean distance of p1 and p2, summing the terms
+     * in order.
+     */
     public static double sqrDistance(double[] p1, double[] p2) {
         double d = 0;
         for (int i = 0; i < p1.length; i++) {
-            d += Math.pow(p1[i] - p2[i], 2);
+            double t = p1[i] - p2[i];
+            d += t * t;
         }
         return d;
     }
     
 
-    public static void createImage(String fileName, String fileNameLabels, Range domain, boolean colors) throws IOException {
+    /**
+     * Returns the points with indexes in [from, to) of a plan in COUNTER
+     * mode, as a lazily generated stream. They are the same points found at
+     * the same positions of the whole dataset.
+     */
+    public static Stream<LabeledPoint> stream(GenerationPlan plan, long from, long to) {
+        return StreamSupport.stream(new GaussianPointSpliterator(plan, from, to, GaussianPointSpliterator.DEFAULT_BLOCK_SIZE), false);
+    }
 
-        BufferedReader in = new BufferedReader(new FileReader(fileName));
-        BufferedReader inlabels = new BufferedReader(new FileReader(fileNameLabels));
-        HashMap<Integer, Color> color = new HashMap<>();
-        color.put(-1, Color.BLACK);
-        int infX = domain.getInfCoord(1);
-        int supX = domain.getSupCoord(1);
-        int infY = domain.getInfCoord(2);
-        int supY = domain.getSupCoord(2);
-        int width = supX - infX + 1;
-        int height = supY - infY + 1;
-        Graphics2D pianoG;
-        BufferedImage piano;
-        int imageType = BufferedImage.TYPE_INT_RGB;
-        piano = new BufferedImage(width, height, imageType);
-        pianoG = piano.createGraphics();
-        pianoG.setColor(Color.WHITE);
-        pianoG.fillRect(0, 0, width, height);
-        pianoG.setColor(Color.BLACK);
-        pianoG.drawRect(0, 0, width - 1, height - 1);
-
-        int nextColor = 0;
-        String l = in.readLine();
-        String ll = inlabels.readLine();
-        while (l != null) {
-            StringTokenizer st = new StringTokenizer(l, " ,");
-            int x = Integer.parseInt(st.nextToken());
-            int y = Integer.parseInt(st.nextToken());
-            int label = Integer.parseInt(ll);
-            Color c = color.get(label);
-            if (c == null) {
-                c = colbase[nextColor];
-                nextColor = (nextColor + 1) % colbase.length;
-                color.put(label, c);
-            }
-            pianoG.setColor(colors ? c : Color.BLACK);
-            pianoG.drawLine(x, y, x, y);
-            l = in.readLine();
-            ll = inlabels.readLine();
+    /**
+     * Passes the points with indexes in [from, to) of a plan in COUNTER mode
+     * to the consumer, in blocks of at most blockSize points.
+     */
+    public static void forEachBlock(GenerationPlan plan, long from, long to, int blockSize, PointBlockConsumer consumer) throws IOException {
+        new GaussianPointSpliterator(plan, from, to, blockSize).forEachRemainingBlock(consumer);
+    }
+
+    /**
+     * Writes the points with indexes in [from, to) of a plan in COUNTER mode
+     * to fileName and their labels to fileName_labels. Concatenating the
+     * files of consecutive ranges gives the files written by generate.
+     */
+    public static void generateRange(String fileName, GenerationPlan plan, long from, long to) throws IOException {
+        try (DatasetWriter out = new DatasetWriter(fileName)) {
+            forEachBlock(plan, from, to, GenerationPlan.DEFAULT_CHUNK_SIZE, out);
         }
-        ImageIO.write(piano, "PNG", new File(fileName + ".png"));
     }
 
+    /**
+     * Draws dimensions 1 and 2 of the dataset in fileName.png, one pixel per
+     * unit of the domain. See ImageRenderer for projections on other
+     * dimensions, downsampling and density maps.
+     */
+    public static void createImage(String fileName, String fileNameLabels, Range domain, boolean colors) throws IOException {
+        new ImageRenderer(domain).setColors(colors).setTranslate(false).render(fileName, fileNameLabels, fileName + ".png");
+    }
+
+    /**
+     * Draws dimensions 1 and 2 of a packed dataset in pngFileName, as
+     * createImage does for text datasets.
+     */
+    public static void createImage(PackedDataset dataset, boolean colors, String pngFileName) throws IOException {
+        createImage(dataset, dataset.getDomain(), colors, pngFileName);
+    }
+
+    /**
+     * Draws dimensions 1 and 2 of a dataset in pngFileName, as createImage
+     * does for text datasets. With a TextDataset, the text files are parsed
+     * in parallel, at the cost of keeping all the points in memory.
+     */
+    public static void createImage(PointDataset dataset, Range domain, boolean colors, String pngFileName) throws IOException {
+        new ImageRenderer(domain).setColors(colors).setTranslate(false).render(dataset).write(pngFileName);
+    }
+
+    /**
+     * Shuffles the lines of fileDataIn and fileLabelsIn in memory, keeping
+     * data and labels paired, and copies them unchanged to fileDataOut and
+     * fileLabelsOut, so that any text format can be shuffled. For the
+     * integer datasets written by DatasetWriter, loading them with
+     * TextDataset.load and using shuffleDataset(PointDataset, ...) is faster
+     * and produces the same files.
+     */
     public static void shuffleDataset(String fileDataIn, String fileLabelsIn, String fileDataOut, String fileLabelsOut, Random rand) throws IOException {
         ArrayList<String> data = new ArrayList<>();
         ArrayList<String> labels = new ArrayList<>();
@@ -313,11 +524,75 @@ public class MultidimensionalGaussianGenerator {
                 l2 = in2.readLine();
             }
             if (l1 != null && l1.length() > 0 || l2 != null && l2.length() > 0) {
-                System.out.println("File lengths mismatch");
-                System.exit(0);
+                throw new IOException("File lengths mismatch");
+            }
+        }
+
+        shuffle(rand, data, labels);
+
+        try (
+                PrintWriter out1 = new PrintWriter(new BufferedWriter(new FileWriter(fileDataOut)));
+                PrintWriter out2 = new PrintWriter(new BufferedWriter(new FileWriter(fileLabelsOut)));) {
+            for (int i = 0; i < data.size(); i++) {
+                out1.println(data.get(i));
+                out2.println(labels.get(i));
             }
         }
+    }
 
+    /**
+     * Shuffles the dataset using at most memoryBudget bytes of heap; see
+     * ExternalShuffle.
+     */
+    public static void shuffleDataset(String fileDataIn, String fileLabelsIn, String fileDataOut, String fileLabelsOut, Random rand, long memoryBudget) throws IOException {
+        ExternalShuffle.shuffleDataset(fileDataIn, fileLabelsIn, fileDataOut, fileLabelsOut, rand, memoryBudget, null);
+    }
+
+    /**
+     * Passes the points of the dataset to the consumer in random order. Only
+     * the permutation of the indexes is kept in memory; with the same rand,
+     * the order is the same as with shuffleDataset on the text files, which,
+     * unlike this method, copies the lines without parsing them.
+     */
+    public static void shuffleDataset(PointDataset in, PointBlockConsumer out, Random rand) throws IOException {
+        if (in.size() > Integer.MAX_VALUE - 8) {
+            throw new IOException("Too many points to shuffle: " + in.size());
+        }
+        int[] index = new int[(int) in.size()];
+        for (int i = 0; i < index.length; i++) {
+            index[i] = i;
+        }
+        for (int i = 0; i < index.length - 1; i++) {
+            int j = i + rand.nextInt(index.length - i);
+            int temp = index[i];
+            index[i] = index[j];
+            index[j] = temp;
+        }
+        PointBlock block = new PointBlock(in.getDimensionality(), GenerationPlan.DEFAULT_CHUNK_SIZE);
+        for (int i : index) {
+            in.getPoint(i, block.coords, block.nextOffset());
+            block.commit(in.getLabel(i));
+            if (block.isFull()) {
+                out.accept(block);
+                block.clear();
+            }
+        }
+        if (block.getSize() > 0) {
+            out.accept(block);
+        }
+    }
+
+    /**
+     * Writes the points of the dataset in random order to fileDataOut and
+     * fileLabelsOut.
+     */
+    public static void shuffleDataset(PointDataset in, String fileDataOut, String fileLabelsOut, Random rand) throws IOException {
+        try (DatasetWriter out = new DatasetWriter(fileDataOut, fileLabelsOut)) {
+            shuffleDataset(in, out, rand);
+        }
+    }
+
+    static void shuffle(Random rand, List<String> data, List<String> labels) {
         for (int i = 0; i < data.size() - 1; i++) {
             int j = i + rand.nextInt(data.size() - i);
             String temp = data.get(i);
@@ -327,14 +602,5 @@ public class MultidimensionalGaussianGenerator {
             labels.set(i, labels.get(j));
             labels.set(j, temp);
         }
-
-        try (
-                PrintWriter out1 = new PrintWriter(new FileWriter(fileDataOut), true);
-                PrintWriter out2 = new PrintWriter(new FileWriter(fileLabelsOut), true);) {
-            for (int i = 0; i < data.size() - 1; i++) {
-                out1.println(data.get(i));
-                out2.println(labels.get(i));
-            }
-        }
     }
 }
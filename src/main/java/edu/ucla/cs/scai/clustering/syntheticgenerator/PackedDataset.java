@@ -0,0 +1,193 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A dataset in the bit-packed format written by PackedDatasetWriter, mapped
+ * in memory.
+ *
+ * The file is mapped in segments of at most SEGMENT_SIZE bytes, each
+ * containing whole blocks, and every field is decoded from a single 8-byte
+ * load, without copying the file to the heap. Since only absolute reads are
+ * used, a PackedDataset can be read by several threads concurrently.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class PackedDataset implements PointDataset, Closeable {
+
+    static final long SEGMENT_SIZE = 1L << 30;
+
+    final FileChannel channel;
+    final Range domain;
+    final int dimensionality;
+    final long rows;
+    final int rowsPerBlock;
+    final int labelMin;
+    final int[] inf;
+    final int rowBits;
+    final int[] fieldOffset; //bit offset of every coordinate and of the label in a row
+    final long[] fieldMask;
+    final long[] blockOffset;
+    final ByteBuffer[] segments;
+    final long[] segmentStart;
+    final int[] blockSegment;
+
+    public PackedDataset(String fileName) throws IOException {
+        channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(PackedDatasetWriter.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(header, 0);
+            byte[] magic = new byte[PackedDatasetWriter.MAGIC.length];
+            header.get(magic);
+            if (!Arrays.equals(magic, PackedDatasetWriter.MAGIC)) {
+                throw new IOException(fileName + " is not a packed dataset");
+            }
+            int version = header.getInt();
+            if (version != PackedDatasetWriter.VERSION) {
+                throw new IOException("Unsupported version " + version + " of " + fileName);
+            }
+            dimensionality = header.getInt();
+            rows = header.getLong();
+            rowsPerBlock = header.getInt();
+            labelMin = header.getInt();
+            int labelBits = header.getInt();
+            header.getInt();
+            long indexOffset = header.getLong();
+
+            ByteBuffer ranges = ByteBuffer.allocate(12 * dimensionality).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(ranges, PackedDatasetWriter.HEADER_SIZE);
+            inf = new int[dimensionality];
+            int[] sup = new int[dimensionality];
+            int[] coordBits = new int[dimensionality];
+            ranges.asIntBuffer().get(inf).get(sup).get(coordBits);
+            domain = new Range(inf, sup);
+
+            fieldOffset = new int[dimensionality + 1];
+            fieldMask = new long[dimensionality + 1];
+            int bits = 0;
+            for (int k = 0; k <= dimensionality; k++) {
+                int b = k < dimensionality ? coordBits[k] : labelBits;
+                fieldOffset[k] = bits;
+                fieldMask[k] = (1L << b) - 1;
+                bits += b;
+            }
+            rowBits = bits;
+
+            int nBlocks = (int) ((rows + rowsPerBlock - 1) / rowsPerBlock);
+            ByteBuffer index = ByteBuffer.allocate(8 * nBlocks).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(index, indexOffset);
+            blockOffset = new long[nBlocks + 1];
+            index.asLongBuffer().get(blockOffset, 0, nBlocks);
+            blockOffset[nBlocks] = indexOffset;
+
+            ArrayList<Long> starts = new ArrayList<>();
+            blockSegment = new int[nBlocks];
+            for (int b = 0; b < nBlocks; b++) {
+                if (starts.isEmpty() || blockOffset[b + 1] - starts.get(starts.size() - 1) > SEGMENT_SIZE) {
+                    starts.add(blockOffset[b]);
+                }
+                blockSegment[b] = starts.size() - 1;
+            }
+            segments = new ByteBuffer[starts.size()];
+            segmentStart = new long[starts.size()];
+            for (int s = 0; s < segments.length; s++) {
+                segmentStart[s] = starts.get(s);
+                long end = s + 1 < segments.length ? starts.get(s + 1) : indexOffset;
+                segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, segmentStart[s], end - segmentStart[s]).order(ByteOrder.LITTLE_ENDIAN);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+        buffer.flip();
+    }
+
+    public Range getDomain() {
+        return domain;
+    }
+
+    @Override
+    public int getDimensionality() {
+        return dimensionality;
+    }
+
+    @Override
+    public long size() {
+        return rows;
+    }
+
+    /**
+     * Returns the bits used to store a row.
+     */
+    public int getRowBits() {
+        return rowBits;
+    }
+
+    private long field(long i, int k) {
+        if (i < 0 || i >= rows) {
+            throw new IndexOutOfBoundsException("Point " + i + " of " + rows);
+        }
+        int b = (int) (i / rowsPerBlock);
+        int s = blockSegment[b];
+        long bit = (i - (long) b * rowsPerBlock) * rowBits + fieldOffset[k];
+        long v = segments[s].getLong((int) (blockOffset[b] - segmentStart[s] + (bit >>> 3)));
+        return (v >>> (bit & 7)) & fieldMask[k];
+    }
+
+    @Override
+    public int getCoord(long i, int k) {
+        return (int) (field(i, k) + inf[k]);
+    }
+
+    @Override
+    public int getLabel(long i) {
+        return (int) (field(i, dimensionality) + labelMin);
+    }
+
+    @Override
+    public void getPoint(long i, int[] p, int offset) {
+        for (int k = 0; k < dimensionality; k++) {
+            p[offset + k] = getCoord(i, k);
+        }
+    }
+
+    /**
+     * Closes the file; the mapped segments are released when they are
+     * garbage collected, thus the dataset must not be read after closing it.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/**
+ * Writes points and labels in the bit-packed binary format read by
+ * PackedDataset.
+ *
+ * The file starts with a header containing the range of the coordinates and
+ * of the labels; every coordinate along dimension k is stored as its offset
+ * from the lower bound of the range, in ceil(log2(sup_k - inf_k + 1)) bits,
+ * and labels are stored in the same way. Rows are stored in blocks of
+ * rowsPerBlock rows; every block starts at a multiple of 8 bytes and is
+ * followed by 8 bytes of padding, so that every field can be read with a
+ * single 8-byte load. The offsets of the blocks are stored in an index at the
+ * end of the file, whose position is written in the header.
+ *
+ * All values are little-endian. Header layout:
+ *
+ * <pre>
+ *  0  magic "CLUGENPK"
+ *  8  int version
+ * 12  int dimensionality d
+ * 16  long rows
+ * 24  int rowsPerBlock
+ * 28  int labelMin
+ * 32  int labelBits
+ * 36  int reserved
+ * 40  long indexOffset
+ * 48  int inf[d], int sup[d], int coordBits[d]
+ * </pre>
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class PackedDatasetWriter implements PointBlockConsumer, Closeable {
+
+    static final byte[] MAGIC = {'C', 'L', 'U', 'G', 'E', 'N', 'P', 'K'};
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 48;
+    static final int ROWS_OFFSET = 16;
+    static final int INDEX_OFFSET = 40;
+    public static final int DEFAULT_ROWS_PER_BLOCK = 65536;
+    static final int BUFFER_SIZE = 1 << 20;
+
+    final FileChannel channel;
+    final int dimensionality;
+    final int[] inf;
+    final int[] sup;
+    final int[] coordBits;
+    final int labelMin;
+    final int labelMax;
+    final int labelBits;
+    final int rowsPerBlock;
+    final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    final ArrayList<Long> blockOffsets = new ArrayList<>();
+    long position;
+    long rows;
+    long acc;
+    int nAcc;
+
+    /**
+     * Creates a writer for points in the domain with labels in [labelMin,
+     * labelMax].
+     */
+    public PackedDatasetWriter(String fileName, Range domain, int labelMin, int labelMax) throws IOException {
+        this(fileName, domain, labelMin, labelMax, DEFAULT_ROWS_PER_BLOCK);
+    }
+
+    public PackedDatasetWriter(String fileName, Range domain, int labelMin, int labelMax, int rowsPerBlock) throws IOException {
+        if (labelMax < labelMin || rowsPerBlock <= 0) {
+            throw new IllegalArgumentException("Invalid label range or block size");
+        }
+        dimensionality = domain.getDimensionality();
+        inf = domain.getInf().clone();
+        sup = domain.getSup().clone();
+        coordBits = new int[dimensionality];
+        for (int k = 0; k < dimensionality; k++) {
+            coordBits[k] = bits((long) sup[k] - inf[k]);
+        }
+        this.labelMin = labelMin;
+        this.labelMax = labelMax;
+        labelBits = bits((long) labelMax - labelMin);
+        this.rowsPerBlock = rowsPerBlock;
+        channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        buffer.put(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(dimensionality);
+        buffer.putLong(0); //rows, written by close
+        buffer.putInt(rowsPerBlock);
+        buffer.putInt(labelMin);
+        buffer.putInt(labelBits);
+        buffer.putInt(0);
+        buffer.putLong(0); //index offset, written by close
+        for (int v : inf) {
+            buffer.putInt(v);
+        }
+        for (int v : sup) {
+            buffer.putInt(v);
+        }
+        for (int v : coordBits) {
+            buffer.putInt(v);
+        }
+        position = buffer.position();
+        align();
+    }
+
+    /**
+     * Returns the number of bits needed to store the values from 0 to
+     * maxOffset.
+     */
+    static int bits(long maxOffset) {
+        return 64 - Long.numberOfLeadingZeros(maxOffset);
+    }
+
+    /**
+     * Creates a writer for the points of a plan, whose labels are in [-1,
+     * number of clusters - 1].
+     */
+    public static PackedDatasetWriter forPlan(String fileName, GenerationPlan plan) throws IOException {
+        return new PackedDatasetWriter(fileName, plan.getDomain(), -1, Math.max(-1, plan.getNumberOfClusters() - 1));
+    }
+
+    /**
+     * Converts the text dataset in fileName and fileNameLabels, whose points
+     * are in the domain, to the packed format. The labels are scanned first
+     * to find their range.
+     *
+     * @return the number of rows converted
+     */
+    public static long convert(String fileName, String fileNameLabels, Range domain, String packedFileName) throws IOException {
+        int labelMin = Integer.MAX_VALUE;
+        int labelMax = Integer.MIN_VALUE;
+        try (ImageRenderer.IntParser labels = new ImageRenderer.IntParser(fileNameLabels)) {
+            while (labels.hasNextLine()) {
+                int label = labels.nextInt();
+                labelMin = Math.min(labelMin, label);
+                labelMax = Math.max(labelMax, label);
+                labels.skipLine();
+            }
+        }
+        if (labelMin > labelMax) {
+            labelMin = labelMax = -1;
+        }
+        int d = domain.getDimensionality();
+        int[] p = new int[d];
+        try (
+                ImageRenderer.IntParser data = new ImageRenderer.IntParser(fileName);
+                ImageRenderer.IntParser labels = new ImageRenderer.IntParser(fileNameLabels);
+                PackedDatasetWriter out = new PackedDatasetWriter(packedFileName, domain, labelMin, labelMax)) {
+            while (data.hasNextLine()) {
+                for (int k = 0; k < d; k++) {
+                    p[k] = data.nextInt();
+                }
+                data.skipLine();
+                if (!labels.hasNextLine()) {
+                    throw new IOException("File lengths mismatch");
+                }
+                out.write(p, 0, labels.nextInt());
+                labels.skipLine();
+            }
+            if (labels.hasNextLine()) {
+                throw new IOException("File lengths mismatch");
+            }
+            return out.getRows();
+        }
+    }
+
+    private void put(byte b) throws IOException {
+        if (!buffer.hasRemaining()) {
+            flushBuffer();
+        }
+        buffer.put(b);
+        position++;
+    }
+
+    private void putBits(long v, int bits) throws IOException {
+        acc |= v << nAcc;
+        nAcc += bits;
+        while (nAcc >= 8) {
+            put((byte) acc);
+            acc >>>= 8;
+            nAcc -= 8;
+        }
+    }
+
+    /**
+     * Writes the pending bits and pads to a multiple of 8 bytes.
+     */
+    private void align() throws IOException {
+        if (nAcc > 0) {
+            put((byte) acc);
+            acc = 0;
+            nAcc = 0;
+        }
+        while (position % 8 != 0) {
+            put((byte) 0);
+        }
+    }
+
+    public void write(int[] p, int offset, int label) throws IOException {
+        if (rows % rowsPerBlock == 0) {
+            if (rows > 0) {
+                endBlock();
+            }
+            blockOffsets.add(position);
+        }
+        for (int k = 0; k < dimensionality; k++) {
+            int v = p[offset + k];
+            if (v < inf[k] || v > sup[k]) {
+                throw new IllegalArgumentException("Coordinate " + v + " outside the range " + inf[k] + ".." + sup[k]);
+            }
+            putBits((long) v - inf[k], coordBits[k]);
+        }
+        if (label < labelMin || label > labelMax) {
+            throw new IllegalArgumentException("Label " + label + " outside the range " + labelMin + ".." + labelMax);
+        }
+        putBits((long) label - labelMin, labelBits);
+        rows++;
+    }
+
+    private void endBlock() throws IOException {
+        align();
+        for (int i = 0; i < 8; i++) {
+            put((byte) 0);
+        }
+    }
+
+    @Override
+    public void accept(PointBlock block) throws IOException {
+        for (int i = 0; i < block.size; i++) {
+            write(block.coords, i * block.dimensionality, block.labels[i]);
+        }
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (rows > 0) {
+                endBlock();
+            }
+            long indexOffset = position;
+            for (long offset : blockOffsets) {
+                for (int i = 0; i < 8; i++) {
+                    put((byte) (offset >>> (8 * i)));
+                }
+            }
+            flushBuffer();
+            ByteBuffer header = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            header.putLong(0, rows);
+            channel.write(header, ROWS_OFFSET);
+            header.clear();
+            header.putLong(0, indexOffset);
+            channel.write(header, INDEX_OFFSET);
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+import static edu.ucla.cs.scai.clustering.syntheticgenerator.MultidimensionalGaussianGenerator.reportBytes;
+import static edu.ucla.cs.scai.clustering.syntheticgenerator.MultidimensionalGaussianGenerator.reportPhase;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Generates the chunks of a plan in parallel on a fork/join pool. Chunks are
+ * written in plan order as soon as they are completed, keeping at most a few
+ * chunks per thread in memory. The statistics of every chunk are computed by
+ * the task generating it and merged in plan order, as
+ * MultidimensionalGaussianGenerator.generate does, so that the output,
+ * including the _info file, does not depend on the number of threads.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class ParallelGaussianGenerator {
+
+    static final int CHUNKS_PER_THREAD = 4;
+
+    public static void generate(String fileName, GenerationPlan plan, int parallelism) throws IOException {
+
+        if (plan.getMode() == GenerationPlan.Mode.SEQUENTIAL) {
+            MultidimensionalGaussianGenerator.generate(fileName, plan);
+            return;
+        }
+        GenerationListener listener = plan.getListener();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        DatasetWriter out = new DatasetWriter(fileName);
+        try {
+            MultidimensionalGaussianGenerator.generateWithInfo(fileName + "_info", plan, stats -> {
+                List<PointSource> sources = plan.createSources();
+                System.out.println("Generating " + sources.size() + " chunks with " + parallelism + " threads...");
+                ArrayDeque<ForkJoinTask<ChunkResult>> pending = new ArrayDeque<>();
+                int maxPending = parallelism * CHUNKS_PER_THREAD;
+                int next = 0;
+                while (next < sources.size() || !pending.isEmpty()) {
+                    while (next < sources.size() && pending.size() < maxPending) {
+                        pending.add(pool.submit(new ChunkTask(plan, sources.get(next++))));
+                    }
+                    ChunkResult result = pending.poll().join();
+                    long start = System.nanoTime();
+                    out.accept(result.block);
+                    reportPhase(listener, GenerationListener.Phase.WRITE, start, result.block.getSize());
+                    stats.merge(result.stats);
+                }
+                return out.getOutliers();
+            });
+        } finally {
+            try {
+                out.close();
+            } finally {
+                pool.shutdown();
+            }
+        }
+        reportBytes(listener, out.getBytesWritten());
+    }
+
+    static class ChunkResult {
+
+        final PointBlock block;
+        final ClusterStats stats;
+
+        ChunkResult(PointBlock block, ClusterStats stats) {
+            this.block = block;
+            this.stats = stats;
+        }
+    }
+
+    static class ChunkTask extends RecursiveTask<ChunkResult> {
+
+        private static final long serialVersionUID = 1L;
+
+        final GenerationPlan plan;
+        final PointSource source;
+
+        ChunkTask(GenerationPlan plan, PointSource source) {
+            this.plan = plan;
+            this.source = source;
+        }
+
+        @Override
+        protected ChunkResult compute() {
+            PointBlock block = new PointBlock(plan.getDimensionality(), (int) source.getRemaining());
+            ClusterStats stats = new ClusterStats(plan.getNumberOfClusters(), plan.getDimensionality());
+            source.fill(block, stats);
+            return new ChunkResult(block, stats);
+        }
+    }
+}
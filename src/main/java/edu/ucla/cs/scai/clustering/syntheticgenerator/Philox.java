@@ -0,0 +1,119 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+/**
+ * The Philox4x32-10 counter-based generator (Salmon et al., "Parallel random
+ * numbers: as easy as 1, 2, 3", SC 2011).
+ *
+ * Every 128-bit counter is encrypted with the 64-bit key into four random
+ * ints. Here the first half of the counter is a stream number, set by seek,
+ * and the second half counts the blocks drawn from that stream, so that
+ * every stream can be positioned in constant time. Gaussian values are drawn
+ * by the polar method of RandomSampler.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+class Philox extends RandomSampler {
+
+    static final int M0 = 0xD2511F53;
+    static final int M1 = 0xCD9E8D57;
+    static final int W0 = 0x9E3779B9;
+    static final int W1 = 0xBB67AE85;
+    static final int ROUNDS = 10;
+
+    final int key0;
+    final int key1;
+    long stream;
+    long block;
+    final int[] output = new int[4];
+    int next = 4;
+
+    Philox(long key) {
+        key0 = (int) key;
+        key1 = (int) (key >>> 32);
+    }
+
+    /**
+     * Positions the generator at the beginning of the given stream.
+     */
+    void seek(long stream) {
+        this.stream = stream;
+        block = 0;
+        next = 4;
+        clearGaussian();
+    }
+
+    /**
+     * Encrypts the counter (c0, c1, c2, c3) into out.
+     */
+    static void encrypt(int c0, int c1, int c2, int c3, int k0, int k1, int[] out) {
+        for (int r = 0; r < ROUNDS; r++) {
+            long p0 = (M0 & 0xFFFFFFFFL) * (c0 & 0xFFFFFFFFL);
+            long p1 = (M1 & 0xFFFFFFFFL) * (c2 & 0xFFFFFFFFL);
+            int n0 = (int) (p1 >>> 32) ^ c1 ^ k0;
+            int n2 = (int) (p0 >>> 32) ^ c3 ^ k1;
+            c0 = n0;
+            c1 = (int) p1;
+            c2 = n2;
+            c3 = (int) p0;
+            k0 += W0;
+            k1 += W1;
+        }
+        out[0] = c0;
+        out[1] = c1;
+        out[2] = c2;
+        out[3] = c3;
+    }
+
+    int nextInt() {
+        if (next == 4) {
+            encrypt((int) stream, (int) (stream >>> 32), (int) block, (int) (block >>> 32), key0, key1, output);
+            block++;
+            next = 0;
+        }
+        return output[next++];
+    }
+
+    @Override
+    public long nextLong() {
+        return ((long) nextInt() << 32) | (nextInt() & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Returns a uniformly distributed value in [0, 1), with 53 random bits.
+     */
+    @Override
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Returns a uniformly distributed value in [0, bound), without bias
+     * (Lemire, "Fast random integer generation in an interval", 2019).
+     */
+    @Override
+    public int nextInt(int bound) {
+        long m = (nextInt() & 0xFFFFFFFFL) * bound;
+        if ((m & 0xFFFFFFFFL) < bound) {
+            long threshold = (0x100000000L - bound) % bound;
+            while ((m & 0xFFFFFFFFL) < threshold) {
+                m = (nextInt() & 0xFFFFFFFFL) * bound;
+            }
+        }
+        return (int) (m >>> 32);
+    }
+}
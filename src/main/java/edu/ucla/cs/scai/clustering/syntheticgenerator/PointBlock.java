@@ -0,0 +1,100 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+/**
+ * A batch of labeled points stored in flat row-major arrays: the k-th
+ * coordinate of the i-th point is coords[i * dimensionality + k].
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class PointBlock {
+
+    protected int dimensionality;
+    protected int[] coords;
+    protected int[] labels;
+    protected int size;
+
+    public PointBlock(int dimensionality, int capacity) {
+        this.dimensionality = dimensionality;
+        coords = new int[dimensionality * capacity];
+        labels = new int[capacity];
+    }
+
+    public int getDimensionality() {
+        return dimensionality;
+    }
+
+    public int getCapacity() {
+        return labels.length;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public boolean isFull() {
+        return size == labels.length;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int[] getCoords() {
+        return coords;
+    }
+
+    public int[] getLabels() {
+        return labels;
+    }
+
+    public int getCoord(int i, int k) {
+        return coords[i * dimensionality + k];
+    }
+
+    public int getLabel(int i) {
+        return labels[i];
+    }
+
+    public int[] getPoint(int i) {
+        int[] p = new int[dimensionality];
+        System.arraycopy(coords, i * dimensionality, p, 0, dimensionality);
+        return p;
+    }
+
+    /**
+     * Returns the offset in coords of the next point, where a candidate
+     * point can be written in place; the point is added by commit.
+     */
+    public int nextOffset() {
+        return size * dimensionality;
+    }
+
+    /**
+     * Adds the point written at nextOffset, with the given label.
+     */
+    public void commit(int label) {
+        labels[size] = label;
+        size++;
+    }
+
+    public void add(int[] p, int label) {
+        System.arraycopy(p, 0, coords, size * dimensionality, dimensionality);
+        labels[size] = label;
+        size++;
+    }
+}
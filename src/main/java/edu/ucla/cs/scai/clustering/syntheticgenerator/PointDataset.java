@@ -0,0 +1,56 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+/**
+ * A dataset of labeled points with random access to every point.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public interface PointDataset {
+
+    int getDimensionality();
+
+    long size();
+
+    /**
+     * Returns the k-th coordinate (0-based) of the i-th point.
+     */
+    int getCoord(long i, int k);
+
+    int getLabel(long i);
+
+    /**
+     * Writes the coordinates of the i-th point into p, starting at offset.
+     */
+    void getPoint(long i, int[] p, int offset);
+
+    /**
+     * Replaces the content of the block with the points starting from the
+     * from-th, as many as fit in the block.
+     *
+     * @return the number of points copied
+     */
+    default int fill(long from, PointBlock block) {
+        block.clear();
+        while (!block.isFull() && from + block.size < size()) {
+            long i = from + block.size;
+            getPoint(i, block.coords, block.nextOffset());
+            block.commit(getLabel(i));
+        }
+        return block.size;
+    }
+}
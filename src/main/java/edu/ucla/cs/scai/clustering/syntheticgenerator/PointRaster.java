@@ -0,0 +1,233 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import javax.imageio.ImageIO;
+
+/**
+ * Draws the projection of the points it receives on two dimensions, writing
+ * pixels directly into the raster of the image.
+ *
+ * In SCATTER mode, every pixel takes the color of the last point drawn on
+ * it: a color for every label, assigned in order of first appearance, and
+ * black for noise. In DENSITY mode, every pixel is colored according to the
+ * logarithm of the number of points drawn on it, from blue to red, and labels
+ * are ignored. The image has a white background and a black border.
+ *
+ * Every pixel covers scale x scale units of the domain. With the
+ * constructor PointRaster(Range, boolean), the raster draws dimensions 1 and
+ * 2 at one pixel per unit without translating by the lower corner of the
+ * domain, producing the same image as the original createImage on the same
+ * points in the same order.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class PointRaster implements PointBlockConsumer {
+
+    public enum Mode {
+
+        SCATTER, DENSITY
+    }
+
+    static final int WHITE = Color.WHITE.getRGB() & 0xFFFFFF;
+    static final int BLACK = Color.BLACK.getRGB() & 0xFFFFFF;
+
+    final BufferedImage image;
+    final int[] pixels;
+    final int[] counts;
+    final int width;
+    final int height;
+    final int dimX;
+    final int dimY;
+    final int originX;
+    final int originY;
+    final int scale;
+    final Mode mode;
+    final boolean colors;
+    final HashMap<Integer, Integer> color = new HashMap<>();
+    int nextColor;
+    int lastLabel = -1;
+    int lastColor = BLACK;
+    boolean finished;
+
+    public PointRaster(Range domain, boolean colors) {
+        this(domain, 1, 2, 1, Mode.SCATTER, colors, false);
+    }
+
+    /**
+     * Creates a raster drawing dimensions dimX and dimY (1-based, as in
+     * Range) of the domain, translated so that the lower corner of the domain
+     * is the top left pixel of the image.
+     *
+     * @param scale the number of units of the domain covered by a pixel along
+     * each axis
+     */
+    public PointRaster(Range domain, int dimX, int dimY, int scale, Mode mode, boolean colors) {
+        this(domain, dimX, dimY, scale, mode, colors, true);
+    }
+
+    PointRaster(Range domain, int dimX, int dimY, int scale, Mode mode, boolean colors, boolean translate) {
+        if (dimX < 1 || dimX > domain.getDimensionality() || dimY < 1 || dimY > domain.getDimensionality()) {
+            throw new IllegalArgumentException("Dimensions " + dimX + " and " + dimY + " are not in the domain");
+        }
+        if (scale < 1) {
+            throw new IllegalArgumentException("The scale must be positive");
+        }
+        this.dimX = dimX;
+        this.dimY = dimY;
+        this.scale = scale;
+        this.mode = mode;
+        this.colors = colors;
+        originX = translate ? domain.getInfCoord(dimX) : 0;
+        originY = translate ? domain.getInfCoord(dimY) : 0;
+        width = (domain.getSupCoord(dimX) - domain.getInfCoord(dimX)) / scale + 1;
+        height = (domain.getSupCoord(dimY) - domain.getInfCoord(dimY)) / scale + 1;
+        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        counts = mode == Mode.DENSITY ? new int[width * height] : null;
+        Arrays.fill(pixels, WHITE);
+        drawBorder();
+        color.put(-1, BLACK);
+    }
+
+    private void drawBorder() {
+        for (int x = 0; x < width; x++) {
+            pixels[x] = BLACK;
+            pixels[(height - 1) * width + x] = BLACK;
+        }
+        for (int y = 0; y < height; y++) {
+            pixels[y * width] = BLACK;
+            pixels[y * width + width - 1] = BLACK;
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getDimX() {
+        return dimX;
+    }
+
+    public int getDimY() {
+        return dimY;
+    }
+
+    /**
+     * Returns the color of the label, assigning the next color of the palette
+     * to labels never seen before. Colors must be requested in the order of
+     * the points, by a single thread.
+     */
+    int colorOf(int label) {
+        if (label == lastLabel) {
+            return lastColor;
+        }
+        Integer c = color.get(label);
+        if (c == null) {
+            c = MultidimensionalGaussianGenerator.colbase[nextColor].getRGB() & 0xFFFFFF;
+            nextColor = (nextColor + 1) % MultidimensionalGaussianGenerator.colbase.length;
+            color.put(label, c);
+        }
+        lastLabel = label;
+        lastColor = colors ? c : BLACK;
+        return lastColor;
+    }
+
+    /**
+     * Returns the index in the raster of the pixel of the point with the
+     * given coordinates along dimX and dimY, or -1 if the point is outside
+     * the image.
+     */
+    int pixelIndex(int x, int y) {
+        x -= originX;
+        y -= originY;
+        if (x < 0 || y < 0) {
+            return -1;
+        }
+        x /= scale;
+        y /= scale;
+        return x < width && y < height ? y * width + x : -1;
+    }
+
+    /**
+     * Draws a point at the given pixel index. Different threads can plot
+     * concurrently as long as they plot different pixels.
+     */
+    void plot(int index, int c) {
+        if (counts != null) {
+            counts[index]++;
+        } else {
+            pixels[index] = c;
+        }
+    }
+
+    /**
+     * Draws a point given its coordinates along dimX and dimY.
+     */
+    public void draw(int x, int y, int label) {
+        int c = colorOf(label);
+        int index = pixelIndex(x, y);
+        if (index >= 0) {
+            plot(index, c);
+        }
+    }
+
+    @Override
+    public void accept(PointBlock block) {
+        int d = block.dimensionality;
+        for (int i = 0; i < block.size; i++) {
+            draw(block.coords[i * d + dimX - 1], block.coords[i * d + dimY - 1], block.labels[i]);
+        }
+    }
+
+    /**
+     * Returns the image; in DENSITY mode, the counts are converted to colors
+     * and no more points can be drawn.
+     */
+    public BufferedImage getImage() {
+        if (counts != null && !finished) {
+            int max = 0;
+            for (int c : counts) {
+                max = Math.max(max, c);
+            }
+            double logMax = Math.log1p(max);
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0) {
+                    double t = Math.log1p(counts[i]) / logMax;
+                    pixels[i] = Color.HSBtoRGB((float) (2.0 / 3 * (1 - t)), 1, 1) & 0xFFFFFF;
+                }
+            }
+            drawBorder();
+        }
+        finished = true;
+        return image;
+    }
+
+    public void write(String fileName) throws IOException {
+        ImageIO.write(getImage(), "PNG", new File(fileName));
+    }
+}
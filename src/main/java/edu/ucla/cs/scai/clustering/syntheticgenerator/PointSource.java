@@ -0,0 +1,38 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+/**
+ * A sequence of generated points, consumed block by block.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+interface PointSource {
+
+    /**
+     * Appends the next points to the block, until either the block is full
+     * or the source is exhausted. The points are also added to the
+     * statistics, if not null.
+     *
+     * @return false if the source was already exhausted
+     */
+    boolean fill(PointBlock block, ClusterStats stats);
+
+    /**
+     * Returns the number of points not generated yet.
+     */
+    long getRemaining();
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+
+/**
+ * Source of the uniform and Gaussian values used to generate the points.
+ * Samplers are not thread-safe: every point source has its own.
+ *
+ * The samplers returned by of(Random) and of(SplittableRandom) return the
+ * same values as the wrapped generators, so that the datasets generated with
+ * the LEGACY random engine are the same as those of the previous versions;
+ * Xoshiro256Sampler is the faster sampler of the FAST engine.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public abstract class RandomSampler implements GaussianSource {
+
+    double nextGaussian;
+    boolean haveNextGaussian;
+
+    public static RandomSampler of(Random rand) {
+        return new LegacySampler(rand);
+    }
+
+    public static RandomSampler of(SplittableRandom rand) {
+        return new SplittableSampler(rand);
+    }
+
+    /**
+     * Returns a uniformly distributed long.
+     */
+    public abstract long nextLong();
+
+    /**
+     * Returns a uniformly distributed value in [0, bound).
+     */
+    public abstract int nextInt(int bound);
+
+    /**
+     * Returns a uniformly distributed value in [0, 1).
+     */
+    @Override
+    public abstract double nextDouble();
+
+    /**
+     * Polar method, as in java.util.Random.nextGaussian.
+     */
+    @Override
+    public double nextGaussian() {
+        if (haveNextGaussian) {
+            haveNextGaussian = false;
+            return nextGaussian;
+        }
+        double v1, v2, s;
+        do {
+            v1 = 2 * nextDouble() - 1;
+            v2 = 2 * nextDouble() - 1;
+            s = v1 * v1 + v2 * v2;
+        } while (s >= 1 || s == 0);
+        double multiplier = StrictMath.sqrt(-2 * StrictMath.log(s) / s);
+        nextGaussian = v2 * multiplier;
+        haveNextGaussian = true;
+        return v1 * multiplier;
+    }
+
+    /**
+     * Discards the Gaussian value computed but not yet returned by the polar
+     * method.
+     */
+    void clearGaussian() {
+        haveNextGaussian = false;
+    }
+
+    static class LegacySampler extends RandomSampler {
+
+        final Random rand;
+
+        LegacySampler(Random rand) {
+            this.rand = rand;
+        }
+
+        @Override
+        public long nextLong() {
+            return rand.nextLong();
+        }
+
+        @Override
+        public int nextInt(int bound) {
+            return rand.nextInt(bound);
+        }
+
+        @Override
+        public double nextDouble() {
+            return rand.nextDouble();
+        }
+
+        @Override
+        public double nextGaussian() {
+            return rand.nextGaussian();
+        }
+    }
+
+    static class SplittableSampler extends RandomSampler {
+
+        final SplittableRandom rand;
+
+        SplittableSampler(SplittableRandom rand) {
+            this.rand = rand;
+        }
+
+        @Override
+        public long nextLong() {
+            return rand.nextLong();
+        }
+
+        @Override
+        public int nextInt(int bound) {
+            return rand.nextInt(bound);
+        }
+
+        @Override
+        public double nextDouble() {
+            return rand.nextDouble();
+        }
+    }
+}
@@ -74,12 +74,32 @@ public class Range {
 
     public int[] getRandomInnerCell(Random rnd) {
         int[] coord = new int[inf.length];
-        for (int k = 0; k < coord.length; k++) {
-            coord[k] = inf[k] + rnd.nextInt(sup[k] - inf[k] + 1);
-        }
+        getRandomInnerCell(rnd, coord, 0);
+        return coord;
+    }
+
+    public int[] getRandomInnerCell(RandomSampler rnd) {
+        int[] coord = new int[inf.length];
+        getRandomInnerCell(rnd, coord, 0);
         return coord;
     }
 
+    /**
+     * Writes a random cell of the range into coord, starting at offset,
+     * using the same random values as getRandomInnerCell(rnd).
+     */
+    public void getRandomInnerCell(Random rnd, int[] coord, int offset) {
+        for (int k = 0; k < inf.length; k++) {
+            coord[offset + k] = inf[k] + rnd.nextInt(sup[k] - inf[k] + 1);
+        }
+    }
+
+    public void getRandomInnerCell(RandomSampler rnd, int[] coord, int offset) {
+        for (int k = 0; k < inf.length; k++) {
+            coord[offset + k] = inf[k] + rnd.nextInt(sup[k] - inf[k] + 1);
+        }
+    }
+
     public int getDimensionality() {
         return inf.length;
     }
@@ -0,0 +1,349 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Writes the dataset of a plan as several shards, part-00000.data and
+ * part-00000.data_labels, part-00001.data and part-00001.data_labels, and so
+ * on, in a directory. Every shard is generated and written by its own
+ * thread.
+ *
+ * The chunks of the plan are assigned to the shards round-robin, i.e., chunk
+ * i goes to shard i modulo the number of shards, thus every shard contains
+ * points of all the clusters. Since chunks have their own random streams, a
+ * shard only depends on the plan and on the number of shards, and can be
+ * rebuilt alone with rebuildShard.
+ *
+ * The directory also contains _info, the same file written by the other
+ * generators for the plan, and _manifest, a properties file with the plan and,
+ * for every shard, its files, number of rows per cluster, sizes and CRC32
+ * checksums, so that the shards can be split among readers without being
+ * scanned.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class ShardedGenerator {
+
+    public static final String MANIFEST = "_manifest";
+    public static final String INFO = "_info";
+
+    public static String shardFileName(int shard) {
+        return String.format("part-%05d.data", shard);
+    }
+
+    /**
+     * Generates the shards with one thread per shard.
+     */
+    public static void generate(String dirName, GenerationPlan plan, int nShards) throws IOException {
+        generate(dirName, plan, nShards, nShards);
+    }
+
+    /**
+     * Generates the shards with at most parallelism threads, each writing a
+     * whole shard at a time.
+     */
+    public static void generate(String dirName, GenerationPlan plan, int nShards, int parallelism) throws IOException {
+        checkPlan(plan, nShards);
+        File dir = new File(dirName);
+        dir.mkdirs();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(nShards, parallelism)));
+        ArrayList<ShardResult> results = new ArrayList<>();
+        try {
+            MultidimensionalGaussianGenerator.generateWithInfo(new File(dir, INFO).getPath(), plan, stats -> {
+                System.out.println("Generating " + plan.getNumberOfPoints() + " points in " + nShards + " shards...");
+                ArrayList<Future<ShardResult>> futures = new ArrayList<>();
+                for (int s = 0; s < nShards; s++) {
+                    final int shard = s;
+                    futures.add(pool.submit(() -> generateShard(dirName, plan, nShards, shard)));
+                }
+                //the statistics of the chunks are merged in plan order, as by the other generators
+                ClusterStats[] chunkStats = new ClusterStats[plan.getChunks().size()];
+                long nOutlier = 0;
+                for (Future<ShardResult> future : futures) {
+                    ShardResult result = get(future);
+                    results.add(result);
+                    for (int i = 0; i < result.chunks.length; i++) {
+                        chunkStats[result.chunks[i]] = result.chunkStats[i];
+                    }
+                    nOutlier += result.outliers;
+                }
+                for (ClusterStats c : chunkStats) {
+                    stats.merge(c);
+                }
+                return nOutlier;
+            });
+            writeManifest(new File(dir, MANIFEST), plan, results);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static ShardResult get(Future<ShardResult> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static void checkPlan(GenerationPlan plan, int nShards) {
+        if (plan.getMode() == GenerationPlan.Mode.SEQUENTIAL) {
+            throw new IllegalArgumentException("Plans in SEQUENTIAL mode cannot be sharded");
+        }
+        if (nShards <= 0) {
+            throw new IllegalArgumentException("The number of shards must be positive");
+        }
+    }
+
+    /**
+     * Returns the chunks of the plan assigned to the shard.
+     */
+    public static List<GenerationPlan.Chunk> getShardChunks(GenerationPlan plan, int nShards, int shard) {
+        ArrayList<GenerationPlan.Chunk> chunks = new ArrayList<>();
+        for (GenerationPlan.Chunk chunk : plan.getChunks()) {
+            if (chunk.getIndex() % nShards == shard) {
+                chunks.add(chunk);
+            }
+        }
+        return chunks;
+    }
+
+    /**
+     * Writes a single shard of the dataset in dirName.
+     */
+    public static ShardResult generateShard(String dirName, GenerationPlan plan, int nShards, int shard) throws IOException {
+        checkPlan(plan, nShards);
+        String fileName = new File(dirName, shardFileName(shard)).getPath();
+        List<GenerationPlan.Chunk> chunks = getShardChunks(plan, nShards, shard);
+        ClusterStats[] chunkStats = new ClusterStats[chunks.size()];
+        DatasetWriter out = new DatasetWriter(fileName);
+        try {
+            out.computeChecksums();
+            PointBlockConsumer output = MultidimensionalGaussianGenerator.timed(plan.getListener(), GenerationListener.Phase.WRITE, out);
+            PointBlock block = new PointBlock(plan.getDimensionality(), GaussianPointSpliterator.DEFAULT_BLOCK_SIZE);
+            for (int i = 0; i < chunks.size(); i++) {
+                PointSource source = plan.createSource(chunks.get(i));
+                chunkStats[i] = new ClusterStats(plan.getNumberOfClusters(), plan.getDimensionality());
+                while (source.fill(block, chunkStats[i])) {
+                    output.accept(block);
+                    block.clear();
+                }
+            }
+        } finally {
+            out.close();
+        }
+        MultidimensionalGaussianGenerator.reportBytes(plan.getListener(), out.getBytesWritten());
+        return new ShardResult(shard, chunks, out, chunkStats, plan.getNumberOfClusters());
+    }
+
+    /**
+     * Rebuilds a shard of a dataset written by generate, using the plan in
+     * its manifest, and checks that the result matches the manifest.
+     */
+    public static void rebuildShard(String dirName, int shard) throws IOException {
+        Properties manifest = new Properties();
+        try (InputStream in = new FileInputStream(new File(dirName, MANIFEST))) {
+            manifest.load(in);
+        }
+        GenerationPlan plan = loadPlan(manifest);
+        int nShards = Integer.parseInt(manifest.getProperty("shards"));
+        ShardResult result = generateShard(dirName, plan, nShards, shard);
+        String prefix = "shard." + shard + ".";
+        if (result.rows != Long.parseLong(manifest.getProperty(prefix + "rows"))
+                || result.dataChecksum != Long.parseLong(manifest.getProperty(prefix + "dataCrc32"))
+                || result.labelsChecksum != Long.parseLong(manifest.getProperty(prefix + "labelsCrc32"))) {
+            throw new IOException("Shard " + shard + " does not match the manifest");
+        }
+    }
+
+    /**
+     * Returns the plan described by a manifest.
+     */
+    public static GenerationPlan loadPlan(Properties manifest) {
+        Range domain = new Range(GridConfig.parseInts(manifest.getProperty("domain.inf")), GridConfig.parseInts(manifest.getProperty("domain.sup")));
+        int nClusters = Integer.parseInt(manifest.getProperty("clusters"));
+        int[][] centers = new int[nClusters][];
+        int[][] radii = new int[nClusters][];
+        int[] nClusterPoints = new int[nClusters];
+        for (int i = 0; i < nClusters; i++) {
+            centers[i] = GridConfig.parseInts(manifest.getProperty("cluster." + i + ".center"));
+            radii[i] = GridConfig.parseInts(manifest.getProperty("cluster." + i + ".radius"));
+            nClusterPoints[i] = Integer.parseInt(manifest.getProperty("cluster." + i + ".points"));
+        }
+        GenerationPlan plan = new GenerationPlan(domain, centers, radii, nClusterPoints,
+                Integer.parseInt(manifest.getProperty("noisePoints")), Long.parseLong(manifest.getProperty("seed")));
+        for (int i = 0; i < nClusters; i++) {
+            String covariance = manifest.getProperty("cluster." + i + ".covariance");
+            if (covariance != null) {
+                double[] values = GridConfig.parseDoubles(covariance);
+                double[][] matrix = new double[domain.getDimensionality()][domain.getDimensionality()];
+                for (int j = 0; j < matrix.length; j++) {
+                    System.arraycopy(values, j * matrix.length, matrix[j], 0, matrix.length);
+                }
+                plan.setCovariance(i, new ClusterCovariance(matrix));
+            }
+        }
+        plan.setChunkSize(Integer.parseInt(manifest.getProperty("chunkSize")));
+        plan.setMode(GenerationPlan.Mode.valueOf(manifest.getProperty("mode", GenerationPlan.Mode.CHUNKED.name())));
+        plan.setClusterSampling(GenerationPlan.ClusterSampling.valueOf(manifest.getProperty("clusterSampling")));
+        plan.setRandomEngine(GenerationPlan.RandomEngine.valueOf(manifest.getProperty("randomEngine", GenerationPlan.RandomEngine.LEGACY.name())));
+        return plan;
+    }
+
+    static void writeManifest(File file, GenerationPlan plan, List<ShardResult> results) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (PrintWriter out = new PrintWriter(tmp, "ISO-8859-1")) {
+            out.println("seed=" + plan.getSeed());
+            out.println("chunkSize=" + plan.getChunkSize());
+            out.println("mode=" + plan.getMode());
+            out.println("clusterSampling=" + plan.getClusterSampling());
+            out.println("randomEngine=" + plan.getRandomEngine());
+            out.println("dimensionality=" + plan.getDimensionality());
+            out.println("domain.inf=" + join(plan.getDomain().getInf()));
+            out.println("domain.sup=" + join(plan.getDomain().getSup()));
+            out.println("points=" + plan.getNumberOfPoints());
+            out.println("noisePoints=" + plan.getNoisePoints());
+            out.println("clusters=" + plan.getNumberOfClusters());
+            for (int i = 0; i < plan.getNumberOfClusters(); i++) {
+                out.println("cluster." + i + ".points=" + plan.nClusterPoints[i]);
+                out.println("cluster." + i + ".center=" + join(plan.centers[i]));
+                out.println("cluster." + i + ".radius=" + join(plan.radii[i]));
+                if (plan.getCovariance(i) != null) {
+                    StringBuilder sb = new StringBuilder();
+                    for (double[] row : plan.getCovariance(i).covariance) {
+                        for (double v : row) {
+                            if (sb.length() > 0) {
+                                sb.append(',');
+                            }
+                            sb.append(v);
+                        }
+                    }
+                    out.println("cluster." + i + ".covariance=" + sb);
+                }
+            }
+            out.println("shards=" + results.size());
+            for (ShardResult r : results) {
+                String prefix = "shard." + r.shard + ".";
+                out.println(prefix + "data=" + shardFileName(r.shard));
+                out.println(prefix + "labels=" + shardFileName(r.shard) + "_labels");
+                out.println(prefix + "rows=" + r.rows);
+                out.println(prefix + "clusterRows=" + join(r.clusterRows));
+                out.println(prefix + "noiseRows=" + r.noiseRows);
+                out.println(prefix + "chunks=" + join(r.chunks));
+                out.println(prefix + "dataBytes=" + r.dataBytes);
+                out.println(prefix + "labelsBytes=" + r.labelsBytes);
+                out.println(prefix + "dataCrc32=" + r.dataChecksum);
+                out.println(prefix + "labelsCrc32=" + r.labelsChecksum);
+            }
+            if (out.checkError()) {
+                throw new IOException("Error writing " + tmp);
+            }
+        }
+        if (!tmp.renameTo(file)) {
+            file.delete();
+            if (!tmp.renameTo(file)) {
+                throw new IOException("Cannot rename " + tmp + " to " + file);
+            }
+        }
+    }
+
+    static String join(int[] v) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < v.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(v[i]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Description of a written shard.
+     */
+    public static class ShardResult {
+
+        final int shard;
+        final int[] chunks;
+        final int[] clusterRows;
+        final long noiseRows;
+        final long rows;
+        final long outliers;
+        final long dataBytes;
+        final long labelsBytes;
+        final long dataChecksum;
+        final long labelsChecksum;
+        final ClusterStats[] chunkStats;
+
+        ShardResult(int shard, List<GenerationPlan.Chunk> chunks, DatasetWriter out, ClusterStats[] chunkStats, int nClusters) {
+            this.shard = shard;
+            this.chunks = new int[chunks.size()];
+            clusterRows = new int[nClusters];
+            long noise = 0;
+            for (int i = 0; i < chunks.size(); i++) {
+                GenerationPlan.Chunk chunk = chunks.get(i);
+                this.chunks[i] = chunk.getIndex();
+                if (chunk.isNoise()) {
+                    noise += chunk.getSize();
+                } else {
+                    clusterRows[chunk.getCluster()] += chunk.getSize();
+                }
+            }
+            noiseRows = noise;
+            rows = out.getRows();
+            outliers = out.getOutliers();
+            dataBytes = out.getDataBytes();
+            labelsBytes = out.getLabelsBytes();
+            dataChecksum = out.getDataChecksum();
+            labelsChecksum = out.getLabelsChecksum();
+            this.chunkStats = chunkStats;
+        }
+
+        public int getShard() {
+            return shard;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public long getDataChecksum() {
+            return dataChecksum;
+        }
+
+        public long getLabelsChecksum() {
+            return labelsChecksum;
+        }
+    }
+}
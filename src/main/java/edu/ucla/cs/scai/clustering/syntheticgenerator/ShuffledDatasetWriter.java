@@ -0,0 +1,220 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Writes the points it receives in random order to a .data file and the
+ * corresponding _labels file, without first writing and re-reading an
+ * unshuffled copy.
+ *
+ * Like ExternalShuffle, every point is sent to a random bucket and every
+ * bucket is then shuffled in memory, but points are kept as binary rows of
+ * dimensionality + 1 ints, thus they are neither formatted nor parsed before
+ * the final output. If the expected rows fit in the memory budget, there is a
+ * single bucket held in memory and no temporary file is created.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class ShuffledDatasetWriter implements PointBlockConsumer, Closeable {
+
+    static final int BUCKET_BUFFER_SIZE = 1 << 16;
+
+    final String fileName;
+    final String fileNameLabels;
+    final int dimensionality;
+    final Random rand;
+    final int nBuckets;
+    final File dir;
+    final File[] bucketFiles;
+    final FileChannel[] buckets;
+    final ByteBuffer[] bucketBuffers;
+    PointBlock memory;
+    long nOutlier;
+    boolean closed;
+
+    /**
+     * @param expectedRows the number of rows that will be written, used to
+     * choose the number of buckets
+     * @param tmpDir where the bucket files are created, or null for the
+     * default temporary directory
+     */
+    public ShuffledDatasetWriter(String fileName, String fileNameLabels, int dimensionality, long expectedRows, Random rand, long memoryBudget, File tmpDir) throws IOException {
+        this.fileName = fileName;
+        this.fileNameLabels = fileNameLabels;
+        this.dimensionality = dimensionality;
+        this.rand = rand;
+        long rowBytes = 4L * (dimensionality + 1);
+        long buckets = Math.max(1, (expectedRows * rowBytes + memoryBudget - 1) / memoryBudget);
+        if (buckets == 1 && expectedRows < Integer.MAX_VALUE / (dimensionality + 1)) {
+            nBuckets = 1;
+            memory = new PointBlock(dimensionality, (int) Math.max(expectedRows, 16));
+            dir = null;
+            bucketFiles = null;
+            this.buckets = null;
+            bucketBuffers = null;
+        } else {
+            nBuckets = (int) Math.max(2, Math.min(buckets, Integer.MAX_VALUE));
+            System.out.println("Shuffling with " + nBuckets + " buckets");
+            dir = tmpDir == null ? Files.createTempDirectory("shuffle").toFile() : Files.createTempDirectory(tmpDir.toPath(), "shuffle").toFile();
+            bucketFiles = new File[nBuckets];
+            this.buckets = new FileChannel[nBuckets];
+            bucketBuffers = new ByteBuffer[nBuckets];
+            try {
+                for (int i = 0; i < nBuckets; i++) {
+                    bucketFiles[i] = new File(dir, "bucket" + i);
+                    this.buckets[i] = new RandomAccessFile(bucketFiles[i], "rw").getChannel();
+                    bucketBuffers[i] = ByteBuffer.allocate(BUCKET_BUFFER_SIZE).order(ByteOrder.nativeOrder());
+                }
+            } catch (IOException e) {
+                deleteBuckets();
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public void accept(PointBlock block) throws IOException {
+        int d = block.dimensionality;
+        for (int i = 0; i < block.size; i++) {
+            if (block.labels[i] == -1) {
+                nOutlier++;
+            }
+            if (memory != null) {
+                if (memory.isFull()) {
+                    grow();
+                }
+                System.arraycopy(block.coords, i * d, memory.coords, memory.size * d, d);
+                memory.labels[memory.size++] = block.labels[i];
+            } else {
+                int b = rand.nextInt(nBuckets);
+                ByteBuffer buffer = bucketBuffers[b];
+                if (buffer.remaining() < 4 * (d + 1)) {
+                    flush(b);
+                }
+                for (int k = 0; k < d; k++) {
+                    buffer.putInt(block.coords[i * d + k]);
+                }
+                buffer.putInt(block.labels[i]);
+            }
+        }
+    }
+
+    private void grow() {
+        PointBlock larger = new PointBlock(dimensionality, memory.getCapacity() * 2);
+        System.arraycopy(memory.coords, 0, larger.coords, 0, memory.coords.length);
+        System.arraycopy(memory.labels, 0, larger.labels, 0, memory.labels.length);
+        larger.size = memory.size;
+        memory = larger;
+    }
+
+    private void flush(int b) throws IOException {
+        ByteBuffer buffer = bucketBuffers[b];
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            buckets[b].write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Returns the number of points received with label -1.
+     */
+    public long getOutliers() {
+        return nOutlier;
+    }
+
+    /**
+     * Shuffles the rows of the block in place.
+     */
+    void shuffle(PointBlock block) {
+        int d = block.dimensionality;
+        int[] temp = new int[d];
+        for (int i = 0; i < block.size - 1; i++) {
+            int j = i + rand.nextInt(block.size - i);
+            System.arraycopy(block.coords, i * d, temp, 0, d);
+            System.arraycopy(block.coords, j * d, block.coords, i * d, d);
+            System.arraycopy(temp, 0, block.coords, j * d, d);
+            int t = block.labels[i];
+            block.labels[i] = block.labels[j];
+            block.labels[j] = t;
+        }
+    }
+
+    /**
+     * Shuffles the buckets and writes the output files.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try (DatasetWriter out = new DatasetWriter(fileName, fileNameLabels)) {
+            if (memory != null) {
+                shuffle(memory);
+                out.accept(memory);
+                memory = null;
+                return;
+            }
+            for (int b = 0; b < nBuckets; b++) {
+                flush(b);
+                long rows = buckets[b].size() / (4 * (dimensionality + 1));
+                if (buckets[b].size() > Integer.MAX_VALUE) {
+                    throw new IOException("Bucket " + b + " does not fit in memory");
+                }
+                PointBlock block = new PointBlock(dimensionality, (int) rows);
+                IntBuffer ints = buckets[b].map(FileChannel.MapMode.READ_ONLY, 0, buckets[b].size()).order(ByteOrder.nativeOrder()).asIntBuffer();
+                for (int i = 0; i < rows; i++) {
+                    ints.get(block.coords, i * dimensionality, dimensionality);
+                    block.labels[i] = ints.get();
+                }
+                block.size = (int) rows;
+                buckets[b].close();
+                bucketFiles[b].delete();
+                shuffle(block);
+                out.accept(block);
+            }
+        } finally {
+            deleteBuckets();
+        }
+    }
+
+    private void deleteBuckets() throws IOException {
+        if (dir == null) {
+            return;
+        }
+        for (int b = 0; b < nBuckets; b++) {
+            if (buckets[b] != null) {
+                buckets[b].close();
+            }
+            if (bucketFiles[b] != null) {
+                bucketFiles[b].delete();
+            }
+        }
+        dir.delete();
+    }
+}
@@ -0,0 +1,651 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An unbounded stream of labeled points, published with backpressure, whose
+ * clusters can drift: their centers and radii can move linearly between two
+ * points of the stream, and clusters can appear and disappear.
+ *
+ * Time is measured in points: the i-th point of the stream is generated with
+ * the clusters as they are at time i, so that the stream does not depend on
+ * the rate; with a rate of r points/s, second s of the stream starts at
+ * point s * r. Every point is noise with probability noiseRatio, otherwise
+ * it belongs to one of the active clusters, chosen uniformly; if no cluster
+ * is active, all the points are noise. Points are labeled with the index of
+ * their cluster, in order of creation, and noise points with the cluster
+ * containing them or -1, as by the batch generator.
+ *
+ * Points are generated in blocks of blockSize points, with the clusters as
+ * they are at the beginning of the block: a GenerationPlan is built for the
+ * active clusters, reused as long as no cluster appears or disappears, with
+ * the clusters that moved replaced in it, and every block is generated by
+ * the sources of the plan and then shuffled. Every block has its
+ * own random stream, derived from the seed and the position of the block.
+ *
+ * Every subscriber receives the whole stream from its beginning, generated
+ * on its own thread, or on the executor if one is set; with a positive rate,
+ * blocks are delayed so that the stream does not exceed the rate. The stream
+ * completes after limit points, if a limit is set. The generator must not be
+ * modified while it has subscribers.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class StreamingGenerator implements Flow.Publisher<LabeledPoint> {
+
+    public static final int DEFAULT_BLOCK_SIZE = 4096;
+
+    final Range domain;
+    final double noiseRatio;
+    final long seed;
+    final ArrayList<Timeline> clusters = new ArrayList<>();
+    double rate;
+    int blockSize = DEFAULT_BLOCK_SIZE;
+    long limit = Long.MAX_VALUE;
+    GenerationPlan.ClusterSampling clusterSampling = GenerationPlan.ClusterSampling.AUTO;
+    GenerationPlan.RandomEngine randomEngine = GenerationPlan.RandomEngine.LEGACY;
+    GenerationListener listener;
+    Executor executor;
+
+    /**
+     * Creates a stream whose initial clusters have the given centers and
+     * radii, active from the beginning of the stream.
+     */
+    public StreamingGenerator(Range domain, int[][] centers, int[][] radii, double noiseRatio, long seed) {
+        this.domain = domain;
+        this.noiseRatio = noiseRatio;
+        this.seed = seed;
+        for (int i = 0; i < centers.length; i++) {
+            addCluster(centers[i], radii[i], 0);
+        }
+    }
+
+    public Range getDomain() {
+        return domain;
+    }
+
+    public double getRate() {
+        return rate;
+    }
+
+    /**
+     * Sets the target rate in points per second, or 0 for no limit.
+     */
+    public void setRate(double rate) {
+        if (rate < 0) {
+            throw new IllegalArgumentException("The rate must not be negative");
+        }
+        this.rate = rate;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Sets the number of points generated at a time, which is also the
+     * granularity of the drift and of the rate control.
+     */
+    public void setBlockSize(int blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive");
+        }
+        this.blockSize = blockSize;
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    /**
+     * Sets the number of points after which the stream completes; by default
+     * the stream is unbounded.
+     */
+    public void setLimit(long limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("The limit must not be negative");
+        }
+        this.limit = limit;
+    }
+
+    public void setClusterSampling(GenerationPlan.ClusterSampling clusterSampling) {
+        this.clusterSampling = clusterSampling;
+    }
+
+    public void setRandomEngine(GenerationPlan.RandomEngine randomEngine) {
+        this.randomEngine = randomEngine;
+    }
+
+    public void setListener(GenerationListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Sets the executor running the subscriptions, or null to run every
+     * subscription on its own thread.
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    public int getNumberOfClusters() {
+        return clusters.size();
+    }
+
+    /**
+     * Adds a cluster that appears at the given time and returns its label.
+     */
+    public int addCluster(int[] center, int[] radius, long appear) {
+        if (center.length != domain.getDimensionality() || radius.length != domain.getDimensionality()) {
+            throw new IllegalArgumentException("The cluster must have " + domain.getDimensionality() + " dimensions");
+        }
+        clusters.add(new Timeline(center.clone(), radius.clone(), appear));
+        return clusters.size() - 1;
+    }
+
+    /**
+     * Makes the cluster disappear at the given time.
+     */
+    public void removeCluster(int cluster, long time) {
+        clusters.get(cluster).disappear = time;
+    }
+
+    /**
+     * Moves the center and the radius of the cluster linearly from their
+     * values at time from to the given values at time to. The movements of a
+     * cluster must be added in order of time and must not overlap.
+     */
+    public void moveCluster(int cluster, long from, long to, int[] center, int[] radius) {
+        if (to < from) {
+            throw new IllegalArgumentException("Invalid time interval [" + from + ", " + to + "]");
+        }
+        if (center.length != domain.getDimensionality() || radius.length != domain.getDimensionality()) {
+            throw new IllegalArgumentException("The cluster must have " + domain.getDimensionality() + " dimensions");
+        }
+        Timeline timeline = clusters.get(cluster);
+        if (!timeline.movements.isEmpty() && from < timeline.movements.get(timeline.movements.size() - 1).to) {
+            throw new IllegalArgumentException("The movements of a cluster must not overlap");
+        }
+        timeline.movements.add(new Movement(from, to, center.clone(), radius.clone()));
+    }
+
+    /**
+     * Returns the center of the cluster at the given time, or null if the
+     * cluster is not active.
+     */
+    public int[] getCenter(int cluster, long time) {
+        Timeline t = clusters.get(cluster);
+        if (!t.isActive(time)) {
+            return null;
+        }
+        int[] center = new int[domain.getDimensionality()];
+        t.getState(time, center, new int[center.length]);
+        return center;
+    }
+
+    /**
+     * Returns the radius of the cluster at the given time, or null if the
+     * cluster is not active.
+     */
+    public int[] getRadius(int cluster, long time) {
+        Timeline t = clusters.get(cluster);
+        if (!t.isActive(time)) {
+            return null;
+        }
+        int[] radius = new int[domain.getDimensionality()];
+        t.getState(time, new int[radius.length], radius);
+        return radius;
+    }
+
+    /**
+     * Publishes the stream point by point.
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super LabeledPoint> subscriber) {
+        start(new PointSubscription(subscriber));
+    }
+
+    /**
+     * Returns a publisher of the same stream, block by block, which avoids
+     * creating a LabeledPoint for every point; demand is counted in blocks.
+     * The blocks are not reused by the generator.
+     */
+    public Flow.Publisher<PointBlock> blocks() {
+        return subscriber -> start(new BlockSubscription(subscriber));
+    }
+
+    private void start(StreamSubscription<?> subscription) {
+        subscription.wip.set(1);
+        subscription.executor.execute(subscription);
+    }
+
+    /**
+     * Generates the blocks of a stream, from its beginning.
+     */
+    class BlockGenerator {
+
+        final Timeline[] timelines;
+        final int dimensionality;
+        long index;
+        long blockNumber;
+        final int[] center;
+        final int[] radius;
+        int[] ids = new int[0];
+        GenerationPlan plan;
+
+        BlockGenerator() {
+            timelines = new Timeline[clusters.size()];
+            for (int i = 0; i < timelines.length; i++) {
+                timelines[i] = clusters.get(i).copy();
+            }
+            dimensionality = domain.getDimensionality();
+            center = new int[dimensionality];
+            radius = new int[dimensionality];
+        }
+
+        /**
+         * Returns the next block, or null if the limit has been reached.
+         */
+        PointBlock next() {
+            int size = (int) Math.min(blockSize, limit - index);
+            if (size == 0) {
+                return null;
+            }
+            updatePlan();
+            SplittableRandom rand = new SplittableRandom(GenerationPlan.mix64(seed + (blockNumber + 1) * 0x9E3779B97F4A7C15L));
+            int k = ids.length;
+            int[] counts = new int[k];
+            int noise = 0;
+            for (int i = 0; i < size; i++) {
+                if (k == 0 || rand.nextDouble() < noiseRatio) {
+                    noise++;
+                } else {
+                    counts[rand.nextInt(k)]++;
+                }
+            }
+            PointBlock block = new PointBlock(dimensionality, size);
+            for (int j = 0; j < k; j++) {
+                if (counts[j] > 0) {
+                    new ChunkPointSource(plan, new GenerationPlan.Chunk(j, j, 0, counts[j]), rand.nextLong()).fill(block, null);
+                }
+            }
+            if (noise > 0) {
+                new ChunkPointSource(plan, new GenerationPlan.Chunk(k, GenerationPlan.Chunk.NOISE, 0, noise), rand.nextLong()).fill(block, null);
+            }
+            //labels refer to the active clusters of the plan
+            int[] labels = block.labels;
+            for (int i = 0; i < size; i++) {
+                if (labels[i] >= 0) {
+                    labels[i] = ids[labels[i]];
+                }
+            }
+            shuffle(block, rand);
+            index += size;
+            blockNumber++;
+            return block;
+        }
+
+        /**
+         * Updates the plan to the clusters active at the current time: the
+         * plan is rebuilt when a cluster appears or disappears, otherwise
+         * only the clusters that moved are replaced, so that drifting clusters
+         * do not rebuild the samplers of the others.
+         */
+        private void updatePlan() {
+            int k = 0;
+            for (Timeline t : timelines) {
+                if (t.isActive(index)) {
+                    k++;
+                }
+            }
+            int[] newIds = new int[k];
+            k = 0;
+            for (int i = 0; i < timelines.length; i++) {
+                if (timelines[i].isActive(index)) {
+                    newIds[k++] = i;
+                }
+            }
+            if (plan == null || !Arrays.equals(ids, newIds)) {
+                ids = newIds;
+                int[][] centers = new int[k][dimensionality];
+                int[][] radii = new int[k][dimensionality];
+                for (int j = 0; j < k; j++) {
+                    timelines[ids[j]].getState(index, centers[j], radii[j]);
+                }
+                plan = new GenerationPlan(domain, centers, radii, new int[k], 0, seed);
+                plan.setClusterSampling(clusterSampling);
+                plan.setRandomEngine(randomEngine);
+                plan.setListener(listener);
+                return;
+            }
+            for (int j = 0; j < k; j++) {
+                Timeline t = timelines[ids[j]];
+                if (t.movements.isEmpty()) {
+                    continue;
+                }
+                t.getState(index, center, radius);
+                if (!Arrays.equals(center, plan.centers[j]) || !Arrays.equals(radius, plan.radii[j])) {
+                    plan.setCluster(j, center.clone(), radius.clone());
+                }
+            }
+        }
+
+        private void shuffle(PointBlock block, SplittableRandom rand) {
+            int d = dimensionality;
+            int[] coords = block.coords;
+            int[] labels = block.labels;
+            for (int i = block.size - 1; i > 0; i--) {
+                int j = rand.nextInt(i + 1);
+                int label = labels[i];
+                labels[i] = labels[j];
+                labels[j] = label;
+                for (int k = 0; k < d; k++) {
+                    int v = coords[i * d + k];
+                    coords[i * d + k] = coords[j * d + k];
+                    coords[j * d + k] = v;
+                }
+            }
+        }
+    }
+
+    /**
+     * A subscription to the stream. All the signals to the subscriber,
+     * including onSubscribe, are sent by the drain loop, which runs on the
+     * executor and is never run by two threads at the same time: wip counts
+     * the requests to run it, and the thread running it repeats it until no
+     * new request arrived.
+     */
+    abstract class StreamSubscription<T> implements Flow.Subscription, Runnable {
+
+        final Flow.Subscriber<? super T> subscriber;
+        final BlockGenerator generator = new BlockGenerator();
+        final double rate = StreamingGenerator.this.rate;
+        final ExecutorService ownExecutor;
+        final Executor executor;
+        final AtomicLong demand = new AtomicLong();
+        final AtomicInteger wip = new AtomicInteger();
+        volatile boolean cancelled;
+        volatile Throwable error;
+        volatile Thread runner;
+        boolean subscribed;
+        boolean done;
+        long start;
+
+        StreamSubscription(Flow.Subscriber<? super T> subscriber) {
+            if (subscriber == null) {
+                throw new NullPointerException();
+            }
+            this.subscriber = subscriber;
+            if (StreamingGenerator.this.executor == null) {
+                ownExecutor = Executors.newSingleThreadExecutor(r -> {
+                    Thread t = new Thread(r, "clugen-stream");
+                    t.setDaemon(true);
+                    return t;
+                });
+                executor = ownExecutor;
+            } else {
+                ownExecutor = null;
+                executor = StreamingGenerator.this.executor;
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("The number of requested items must be positive, got " + n);
+            } else {
+                while (true) {
+                    long r = demand.get();
+                    long u = r + n < 0 ? Long.MAX_VALUE : r + n;
+                    if (demand.compareAndSet(r, u)) {
+                        break;
+                    }
+                }
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            Thread t = runner;
+            if (t != null) {
+                //wakes the drain loop if it is waiting for the next block
+                LockSupport.unpark(t);
+            }
+            schedule();
+        }
+
+        void schedule() {
+            if (wip.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    //the subscription has terminated and its executor has been shut down
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            runner = Thread.currentThread();
+            int missed = 1;
+            do {
+                if (!subscribed) {
+                    subscribed = true;
+                    subscriber.onSubscribe(this);
+                }
+                drain();
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+            runner = null;
+        }
+
+        private void drain() {
+            while (!done) {
+                if (cancelled) {
+                    terminate();
+                    return;
+                }
+                Throwable e = error;
+                if (e != null) {
+                    terminate();
+                    subscriber.onError(e);
+                    return;
+                }
+                if (demand.get() == 0) {
+                    return;
+                }
+                boolean emitted;
+                try {
+                    emitted = emit();
+                } catch (RuntimeException ex) {
+                    terminate();
+                    subscriber.onError(ex);
+                    return;
+                }
+                if (!emitted) {
+                    terminate();
+                    if (!cancelled) {
+                        subscriber.onComplete();
+                    }
+                    return;
+                }
+                while (true) {
+                    long r = demand.get();
+                    if (r == Long.MAX_VALUE || demand.compareAndSet(r, r - 1)) {
+                        break;
+                    }
+                }
+            }
+        }
+
+        private void terminate() {
+            done = true;
+            if (ownExecutor != null) {
+                ownExecutor.shutdown();
+            }
+        }
+
+        /**
+         * Sends the next item to the subscriber.
+         *
+         * @return false if the stream is complete or has been cancelled
+         */
+        abstract boolean emit();
+
+        /**
+         * Returns the next block of the stream, waiting until its first
+         * point is due if the rate is limited, or null at the end of the
+         * stream or if the subscription has been cancelled.
+         */
+        PointBlock nextBlock() {
+            if (rate > 0) {
+                long now = System.nanoTime();
+                if (generator.index == 0) {
+                    start = now;
+                }
+                long due = start + (long) (generator.index * 1e9 / rate);
+                while (now < due && !cancelled) {
+                    LockSupport.parkNanos(due - now);
+                    now = System.nanoTime();
+                }
+            }
+            //cancel wakes the wait above, and nothing must be sent afterwards
+            return cancelled ? null : generator.next();
+        }
+    }
+
+    class PointSubscription extends StreamSubscription<LabeledPoint> {
+
+        PointBlock block;
+        int next;
+
+        PointSubscription(Flow.Subscriber<? super LabeledPoint> subscriber) {
+            super(subscriber);
+        }
+
+        @Override
+        boolean emit() {
+            if (block == null || next == block.size) {
+                block = nextBlock();
+                next = 0;
+                if (block == null) {
+                    return false;
+                }
+            }
+            subscriber.onNext(new LabeledPoint(block.getPoint(next), block.getLabel(next)));
+            next++;
+            return true;
+        }
+    }
+
+    class BlockSubscription extends StreamSubscription<PointBlock> {
+
+        BlockSubscription(Flow.Subscriber<? super PointBlock> subscriber) {
+            super(subscriber);
+        }
+
+        @Override
+        boolean emit() {
+            PointBlock block = nextBlock();
+            if (block == null) {
+                return false;
+            }
+            subscriber.onNext(block);
+            return true;
+        }
+    }
+
+    /**
+     * The schedule of a cluster.
+     */
+    static class Timeline {
+
+        final int[] center;
+        final int[] radius;
+        final long appear;
+        long disappear = Long.MAX_VALUE;
+        final ArrayList<Movement> movements = new ArrayList<>();
+
+        Timeline(int[] center, int[] radius, long appear) {
+            this.center = center;
+            this.radius = radius;
+            this.appear = appear;
+        }
+
+        Timeline copy() {
+            Timeline t = new Timeline(center, radius, appear);
+            t.disappear = disappear;
+            t.movements.addAll(movements);
+            return t;
+        }
+
+        boolean isActive(long time) {
+            return time >= appear && time < disappear;
+        }
+
+        /**
+         * Writes into c and r the center and the radius at the given time.
+         */
+        void getState(long time, int[] c, int[] r) {
+            System.arraycopy(center, 0, c, 0, c.length);
+            System.arraycopy(radius, 0, r, 0, r.length);
+            for (Movement m : movements) {
+                if (time >= m.to) {
+                    System.arraycopy(m.center, 0, c, 0, c.length);
+                    System.arraycopy(m.radius, 0, r, 0, r.length);
+                } else {
+                    if (time > m.from) {
+                        double f = (double) (time - m.from) / (m.to - m.from);
+                        for (int k = 0; k < c.length; k++) {
+                            c[k] = (int) Math.round(c[k] + (m.center[k] - c[k]) * f);
+                            r[k] = (int) Math.round(r[k] + (m.radius[k] - r[k]) * f);
+                        }
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    static class Movement {
+
+        final long from;
+        final long to;
+        final int[] center;
+        final int[] radius;
+
+        Movement(long from, long to, int[] center, int[] radius) {
+            this.from = from;
+            this.to = to;
+            this.center = center;
+            this.radius = radius;
+        }
+    }
+}
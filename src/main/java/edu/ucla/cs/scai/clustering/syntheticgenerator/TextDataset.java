@@ -0,0 +1,498 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A dataset in the text format written by DatasetWriter, i.e., a .data file
+ * with the comma- or space-separated coordinates of a point per line and a
+ * _labels file with the label of every point, loaded in memory by column.
+ *
+ * Both files are mapped in memory and split into chunks of whole lines,
+ * which are parsed in parallel without creating Strings. A first pass counts
+ * the rows of every chunk, so that every chunk knows the index of its first
+ * row; a second pass parses the integers of every chunk directly into the
+ * columns, so that the labels stay aligned with the points whatever the
+ * chunks of the two files. As in ImageRenderer, empty lines are skipped. The
+ * number of coordinates is the number of values in the first row, and the
+ * two files must have the same number of rows.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class TextDataset implements PointDataset {
+
+    static final int MIN_CHUNK_SIZE = 1 << 20;
+    static final int MAX_CHUNK_SIZE = 1 << 26;
+
+    /**
+     * Chunks are copied to the heap and parsed in windows of this size,
+     * extended to the end of the last line.
+     */
+    static final int WINDOW_SIZE = 1 << 16;
+
+    final int[][] columns;
+    final int[] labels;
+
+    TextDataset(int[][] columns, int[] labels) {
+        this.columns = columns;
+        this.labels = labels;
+    }
+
+    public static TextDataset load(String fileName) throws IOException {
+        return load(fileName, fileName + "_labels");
+    }
+
+    public static TextDataset load(String fileName, String fileNameLabels) throws IOException {
+        return load(fileName, fileNameLabels, Runtime.getRuntime().availableProcessors());
+    }
+
+    public static TextDataset load(String fileName, String fileNameLabels, int threads) throws IOException {
+        ExecutorService pool = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        try {
+            Chunk[] dataChunks = split(fileName, threads);
+            Chunk[] labelChunks = split(fileNameLabels, threads);
+            int dimensionality = dataChunks.length == 0 ? 0 : dataChunks[0].countValues();
+            int rows = count(dataChunks, pool);
+            if (count(labelChunks, pool) != rows) {
+                throw new IOException("File lengths mismatch");
+            }
+            int[][] columns = new int[dimensionality][rows];
+            int[] labels = new int[rows];
+            ArrayList<Callable<Void>> tasks = new ArrayList<>();
+            for (Chunk c : dataChunks) {
+                tasks.add(() -> c.parse(columns, 0));
+            }
+            for (Chunk c : labelChunks) {
+                tasks.add(() -> c.parse(new int[][]{labels}, 0));
+            }
+            run(tasks, pool);
+            return new TextDataset(columns, labels);
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Counts the rows of the chunks and sets their first rows.
+     */
+    static int count(Chunk[] chunks, ExecutorService pool) throws IOException {
+        ArrayList<Callable<Void>> tasks = new ArrayList<>();
+        for (Chunk c : chunks) {
+            tasks.add(c::count);
+        }
+        run(tasks, pool);
+        long rows = 0;
+        for (Chunk c : chunks) {
+            c.firstRow = (int) rows;
+            rows += c.rows;
+            if (rows > Integer.MAX_VALUE - 8) {
+                throw new IOException("Too many rows to load: more than " + (Integer.MAX_VALUE - 8));
+            }
+        }
+        return (int) rows;
+    }
+
+    static void run(ArrayList<Callable<Void>> tasks, ExecutorService pool) throws IOException {
+        if (pool == null) {
+            for (Callable<Void> task : tasks) {
+                try {
+                    task.call();
+                } catch (IOException | RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new IOException(e);
+                }
+            }
+            return;
+        }
+        ArrayList<Future<Void>> futures = new ArrayList<>();
+        for (Callable<Void> task : tasks) {
+            futures.add(pool.submit(task));
+        }
+        try {
+            for (Future<Void> f : futures) {
+                f.get();
+            }
+        } catch (ExecutionException e) {
+            for (Future<Void> f : futures) {
+                f.cancel(true);
+            }
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Splits the file into chunks of about fileSize / (4 * threads) bytes,
+     * between MIN_CHUNK_SIZE and MAX_CHUNK_SIZE, each ending after a newline
+     * or at the end of the file.
+     */
+    static Chunk[] split(String fileName, int threads) throws IOException {
+        return split(fileName, threads, MAX_CHUNK_SIZE);
+    }
+
+    /**
+     * Splits the file as split(fileName, threads), into chunks of at most
+     * maxChunkSize bytes, unless a line is longer.
+     */
+    static Chunk[] split(String fileName, int threads, long maxChunkSize) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            long length = channel.size();
+            long chunkSize = Math.max(MIN_CHUNK_SIZE, Math.min(maxChunkSize, length / (4L * Math.max(1, threads))));
+            ByteBuffer probe = ByteBuffer.allocate(WINDOW_SIZE);
+            ArrayList<Chunk> chunks = new ArrayList<>();
+            long start = 0;
+            while (start < length) {
+                long end = start + chunkSize < length ? nextLine(channel, start + chunkSize - 1, probe) : length;
+                if (end - start > Integer.MAX_VALUE) {
+                    throw new IOException("Line too long in " + fileName);
+                }
+                chunks.add(new Chunk(fileName, channel.map(FileChannel.MapMode.READ_ONLY, start, end - start)));
+                start = end;
+            }
+            return chunks.toArray(new Chunk[chunks.size()]);
+        }
+    }
+
+    /**
+     * Splits the file into chunks containing the same numbers of rows as the
+     * given chunks, whose rows have been counted, e.g., to split the labels
+     * of a dataset as its points. The file is scanned once by the current
+     * thread, counting the non-empty lines as count does.
+     *
+     * @throws IOException if the file does not have the same number of rows
+     */
+    static Chunk[] splitAtRows(String fileName, Chunk[] rowChunks) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            long length = channel.size();
+            long[] cuts = new long[rowChunks.length + 1];
+            cuts[rowChunks.length] = length;
+            long rows = 0;
+            int c = 0;
+            boolean inLine = false;
+            ByteBuffer probe = ByteBuffer.allocate(MIN_CHUNK_SIZE);
+            long position = 0;
+            while (position < length) {
+                probe.clear();
+                int n = channel.read(probe, position);
+                if (n <= 0) {
+                    break;
+                }
+                for (int i = 0; i < n; i++) {
+                    //the rows of chunk c end at the first line boundary after its last row
+                    while (c < rowChunks.length && !inLine && rows == rowChunks[c].firstRow + rowChunks[c].rows) {
+                        cuts[++c] = position + i;
+                    }
+                    byte b = probe.get(i);
+                    if (b == '\n') {
+                        inLine = false;
+                    } else if (!inLine && b != '\r') {
+                        inLine = true;
+                        rows++;
+                    }
+                }
+                position += n;
+            }
+            long expected = rowChunks.length == 0 ? 0 : rowChunks[rowChunks.length - 1].firstRow + rowChunks[rowChunks.length - 1].rows;
+            if (rows != expected) {
+                throw new IOException("File lengths mismatch");
+            }
+            while (c < rowChunks.length) {
+                cuts[++c] = length;
+            }
+            Chunk[] chunks = new Chunk[rowChunks.length];
+            for (int i = 0; i < chunks.length; i++) {
+                //the first cut is the beginning of the file
+                long start = i == 0 ? 0 : cuts[i];
+                if (cuts[i + 1] - start > Integer.MAX_VALUE) {
+                    throw new IOException("Line too long in " + fileName);
+                }
+                chunks[i] = new Chunk(fileName, channel.map(FileChannel.MapMode.READ_ONLY, start, cuts[i + 1] - start));
+                chunks[i].firstRow = rowChunks[i].firstRow;
+                chunks[i].rows = rowChunks[i].rows;
+            }
+            return chunks;
+        }
+    }
+
+    /**
+     * Returns the position following the first newline at or after
+     * position, or the length of the file if there is none.
+     */
+    private static long nextLine(FileChannel channel, long position, ByteBuffer probe) throws IOException {
+        while (true) {
+            probe.clear();
+            int n = channel.read(probe, position);
+            if (n <= 0) {
+                return channel.size();
+            }
+            for (int i = 0; i < n; i++) {
+                if (probe.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += n;
+        }
+    }
+
+    /**
+     * A part of a file made of whole lines, parsed by a single thread.
+     */
+    static class Chunk {
+
+        final String fileName;
+        final MappedByteBuffer buffer;
+        int rows;
+        int firstRow;
+
+        Chunk(String fileName, MappedByteBuffer buffer) {
+            this.fileName = fileName;
+            this.buffer = buffer;
+        }
+
+        /**
+         * Copies the next lines of the chunk, starting at position, to the
+         * beginning of window.buffer, sets window.end to the end of the last
+         * whole line and writes a newline there, so that every line of the
+         * window ends with a newline; the window is grown if a line does not
+         * fit.
+         *
+         * @return the position following the copied lines
+         */
+        private int nextWindow(int position, Window window) {
+            int length = buffer.capacity();
+            int n = Math.min(window.buffer.length - 1, length - position);
+            buffer.get(position, window.buffer, 0, n);
+            int end = n;
+            if (position + n < length) {
+                while (end > 0 && window.buffer[end - 1] != '\n') {
+                    end--;
+                }
+                if (end == 0) {
+                    //a line longer than the window
+                    window.buffer = new byte[2 * window.buffer.length];
+                    return nextWindow(position, window);
+                }
+            }
+            window.buffer[end] = '\n';
+            window.end = end;
+            return position + end;
+        }
+
+        /**
+         * Counts the non-empty lines.
+         */
+        Void count() {
+            Window window = new Window();
+            int position = 0;
+            int n = 0;
+            while (position < buffer.capacity()) {
+                position = nextWindow(position, window);
+                byte[] b = window.buffer;
+                boolean inLine = false;
+                for (int i = 0; i < window.end; i++) {
+                    if (b[i] == '\n') {
+                        inLine = false;
+                    } else if (!inLine && b[i] != '\r') {
+                        inLine = true;
+                        n++;
+                    }
+                }
+            }
+            rows = n;
+            return null;
+        }
+
+        /**
+         * Returns the number of values in the first non-empty line.
+         */
+        int countValues() {
+            Window window = new Window();
+            int position = 0;
+            int values = 0;
+            while (position < buffer.capacity()) {
+                position = nextWindow(position, window);
+                byte[] b = window.buffer;
+                boolean inValue = false;
+                for (int i = 0; i < window.end; i++) {
+                    if (b[i] == '\n') {
+                        if (values > 0) {
+                            return values;
+                        }
+                        inValue = false;
+                        continue;
+                    }
+                    boolean separator = b[i] == ' ' || b[i] == ',' || b[i] == '\t' || b[i] == '\r';
+                    if (!separator && !inValue) {
+                        values++;
+                    }
+                    inValue = !separator;
+                }
+            }
+            return values;
+        }
+
+        /**
+         * Parses the rows of the chunk into the columns, writing row
+         * firstRow + i at index firstRow + i - base. The values of the
+         * columns that are null are checked but not stored.
+         */
+        Void parse(int[][] columns, int base) throws IOException {
+            Window window = new Window();
+            int position = 0;
+            int row = firstRow;
+            while (position < buffer.capacity()) {
+                position = nextWindow(position, window);
+                row = parse(window.buffer, window.end, columns, base, row, fileName);
+            }
+            return null;
+        }
+
+        /**
+         * Parses the lines in b[0, end) into the columns, starting at the
+         * given row, and returns the next row. Since b[end] is a newline, the
+         * scans of a line stop at its end without checking the bounds.
+         */
+        static int parse(byte[] b, int end, int[][] columns, int base, int row, String fileName) throws IOException {
+            int d = columns.length;
+            int i = 0;
+            while (i < end) {
+                byte c = b[i];
+                if (c == '\n' || c == '\r') {
+                    i++;
+                    continue;
+                }
+                for (int k = 0; k < d; k++) {
+                    while ((c = b[i]) == ' ' || c == ',' || c == '\t') {
+                        i++;
+                    }
+                    boolean negative = c == '-';
+                    if (negative) {
+                        i++;
+                    }
+                    int start = i;
+                    long v = 0;
+                    int digit;
+                    while ((digit = b[i] - '0') >= 0 && digit <= 9) {
+                        v = v * 10 + digit;
+                        i++;
+                    }
+                    if (negative) {
+                        v = -v;
+                    }
+                    if (i == start || i - start > 10 || v > Integer.MAX_VALUE || v < Integer.MIN_VALUE) {
+                        throw new IOException("Invalid value " + (k + 1) + " in row " + (row + 1) + " of " + fileName);
+                    }
+                    int[] column = columns[k];
+                    if (column != null) {
+                        column[row - base] = (int) v;
+                    }
+                }
+                while ((c = b[i]) == ' ' || c == ',' || c == '\t' || c == '\r') {
+                    i++;
+                }
+                if (c != '\n') {
+                    throw new IOException("Too many values in row " + (row + 1) + " of " + fileName + ", expected " + d);
+                }
+                i++;
+                row++;
+            }
+            return row;
+        }
+    }
+
+    static class Window {
+
+        byte[] buffer = new byte[WINDOW_SIZE + 1];
+        int end;
+    }
+
+    @Override
+    public int getDimensionality() {
+        return columns.length;
+    }
+
+    @Override
+    public long size() {
+        return labels.length;
+    }
+
+    @Override
+    public int getCoord(long i, int k) {
+        return columns[k][(int) i];
+    }
+
+    @Override
+    public int getLabel(long i) {
+        return labels[(int) i];
+    }
+
+    @Override
+    public void getPoint(long i, int[] p, int offset) {
+        for (int k = 0; k < columns.length; k++) {
+            p[offset + k] = columns[k][(int) i];
+        }
+    }
+
+    /**
+     * Returns the k-th coordinate (0-based) of all the points.
+     */
+    public int[] getColumn(int k) {
+        return columns[k];
+    }
+
+    public int[] getLabels() {
+        return labels;
+    }
+
+    /**
+     * Returns the smallest range containing all the points.
+     */
+    public Range getBoundingBox() {
+        int d = columns.length;
+        int[] inf = new int[d];
+        int[] sup = new int[d];
+        for (int k = 0; k < d; k++) {
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            for (int v : columns[k]) {
+                min = Math.min(min, v);
+                max = Math.max(max, v);
+            }
+            inf[k] = min;
+            sup[k] = max;
+        }
+        return new Range(inf, sup);
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.Checksum;
+
+/**
+ * Writes comma-separated integers in the same text format produced by
+ * PrintWriter, formatting them directly into a reusable byte buffer which is
+ * written to a FileChannel in large blocks.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class TextPointWriter implements Closeable {
+
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+    static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    static final int MAX_INT_LENGTH = 11;
+
+    static final byte[] MIN_VALUE = Integer.toString(Integer.MIN_VALUE).getBytes(StandardCharsets.US_ASCII);
+
+    final FileChannel channel;
+    final byte[] buffer;
+    final ByteBuffer byteBuffer;
+    int position;
+    long bytesWritten;
+    Checksum checksum;
+
+    public TextPointWriter(String fileName) throws IOException {
+        this(fileName, DEFAULT_BUFFER_SIZE);
+    }
+
+    public TextPointWriter(String fileName, int bufferSize) throws IOException {
+        channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        buffer = new byte[Math.max(bufferSize, 2 * (MAX_INT_LENGTH + LINE_SEPARATOR.length))];
+        byteBuffer = ByteBuffer.wrap(buffer);
+    }
+
+    /**
+     * Writes the coordinates p[offset], ..., p[offset + dimensionality - 1]
+     * separated by commas, followed by a line separator.
+     */
+    public void writePoint(int[] p, int offset, int dimensionality) throws IOException {
+        for (int k = 0; k < dimensionality - 1; k++) {
+            writeInt(p[offset + k]);
+            writeByte(',');
+        }
+        writeInt(p[offset + dimensionality - 1]);
+        newLine();
+    }
+
+    public void writePoint(int[] p) throws IOException {
+        writePoint(p, 0, p.length);
+    }
+
+    public void writeLabel(int label) throws IOException {
+        writeInt(label);
+        newLine();
+    }
+
+    public void writeInt(int v) throws IOException {
+        if (buffer.length - position < MAX_INT_LENGTH) {
+            flushBuffer();
+        }
+        if (v == Integer.MIN_VALUE) {
+            System.arraycopy(MIN_VALUE, 0, buffer, position, MIN_VALUE.length);
+            position += MIN_VALUE.length;
+            return;
+        }
+        if (v < 0) {
+            buffer[position++] = '-';
+            v = -v;
+        }
+        int end = position + digits(v);
+        int i = end;
+        do {
+            int q = v / 10;
+            buffer[--i] = (byte) ('0' + (v - q * 10));
+            v = q;
+        } while (v != 0);
+        position = end;
+    }
+
+    public void writeByte(char c) throws IOException {
+        if (position == buffer.length) {
+            flushBuffer();
+        }
+        buffer[position++] = (byte) c;
+    }
+
+    public void newLine() throws IOException {
+        if (buffer.length - position < LINE_SEPARATOR.length) {
+            flushBuffer();
+        }
+        for (byte b : LINE_SEPARATOR) {
+            buffer[position++] = b;
+        }
+    }
+
+    /**
+     * Returns the number of bytes written so far, including those still in
+     * the buffer.
+     */
+    public long getBytesWritten() {
+        return bytesWritten + position;
+    }
+
+    /**
+     * Sets a checksum updated with all the bytes written from now on.
+     */
+    public void setChecksum(Checksum checksum) {
+        this.checksum = checksum;
+    }
+
+    static int digits(int v) {
+        int d = 1;
+        while (v >= 10) {
+            v /= 10;
+            d++;
+        }
+        return d;
+    }
+
+    void flushBuffer() throws IOException {
+        if (checksum != null) {
+            checksum.update(buffer, 0, position);
+        }
+        byteBuffer.clear();
+        byteBuffer.limit(position);
+        while (byteBuffer.hasRemaining()) {
+            channel.write(byteBuffer);
+        }
+        bytesWritten += position;
+        position = 0;
+    }
+
+    public void flush() throws IOException {
+        flushBuffer();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,576 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+import static edu.ucla.cs.scai.clustering.syntheticgenerator.DistanceKernel.relativeDistance;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Samples the points of a cluster from the same distribution as the
+ * rejection sampler, i.e., from the Gaussian with standard deviation radius/4
+ * on every dimension, with the coordinates truncated to integers, conditioned
+ * on the truncated point lying in the domain and in the ellipsoid, but with a
+ * number of attempts per point that does not grow exponentially with the
+ * dimensionality.
+ *
+ * Since the coordinates of the Gaussian are independent and they are
+ * truncated one by one, the truncated coordinates are independent too: the
+ * probability that the k-th coordinate is v is the Gaussian mass of the
+ * values truncated to v, i.e., [v, v + 1), (v - 1, v] or (-1, 1) if v is
+ * positive, negative or zero. The points of the cluster are thus distributed
+ * as these coordinates restricted to the domain and to |v_k - center_k|
+ * &lt;= radius_k, which are necessary conditions, conditioned on q(v) =
+ * sum_k q_k(v_k) &lt;= 1, where q_k(v_k) = ((v_k - center_k) / radius_k)^2.
+ * The coordinates are drawn from alias tables of the tilted distribution,
+ * where the probability of v_k is multiplied by exp(-lambda q_k(v_k)), and a
+ * candidate in the ellipsoid is accepted with probability exp(lambda (q(v) -
+ * 1)), which is proportional to the ratio between the probabilities of the
+ * candidate in the original and in the tilted distribution; hence the
+ * accepted points have exactly the distribution of the rejection sampler.
+ * lambda is chosen so that the tilted mean of q is 1, which maximizes the
+ * acceptance rate; the latter is then about 1 / sqrt(pi d), whereas P(q
+ * &lt;= 1) decreases exponentially with d. The domain is enforced by the
+ * tables, thus there are no domain rejections.
+ *
+ * If the tables would have more than MAX_TABLE_SIZE entries, the point is
+ * drawn as center + devStandard * z, where z is a uniform direction times a
+ * radius whose square has the chi-square distribution with d degrees of
+ * freedom truncated to [0, R^2], sampled by inverting its cumulative
+ * distribution function. Since every coordinate moves by less than 1 when it
+ * is truncated, the standardized points truncated into the ellipsoid lie in
+ * the ball of radius R = 4 (1 + sqrt(sum_k 1 / radius_k^2)); thus z is drawn
+ * from the Gaussian conditioned on a superset of the points that can be
+ * accepted, and the truncated points outside the domain or the ellipsoid are
+ * rejected as by the rejection sampler, which again gives the same
+ * distribution. This sampler is also used by CovarianceSampler, with the
+ * ball enclosing its ellipsoid. Its acceptance rate is never lower than that
+ * of the rejection sampler, but it decreases with d unless the radii are
+ * much larger than sqrt(d).
+ *
+ * Clusters with a zero radius, whose coordinate never moves, are always
+ * sampled by rejection, see GenerationPlan.getTruncatedSampler.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class TruncatedEllipsoidSampler {
+
+    static final double MAX_SQUARED_RADIUS = 16;
+
+    /**
+     * The maximum number of values of the alias tables of a cluster, i.e.,
+     * of sum_k (2 radius_k + 1), about 48 MB.
+     */
+    static final int MAX_TABLE_SIZE = 1 << 22;
+
+    static final int DOMAIN = 0;
+    static final int ELLIPSE = 1;
+
+    //5-point Gauss-Legendre quadrature on [-1, 1]
+    static final double[] GAUSS_NODES = {0, -0.5384693101056831, 0.5384693101056831, -0.9061798459386640, 0.9061798459386640};
+    static final double[] GAUSS_WEIGHTS = {0.5688888888888889, 0.4786286704993665, 0.4786286704993665, 0.2369268850561891, 0.2369268850561891};
+
+    final int[] center;
+    final int[] radius;
+    final double[] devStandard;
+    final Range domain;
+    final double a;
+    final double xMax;
+    final double fMax;
+    final double naiveAcceptance;
+    final AtomicLong accepted = new AtomicLong();
+    final AtomicLong domainRejections = new AtomicLong();
+    final AtomicLong ellipseRejections = new AtomicLong();
+    private volatile Tables tables;
+
+    public TruncatedEllipsoidSampler(int[] center, int[] radius, Range domain) {
+        this(center, radius, domain, roundingBound(radius));
+    }
+
+    /**
+     * Creates a sampler whose fallback draws z from the ball of radius 4 (1 +
+     * roundingBound), where roundingBound is an upper bound on the increase of
+     * the relative distance, measured as sqrt(q), caused by the truncation of
+     * the coordinates.
+     */
+    TruncatedEllipsoidSampler(int[] center, int[] radius, Range domain, double roundingBound) {
+        this.center = center;
+        this.radius = radius;
+        this.domain = domain;
+        devStandard = new double[center.length];
+        for (int k = 0; k < center.length; k++) {
+            devStandard[k] = radius[k] / 4.0;
+        }
+        a = center.length / 2.0;
+        xMax = MAX_SQUARED_RADIUS * (1 + roundingBound) * (1 + roundingBound) / 2;
+        fMax = f(xMax);
+        naiveAcceptance = Math.exp(f(MAX_SQUARED_RADIUS / 2) - logGamma(a + 1));
+    }
+
+    /**
+     * Returns sqrt(sum_k 1 / radius_k^2), ignoring the zero radii.
+     */
+    static double roundingBound(int[] radius) {
+        double s = 0;
+        for (int r : radius) {
+            if (r != 0) {
+                s += 1.0 / ((double) r * r);
+            }
+        }
+        return Math.sqrt(s);
+    }
+
+    /**
+     * Returns the probability that a point drawn from the untruncated
+     * Gaussian falls inside the ellipsoid, i.e., the acceptance rate of the
+     * rejection sampler (ignoring the domain and the integer truncation).
+     */
+    public double getNaiveAcceptance() {
+        return naiveAcceptance;
+    }
+
+    /**
+     * Returns the tilting parameter lambda, or NaN if the alias tables would
+     * be too large and the points are drawn from the enclosing ball.
+     */
+    public double getLambda() {
+        return getTables().lambda;
+    }
+
+    /**
+     * Writes a new point of the cluster into c starting at offset, using g as
+     * a scratch array.
+     * The residual rejections are counted in rejections[DOMAIN] and
+     * rejections[ELLIPSE]; they are meant to be reported in bulk through
+     * addCounts, to avoid contention between threads.
+     */
+    void sample(GaussianSource rand, int[] c, int offset, double[] g, long[] rejections) {
+        Tables t = getTables();
+        if (t.prob == null) {
+            sampleBall(rand, c, offset, g, rejections);
+            return;
+        }
+        candidate:
+        while (true) {
+            double q = 0;
+            for (int k = 0; k < center.length; k++) {
+                int v = t.next(k, rand.nextDouble());
+                c[offset + k] = v;
+                if (radius[k] != 0) {
+                    double u = (double) (v - center[k]) / radius[k];
+                    q += u * u;
+                    if (q > 1 + 1e-9) {
+                        rejections[ELLIPSE]++;
+                        continue candidate;
+                    }
+                }
+            }
+            //the ellipsoid is tested exactly as by the rejection sampler, q is only used for the weight
+            if (relativeDistance(center, radius, c, offset) > 1
+                    || t.lambda > 0 && rand.nextDouble() >= Math.exp(t.lambda * (Math.min(q, 1) - 1))) {
+                rejections[ELLIPSE]++;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Draws the points from the Gaussian truncated to the ball of radius
+     * sqrt(2 xMax) enclosing the ellipsoid, rejecting the truncated points
+     * outside the domain or the ellipsoid.
+     */
+    void sampleBall(GaussianSource rand, int[] c, int offset, double[] g, long[] rejections) {
+        while (true) {
+            double norm2 = 0;
+            for (int k = 0; k < g.length; k++) {
+                g[k] = rand.nextGaussian();
+                norm2 += g[k] * g[k];
+            }
+            double scale = norm2 == 0 ? 0 : Math.sqrt(2 * inverseCdf(rand.nextDouble()) / norm2);
+            boolean inDomain = true;
+            for (int k = 0; k < g.length; k++) {
+                int v = (int) (center[k] + g[k] * scale * devStandard[k]);
+                c[offset + k] = v;
+                if (v < domain.getInfCoord(k + 1) || v > domain.getSupCoord(k + 1)) {
+                    inDomain = false;
+                    break;
+                }
+            }
+            if (!inDomain) {
+                rejections[DOMAIN]++;
+            } else if (relativeDistance(center, radius, c, offset) > 1) {
+                rejections[ELLIPSE]++;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private Tables getTables() {
+        Tables t = tables;
+        if (t == null) {
+            synchronized (this) {
+                t = tables;
+                if (t == null) {
+                    t = new Tables(this);
+                    tables = t;
+                }
+            }
+        }
+        return t;
+    }
+
+    void addCounts(long acceptedPoints, long[] rejections) {
+        accepted.addAndGet(acceptedPoints);
+        domainRejections.addAndGet(rejections[DOMAIN]);
+        ellipseRejections.addAndGet(rejections[ELLIPSE]);
+    }
+
+    public long getAccepted() {
+        return accepted.get();
+    }
+
+    public long getDomainRejections() {
+        return domainRejections.get();
+    }
+
+    public long getEllipseRejections() {
+        return ellipseRejections.get();
+    }
+
+    /**
+     * Returns the expected number of points that the rejection sampler would
+     * have drawn outside the ellipsoid to generate the accepted points, to be
+     * compared with the actual rejections of this sampler, which can be more
+     * when the ellipsoid is small or the enclosing ball is used.
+     */
+    public double getExpectedRejections() {
+        return accepted.get() * (1 / naiveAcceptance - 1);
+    }
+
+    /**
+     * Returns x such that P(a, x) = u * P(a, xMax), where P is the
+     * regularized lower incomplete gamma function. Then 2x has the chi-square
+     * distribution with 2a degrees of freedom truncated to [0, 2 xMax].
+     */
+    double inverseCdf(double u) {
+        if (u == 0) {
+            return 0;
+        }
+        double t = Math.log(u) + fMax;
+        //g(y) = f(e^y) is increasing and concave, and g(y) <= a y,
+        //thus Newton's method converges from the left starting from t / a
+        double lo = t / a;
+        double hi = Math.log(xMax);
+        double y = lo;
+        for (int iter = 0; iter < 100; iter++) {
+            double x = Math.exp(y);
+            double logS = logSeries(x);
+            double diff = a * y - x + logS - t;
+            if (Math.abs(diff) < 1e-12) {
+                break;
+            }
+            if (diff < 0) {
+                lo = y;
+            } else {
+                hi = y;
+            }
+            double next = y - diff * Math.exp(logS) / a;
+            if (!(next > lo && next < hi)) {
+                next = (lo + hi) / 2;
+            }
+            if (next == y) {
+                break;
+            }
+            y = next;
+        }
+        return Math.min(Math.exp(y), xMax);
+    }
+
+    /**
+     * Returns log(P(a, x) * Gamma(a + 1)).
+     */
+    double f(double x) {
+        return a * Math.log(x) - x + logSeries(x);
+    }
+
+    /**
+     * Returns the logarithm of sum_n x^n / ((a + 1) ... (a + n)).
+     */
+    double logSeries(double x) {
+        double term = 1;
+        double sum = 1;
+        for (int n = 1; n < 10000; n++) {
+            term *= x / (a + n);
+            sum += term;
+            if (term < sum * 1e-17) {
+                break;
+            }
+        }
+        return Math.log(sum);
+    }
+
+    static final double[] LANCZOS = {0.99999999999980993, 676.5203681218851, -1259.1392167224028,
+        771.32342877765313, -176.61502916214059, 12.507343278686905,
+        -0.13857109526572012, 9.9843695780195716e-6, 1.5056327351493116e-7};
+
+    /**
+     * Lanczos approximation of the logarithm of the gamma function, for
+     * x &gt;= 0.5.
+     */
+    static double logGamma(double x) {
+        x -= 1;
+        double s = LANCZOS[0];
+        for (int i = 1; i < LANCZOS.length; i++) {
+            s += LANCZOS[i] / (x + i);
+        }
+        double t = x + LANCZOS.length - 1.5;
+        return 0.5 * Math.log(2 * Math.PI) + (x + 0.5) * Math.log(t) - t + Math.log(s);
+    }
+
+    /**
+     * Returns the logarithm of the integral of exp(-t^2 / 2) over [lo, hi],
+     * computed by Gauss-Legendre quadrature on pieces of width at most 1/8.
+     */
+    static double logGaussianMass(double lo, double hi) {
+        //the integrand is scaled by its maximum, exp(-m^2 / 2)
+        double m = lo > 0 ? lo : hi < 0 ? -hi : 0;
+        int pieces = (int) Math.ceil((hi - lo) * 8);
+        double h = (hi - lo) / pieces;
+        double s = 0;
+        for (int i = 0; i < pieces; i++) {
+            double mid = lo + (i + 0.5) * h;
+            for (int j = 0; j < GAUSS_NODES.length; j++) {
+                double t = mid + GAUSS_NODES[j] * h / 2;
+                s += GAUSS_WEIGHTS[j] * Math.exp((m - t) * (m + t) / 2);
+            }
+        }
+        return Math.log(s * h / 2) - m * m / 2;
+    }
+
+    /**
+     * The alias tables of the tilted distributions of the coordinates, where
+     * the values of the k-th coordinate are low[k] + i, for i in [0,
+     * size[k]), stored starting at start[k]. If the tables would have more
+     * than MAX_TABLE_SIZE entries, prob is null and lambda is NaN.
+     */
+    static final class Tables {
+
+        final int[] low;
+        final int[] size;
+        final int[] start;
+        final double[] prob;
+        final int[] alias;
+        final double lambda;
+
+        Tables(TruncatedEllipsoidSampler sampler) {
+            int d = sampler.center.length;
+            low = new int[d];
+            size = new int[d];
+            start = new int[d];
+            long total = 0;
+            for (int k = 0; k < d; k++) {
+                long lo = Math.max(sampler.domain.getInfCoord(k + 1), (long) sampler.center[k] - sampler.radius[k]);
+                long hi = Math.min(sampler.domain.getSupCoord(k + 1), (long) sampler.center[k] + sampler.radius[k]);
+                if (lo > hi) {
+                    throw new IllegalArgumentException("The ellipsoid of the cluster centered at " + Arrays.toString(sampler.center) + " does not intersect the domain");
+                }
+                low[k] = (int) lo;
+                start[k] = (int) Math.min(total, Integer.MAX_VALUE);
+                total += hi - lo + 1;
+                size[k] = (int) Math.min(hi - lo + 1, Integer.MAX_VALUE);
+            }
+            if (total > MAX_TABLE_SIZE) {
+                prob = null;
+                alias = null;
+                lambda = Double.NaN;
+                return;
+            }
+            double[] logMass = new double[(int) total];
+            double[] q = new double[(int) total];
+            double minQ = 0;
+            for (int k = 0; k < d; k++) {
+                double dev = sampler.devStandard[k];
+                double kMinQ = Double.POSITIVE_INFINITY;
+                for (int i = 0; i < size[k]; i++) {
+                    int v = low[k] + i;
+                    int j = start[k] + i;
+                    if (sampler.radius[k] == 0) {
+                        logMass[j] = 0;
+                        q[j] = 0;
+                    } else {
+                        //the values truncated to v
+                        double lo = v > 0 ? v : v < 0 ? v - 1 : -1;
+                        double hi = v > 0 ? v + 1 : v < 0 ? v : 1;
+                        logMass[j] = logGaussianMass((lo - sampler.center[k]) / dev, (hi - sampler.center[k]) / dev);
+                        double u = (double) (v - sampler.center[k]) / sampler.radius[k];
+                        q[j] = u * u;
+                    }
+                    kMinQ = Math.min(kMinQ, q[j]);
+                }
+                minQ += kMinQ;
+            }
+            if (minQ > 1) {
+                throw new IllegalArgumentException("The ellipsoid of the cluster centered at " + Arrays.toString(sampler.center) + " does not intersect the domain");
+            }
+            lambda = solveLambda(logMass, q);
+            prob = new double[(int) total];
+            alias = new int[(int) total];
+            double[] p = new double[(int) total];
+            for (int k = 0; k < d; k++) {
+                tilt(logMass, q, lambda, start[k], size[k], p, null);
+                buildAlias(p, start[k], size[k], prob, alias);
+            }
+        }
+
+        /**
+         * Returns the value of the k-th coordinate selected by a uniform
+         * value u in [0, 1).
+         */
+        int next(int k, double u) {
+            double x = u * size[k];
+            int i = (int) x;
+            int j = start[k] + i;
+            if (x - i >= prob[j]) {
+                i = alias[j];
+            }
+            return low[k] + i;
+        }
+
+        /**
+         * Returns the smallest lambda &gt;= 0 such that the tilted mean of q
+         * is at most 1, approximately; the exactness of the sampler does
+         * not depend on lambda, only its acceptance rate does.
+         */
+        double solveLambda(double[] logMass, double[] q) {
+            double[] moments = new double[2];
+            moments(logMass, q, 0, moments);
+            if (moments[0] <= 1) {
+                return 0;
+            }
+            //g(lambda) = lambda + sum_k log Z_k(lambda) is convex, g' = 1 - mean and g'' = variance
+            double lo = 0;
+            double hi = Double.POSITIVE_INFINITY;
+            double lambda = 0;
+            for (int iter = 0; iter < 100; iter++) {
+                moments(logMass, q, lambda, moments);
+                double mean = moments[0];
+                if (Math.abs(mean - 1) < 1e-6) {
+                    break;
+                }
+                if (mean > 1) {
+                    lo = lambda;
+                } else {
+                    hi = lambda;
+                }
+                double next = moments[1] > 0 ? lambda + (mean - 1) / moments[1] : Double.NaN;
+                if (!(next > lo && next < hi)) {
+                    next = hi == Double.POSITIVE_INFINITY ? 2 * lo + 1 : (lo + hi) / 2;
+                }
+                if (next == lambda) {
+                    break;
+                }
+                lambda = next;
+            }
+            return lambda;
+        }
+
+        /**
+         * Writes into moments the sum over the coordinates of the mean and of
+         * the variance of q_k in the distribution tilted by lambda.
+         */
+        void moments(double[] logMass, double[] q, double lambda, double[] moments) {
+            double[] p = new double[logMass.length];
+            moments[0] = 0;
+            moments[1] = 0;
+            for (int k = 0; k < start.length; k++) {
+                tilt(logMass, q, lambda, start[k], size[k], p, moments);
+            }
+        }
+
+        /**
+         * Writes into p the probabilities of the values of a coordinate,
+         * tilted by lambda, and adds their mean and variance of q to moments,
+         * if not null.
+         */
+        static void tilt(double[] logMass, double[] q, double lambda, int from, int n, double[] p, double[] moments) {
+            double max = Double.NEGATIVE_INFINITY;
+            for (int j = from; j < from + n; j++) {
+                max = Math.max(max, logMass[j] - lambda * q[j]);
+            }
+            double sum = 0;
+            for (int j = from; j < from + n; j++) {
+                p[j] = Math.exp(logMass[j] - lambda * q[j] - max);
+                sum += p[j];
+            }
+            double mean = 0;
+            double square = 0;
+            for (int j = from; j < from + n; j++) {
+                p[j] /= sum;
+                mean += p[j] * q[j];
+                square += p[j] * q[j] * q[j];
+            }
+            if (moments != null) {
+                moments[0] += mean;
+                moments[1] += Math.max(0, square - mean * mean);
+            }
+        }
+
+        /**
+         * Builds the alias table of the n probabilities stored in p starting
+         * at from, by Vose's method.
+         */
+        static void buildAlias(double[] p, int from, int n, double[] prob, int[] alias) {
+            int[] small = new int[n];
+            int[] large = new int[n];
+            int ns = 0;
+            int nl = 0;
+            double[] scaled = new double[n];
+            for (int i = 0; i < n; i++) {
+                scaled[i] = p[from + i] * n;
+                if (scaled[i] < 1) {
+                    small[ns++] = i;
+                } else {
+                    large[nl++] = i;
+                }
+            }
+            while (ns > 0 && nl > 0) {
+                int s = small[--ns];
+                int l = large[--nl];
+                prob[from + s] = scaled[s];
+                alias[from + s] = l;
+                scaled[l] = (scaled[l] + scaled[s]) - 1;
+                if (scaled[l] < 1) {
+                    small[ns++] = l;
+                } else {
+                    large[nl++] = l;
+                }
+            }
+            //the remaining columns are full, up to rounding
+            while (nl > 0) {
+                int l = large[--nl];
+                prob[from + l] = 1;
+                alias[from + l] = l;
+            }
+            while (ns > 0) {
+                int s = small[--ns];
+                prob[from + s] = 1;
+                alias[from + s] = s;
+            }
+        }
+    }
+}
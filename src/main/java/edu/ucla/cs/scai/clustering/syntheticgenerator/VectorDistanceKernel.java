@@ -0,0 +1,122 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The DistanceKernel computed with 256-bit vectors of 4 doubles, using two
+ * accumulators, whose lanes are the partial sums 0 to 3 and 4 to 7 of the
+ * scalar kernel. Lanes are combined explicitly rather than with
+ * reduceLanes, whose order is unspecified, so that the results are the same
+ * as those of the scalar kernel. Products of matrices and batches of vectors
+ * keep the sums of 16 vectors in four accumulators, each lane summing a
+ * coordinate of a vector in the same order as the scalar kernel.
+ *
+ * This class is only loaded by DistanceKernel if the jdk.incubator.vector
+ * module is available.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+class VectorDistanceKernel extends DistanceKernel {
+
+    static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_256;
+
+    /**
+     * Returns true if the hardware supports vectors of at least 4 doubles;
+     * otherwise the vectors would be emulated, more slowly than the scalar
+     * kernel.
+     */
+    @Override
+    boolean isVectorized() {
+        return DoubleVector.SPECIES_PREFERRED.length() >= SPECIES.length();
+    }
+
+    @Override
+    double distance(double[] centers, double[] inverseRadii, int offset, double[] p, int d) {
+        DoubleVector acc0 = DoubleVector.zero(SPECIES);
+        DoubleVector acc1 = DoubleVector.zero(SPECIES);
+        int k = 0;
+        for (; k + 8 <= d; k += 8) {
+            DoubleVector t0 = DoubleVector.fromArray(SPECIES, centers, offset + k)
+                    .sub(DoubleVector.fromArray(SPECIES, p, k))
+                    .mul(DoubleVector.fromArray(SPECIES, inverseRadii, offset + k));
+            DoubleVector t1 = DoubleVector.fromArray(SPECIES, centers, offset + k + 4)
+                    .sub(DoubleVector.fromArray(SPECIES, p, k + 4))
+                    .mul(DoubleVector.fromArray(SPECIES, inverseRadii, offset + k + 4));
+            acc0 = acc0.add(t0.mul(t0));
+            acc1 = acc1.add(t1.mul(t1));
+        }
+        if (k + 4 <= d) {
+            DoubleVector t0 = DoubleVector.fromArray(SPECIES, centers, offset + k)
+                    .sub(DoubleVector.fromArray(SPECIES, p, k))
+                    .mul(DoubleVector.fromArray(SPECIES, inverseRadii, offset + k));
+            acc0 = acc0.add(t0.mul(t0));
+            k += 4;
+        }
+        double s = combine(acc0.add(acc1));
+        for (; k < d; k++) {
+            double t = (centers[offset + k] - p[k]) * inverseRadii[offset + k];
+            s += t * t;
+        }
+        return s;
+    }
+
+    @Override
+    void multiply(double[] m, int d, double[] in, double[] out, int stride, int rows) {
+        for (int j = 0; j < d; j++) {
+            int o = j * stride;
+            int r = 0;
+            for (; r + 16 <= rows; r += 16) {
+                DoubleVector acc0 = DoubleVector.zero(SPECIES);
+                DoubleVector acc1 = acc0;
+                DoubleVector acc2 = acc0;
+                DoubleVector acc3 = acc0;
+                for (int k = 0; k <= j; k++) {
+                    double v = m[k * d + j];
+                    int i = k * stride + r;
+                    acc0 = acc0.add(DoubleVector.fromArray(SPECIES, in, i).mul(v));
+                    acc1 = acc1.add(DoubleVector.fromArray(SPECIES, in, i + 4).mul(v));
+                    acc2 = acc2.add(DoubleVector.fromArray(SPECIES, in, i + 8).mul(v));
+                    acc3 = acc3.add(DoubleVector.fromArray(SPECIES, in, i + 12).mul(v));
+                }
+                acc0.intoArray(out, o + r);
+                acc1.intoArray(out, o + r + 4);
+                acc2.intoArray(out, o + r + 8);
+                acc3.intoArray(out, o + r + 12);
+            }
+            for (; r + 4 <= rows; r += 4) {
+                DoubleVector acc = DoubleVector.zero(SPECIES);
+                for (int k = 0; k <= j; k++) {
+                    acc = acc.add(DoubleVector.fromArray(SPECIES, in, k * stride + r).mul(m[k * d + j]));
+                }
+                acc.intoArray(out, o + r);
+            }
+            for (; r < rows; r++) {
+                double s = 0;
+                for (int k = 0; k <= j; k++) {
+                    s += m[k * d + j] * in[k * stride + r];
+                }
+                out[o + r] = s;
+            }
+        }
+    }
+
+    private static double combine(DoubleVector v) {
+        return (v.lane(0) + v.lane(1)) + (v.lane(2) + v.lane(3));
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+/**
+ * The xoshiro256++ generator (Blackman and Vigna, "Scrambled linear
+ * pseudorandom number generators", 2021), with Gaussian values drawn by the
+ * Ziggurat method. Unlike java.util.Random, whose seed is updated atomically
+ * at every call, the state is in plain fields, and a Gaussian value usually
+ * takes a single long, without logarithms or square roots.
+ *
+ * The state is initialized from the seed with SplitMix64.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class Xoshiro256Sampler extends RandomSampler {
+
+    long s0;
+    long s1;
+    long s2;
+    long s3;
+
+    public Xoshiro256Sampler(long seed) {
+        s0 = GenerationPlan.mix64(seed + 0x9E3779B97F4A7C15L);
+        s1 = GenerationPlan.mix64(seed + 2 * 0x9E3779B97F4A7C15L);
+        s2 = GenerationPlan.mix64(seed + 3 * 0x9E3779B97F4A7C15L);
+        s3 = GenerationPlan.mix64(seed + 4 * 0x9E3779B97F4A7C15L);
+    }
+
+    @Override
+    public long nextLong() {
+        long result = Long.rotateLeft(s0 + s3, 23) + s0;
+        long t = s1 << 17;
+        s2 ^= s0;
+        s3 ^= s1;
+        s1 ^= s2;
+        s0 ^= s3;
+        s2 ^= t;
+        s3 = Long.rotateLeft(s3, 45);
+        return result;
+    }
+
+    /**
+     * Returns a uniformly distributed value in [0, 1), with 53 random bits.
+     */
+    @Override
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Returns a uniformly distributed value in [0, bound), without bias
+     * (Lemire, "Fast random integer generation in an interval", 2019).
+     */
+    @Override
+    public int nextInt(int bound) {
+        long m = (nextLong() >>> 32) * bound;
+        if ((m & 0xFFFFFFFFL) < bound) {
+            long threshold = (0x100000000L - bound) % bound;
+            while ((m & 0xFFFFFFFFL) < threshold) {
+                m = (nextLong() >>> 32) * bound;
+            }
+        }
+        return (int) (m >>> 32);
+    }
+
+    @Override
+    public double nextGaussian() {
+        return Ziggurat.nextGaussian(this);
+    }
+}
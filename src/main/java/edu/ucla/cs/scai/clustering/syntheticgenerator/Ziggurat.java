@@ -0,0 +1,109 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+/**
+ * The Ziggurat method for the standard normal distribution (Marsaglia and
+ * Tsang, "The Ziggurat method for generating random variables", 2000), with
+ * 256 layers of equal area.
+ *
+ * The positive half of the density f(x) = exp(-x^2 / 2) is covered by 255
+ * rectangles and a base strip made of a rectangle and the tail beyond R. A
+ * value is drawn from a random layer i with a single long: 8 bits select
+ * the layer and 53 bits give x = u * X[i], with u uniform in [-1, 1). If
+ * |x| < X[i + 1] the point is under the density whatever its height, which
+ * happens about 99% of the times; otherwise a height is drawn and compared
+ * with f(x), or, for the base strip, x is drawn from the tail. StrictMath is
+ * used for the tables and for the rare slow paths, so that the values do
+ * not depend on the platform.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+class Ziggurat {
+
+    static final int LAYERS = 256;
+
+    /**
+     * Start of the tail.
+     */
+    static final double R = 3.6541528853610088;
+
+    /**
+     * Area of every layer.
+     */
+    static final double V = 4.92867323399e-3;
+
+    /**
+     * X[i] is the width of layer i, decreasing from X[0] = V / f(R), the
+     * width of the rectangle with the same area as the base strip, to
+     * X[LAYERS] = 0; X[1] = R.
+     */
+    static final double[] X = new double[LAYERS + 1];
+
+    /**
+     * F[i] = f(X[i]).
+     */
+    static final double[] F = new double[LAYERS + 1];
+
+    static {
+        X[0] = V / StrictMath.exp(-0.5 * R * R);
+        X[1] = R;
+        for (int i = 1; i < LAYERS - 1; i++) {
+            X[i + 1] = StrictMath.sqrt(-2 * StrictMath.log(V / X[i] + StrictMath.exp(-0.5 * X[i] * X[i])));
+        }
+        X[LAYERS] = 0;
+        for (int i = 0; i <= LAYERS; i++) {
+            F[i] = StrictMath.exp(-0.5 * X[i] * X[i]);
+        }
+    }
+
+    private Ziggurat() {
+    }
+
+    /**
+     * Returns a normally distributed value with mean 0 and standard
+     * deviation 1, drawn from the uniform values of rand.
+     */
+    static double nextGaussian(RandomSampler rand) {
+        while (true) {
+            long bits = rand.nextLong();
+            int i = (int) bits & (LAYERS - 1);
+            double x = ((bits >>> 11) * 0x1.0p-52 - 1) * X[i];
+            if (Math.abs(x) < X[i + 1]) {
+                return x;
+            }
+            if (i == 0) {
+                return tail(rand, x < 0);
+            }
+            if (F[i] + (F[i + 1] - F[i]) * rand.nextDouble() < StrictMath.exp(-0.5 * x * x)) {
+                return x;
+            }
+        }
+    }
+
+    /**
+     * Draws a value beyond R (Marsaglia, "Generating a variable from the tail
+     * of the normal distribution", 1964).
+     */
+    private static double tail(RandomSampler rand, boolean negative) {
+        double x, y;
+        do {
+            x = -StrictMath.log(1 - rand.nextDouble()) / R;
+            y = -StrictMath.log(1 - rand.nextDouble());
+        } while (y + y < x * x);
+        return negative ? -(R + x) : R + x;
+    }
+}
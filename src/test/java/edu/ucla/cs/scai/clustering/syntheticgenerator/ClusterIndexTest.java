@@ -0,0 +1,192 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that the nearest and containing clusters found by the kd-tree are
+ * those found by a linear scan, with the same distances, including ties and
+ * clusters at infinite or undefined distance.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+class ClusterIndexTest {
+
+    @Test
+    void sameAsLinearScan() {
+        Random rand = new Random(1);
+        for (int d : new int[]{1, 2, 5, 16, 21}) {
+            for (int nClusters : new int[]{0, 1, 8, 9, 200}) {
+                int[][] centers = new int[nClusters][d];
+                int[][] radii = new int[nClusters][d];
+                for (int i = 0; i < nClusters; i++) {
+                    for (int k = 0; k < d; k++) {
+                        centers[i][k] = rand.nextInt(2000);
+                        radii[i][k] = 1 + rand.nextInt(rand.nextBoolean() ? 20 : 300);
+                    }
+                }
+                compare(centers, radii, null, randomPoints(rand, d, 2000, -500, 2500));
+            }
+        }
+    }
+
+    /**
+     * Copies of the same cluster, and clusters on a lattice with the points
+     * in the middle of the cells, so that several clusters are at exactly
+     * the same distance: the smallest index must be chosen.
+     */
+    @Test
+    void tiesAreBrokenBySmallestIndex() {
+        for (int d : new int[]{2, 3, 16}) {
+            int side = d == 2 ? 8 : 3;
+            int nClusters = (int) Math.pow(side, Math.min(d, 3));
+            int[][] centers = new int[2 * nClusters][d];
+            int[][] radii = new int[2 * nClusters][d];
+            for (int i = 0; i < nClusters; i++) {
+                for (int k = 0, c = i; k < d; k++, c /= side) {
+                    centers[i][k] = 16 * (c % side);
+                    radii[i][k] = 8;
+                }
+            }
+            //the same clusters, in reverse order
+            for (int i = 0; i < nClusters; i++) {
+                centers[nClusters + i] = centers[nClusters - 1 - i].clone();
+                radii[nClusters + i] = radii[nClusters - 1 - i].clone();
+            }
+            int[][] points = new int[1000][d];
+            Random rand = new Random(2);
+            for (int[] p : points) {
+                for (int k = 0; k < d; k++) {
+                    p[k] = 8 * rand.nextInt(2 * side + 2) - 8;
+                }
+            }
+            compare(centers, radii, null, points);
+        }
+    }
+
+    /**
+     * Clusters with a zero radius are at infinite or undefined (NaN) distance
+     * from most points: they are never the nearest, and if all clusters are
+     * so, no cluster is returned, as by the linear scan.
+     */
+    @Test
+    void infiniteAndUndefinedDistances() {
+        Random rand = new Random(3);
+        for (int d : new int[]{2, 16}) {
+            int nClusters = 50;
+            int[][] centers = new int[nClusters][d];
+            int[][] radii = new int[nClusters][d];
+            for (int i = 0; i < nClusters; i++) {
+                for (int k = 0; k < d; k++) {
+                    centers[i][k] = rand.nextInt(100);
+                    radii[i][k] = rand.nextInt(4) == 0 ? 0 : 1 + rand.nextInt(30);
+                }
+            }
+            int[][] points = randomPoints(rand, d, 1000, 0, 100);
+            //points on the centers, at distance NaN from the clusters with a zero radius
+            for (int i = 0; i < nClusters; i++) {
+                points[i] = centers[i].clone();
+            }
+            compare(centers, radii, null, points);
+            for (int[] r : radii) {
+                r[rand.nextInt(d)] = 0;
+            }
+            compare(centers, radii, null, points);
+        }
+    }
+
+    @Test
+    void rotatedClusters() {
+        Random rand = new Random(4);
+        for (int d : new int[]{2, 6}) {
+            int nClusters = 60;
+            int[][] centers = new int[nClusters][d];
+            int[][] radii = new int[nClusters][d];
+            ClusterCovariance[] covariances = new ClusterCovariance[nClusters];
+            for (int i = 0; i < nClusters; i++) {
+                for (int k = 0; k < d; k++) {
+                    centers[i][k] = rand.nextInt(1000);
+                    radii[i][k] = 5 + rand.nextInt(100);
+                }
+                if (i % 2 == 0) {
+                    covariances[i] = ClusterCovariance.rotated(radii[i], rand);
+                    radii[i] = covariances[i].boundingRadius;
+                }
+            }
+            compare(centers, radii, covariances, randomPoints(rand, d, 2000, -100, 1100));
+        }
+    }
+
+    static int[][] randomPoints(Random rand, int d, int n, int inf, int sup) {
+        int[][] points = new int[n][d];
+        for (int[] p : points) {
+            for (int k = 0; k < d; k++) {
+                p[k] = inf + rand.nextInt(sup - inf + 1);
+            }
+        }
+        return points;
+    }
+
+    /**
+     * Compares the index with and without the distance kernels to the linear
+     * scans of MultidimensionalGaussianGenerator and to a linear scan with
+     * DistanceKernel.relativeDistance.
+     */
+    static void compare(int[][] centers, int[][] radii, ClusterCovariance[] covariances, int[][] points) {
+        ClusterIndex.Search legacy = new ClusterIndex(centers, radii, covariances, false).newSearch();
+        ClusterIndex.Search kernels = new ClusterIndex(centers, radii, covariances, true).newSearch();
+        for (int[] p : points) {
+            int expected = nearest(centers, radii, covariances, p, false);
+            assertEquals(expected, legacy.nearest(p));
+            if (covariances == null) {
+                assertEquals(expected, MultidimensionalGaussianGenerator.nearestCluster(p, centers, radii));
+            }
+            assertEquals(distance(centers, radii, covariances, p, expected, false), legacy.getDistance());
+            assertEquals(MultidimensionalGaussianGenerator.clusterContainer(p, centers, radii, covariances), legacy.container(p));
+
+            expected = nearest(centers, radii, covariances, p, true);
+            assertEquals(expected, kernels.nearest(p));
+            assertEquals(distance(centers, radii, covariances, p, expected, true), kernels.getDistance());
+            assertEquals(expected >= 0 && kernels.getDistance() < 1 ? expected : -1, kernels.container(p));
+        }
+    }
+
+    static int nearest(int[][] centers, int[][] radii, ClusterCovariance[] covariances, int[] p, boolean kernels) {
+        int best = -1;
+        double bestDist = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < centers.length; i++) {
+            double d = distance(centers, radii, covariances, p, i, kernels);
+            if (d < bestDist) {
+                best = i;
+                bestDist = d;
+            }
+        }
+        return best;
+    }
+
+    static double distance(int[][] centers, int[][] radii, ClusterCovariance[] covariances, int[] p, int i, boolean kernels) {
+        if (i == -1) {
+            return Double.POSITIVE_INFINITY;
+        }
+        if (covariances != null && covariances[i] != null) {
+            return covariances[i].relativeDistance(centers[i], p);
+        }
+        return kernels ? DistanceKernel.relativeDistance(centers[i], radii[i], p, 0) : MultidimensionalGaussianGenerator.ellipticalRelativeDistance(centers[i], radii[i], p);
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks that the slices of a plan in COUNTER mode, generated independently,
+ * concatenate to the dataset written by generate.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+class CounterSliceTest {
+
+    static final int POINTS = 25000;
+
+    @TempDir
+    File dir;
+
+    @Test
+    void slicesConcatenateToTheDataset() throws IOException {
+        for (GenerationPlan.ClusterSampling sampling : GenerationPlan.ClusterSampling.values()) {
+            compareSlices(() -> plan(sampling, false));
+        }
+    }
+
+    @Test
+    void slicesOfRotatedClusters() throws IOException {
+        compareSlices(() -> plan(GenerationPlan.ClusterSampling.REJECTION, true));
+    }
+
+    @Test
+    void streamedSlicesHaveTheSamePoints() throws IOException {
+        GenerationPlan plan = plan(GenerationPlan.ClusterSampling.AUTO, false);
+        List<LabeledPoint> expected = new ArrayList<>();
+        MultidimensionalGaussianGenerator.stream(plan).forEach(expected::add);
+        assertEquals(POINTS, expected.size());
+        long[] cuts = {0, 1, 999, 1000, 1001, 7777, 7777, 20000, POINTS};
+        for (int j = 1; j < cuts.length; j++) {
+            Iterator<LabeledPoint> actual = MultidimensionalGaussianGenerator.stream(plan(GenerationPlan.ClusterSampling.AUTO, false), cuts[j - 1], cuts[j]).iterator();
+            for (long i = cuts[j - 1]; i < cuts[j]; i++) {
+                LabeledPoint p = actual.next();
+                assertArrayEquals(expected.get((int) i).getCoords(), p.getCoords(), "point " + i);
+                assertEquals(expected.get((int) i).getLabel(), p.getLabel(), "point " + i);
+            }
+            assertFalse(actual.hasNext());
+        }
+    }
+
+    interface PlanFactory {
+
+        GenerationPlan create();
+    }
+
+    /**
+     * Writes the dataset with generate, then the slices between cuts with
+     * generateRange, each from a new plan as a separate process would do,
+     * and compares the concatenation of the slices with the dataset. The
+     * cuts include empty slices, slices of one point, the chunk boundaries
+     * and random positions.
+     */
+    void compareSlices(PlanFactory factory) throws IOException {
+        String full = new File(dir, "full").getPath();
+        MultidimensionalGaussianGenerator.generate(full, factory.create());
+        Random rand = new Random(1);
+        List<Long> cuts = new ArrayList<>(List.of(0L, 0L, 1L, 2L, 1000L, 1000L, 1001L));
+        for (int i = 0; i < 8; i++) {
+            cuts.add(1001L + rand.nextInt(POINTS - 1001));
+        }
+        cuts.add((long) POINTS - 1);
+        cuts.add((long) POINTS);
+        cuts.sort(null);
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        ByteArrayOutputStream labels = new ByteArrayOutputStream();
+        String slice = new File(dir, "slice").getPath();
+        for (int j = 1; j < cuts.size(); j++) {
+            MultidimensionalGaussianGenerator.generateRange(slice, factory.create(), cuts.get(j - 1), cuts.get(j));
+            data.write(Files.readAllBytes(new File(slice).toPath()));
+            labels.write(Files.readAllBytes(new File(slice + "_labels").toPath()));
+        }
+        assertArrayEquals(Files.readAllBytes(new File(full).toPath()), data.toByteArray(), "cuts " + cuts);
+        assertArrayEquals(Files.readAllBytes(new File(full + "_labels").toPath()), labels.toByteArray(), "cuts " + cuts);
+    }
+
+    static GenerationPlan plan(GenerationPlan.ClusterSampling sampling, boolean rotated) {
+        int[][] centers = {{20, 100, 100}, {300, 250, 200}, {600, 600, 500}};
+        int[][] radii = {{40, 30, 50}, {25, 25, 25}, {80, 70, 60}};
+        GenerationPlan plan = new GenerationPlan(TruncatedEllipsoidSamplerTest.domain(3, 0, 699), POINTS, centers, radii, 0.1, 42);
+        plan.setMode(GenerationPlan.Mode.COUNTER);
+        plan.setChunkSize(1000);
+        plan.setClusterSampling(sampling);
+        if (rotated) {
+            Random rand = new Random(7);
+            for (int i = 0; i < centers.length; i++) {
+                plan.setCovariance(i, ClusterCovariance.rotated(radii[i], rand));
+            }
+        }
+        return plan;
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that the vector kernel returns the same values as the scalar one,
+ * bit by bit, on the dimensionalities of every remainder of 8 and 4 lanes,
+ * below and above DistanceKernel.MIN_DIMENSIONALITY, and on extreme radii
+ * and coordinates.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+class DistanceKernelTest {
+
+    static final int[] EXTREME_RADII = {1, 2, 3, 1 << 20, Integer.MAX_VALUE};
+
+    static DistanceKernel vectorKernel() {
+        assumeTrue(ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent(), "jdk.incubator.vector is not available");
+        return new VectorDistanceKernel();
+    }
+
+    @Test
+    void vectorDistancesEqualScalarDistances() {
+        DistanceKernel vector = vectorKernel();
+        Random rand = new Random(1);
+        for (int d = 1; d <= 67; d++) {
+            for (int iter = 0; iter < 20; iter++) {
+                int clusters = 1 + rand.nextInt(5);
+                double[] centers = new double[clusters * d];
+                double[] inverseRadii = new double[clusters * d];
+                double[] p = new double[d];
+                for (int k = 0; k < centers.length; k++) {
+                    centers[k] = coordinate(rand, iter);
+                    inverseRadii[k] = 1.0 / radius(rand, iter);
+                }
+                for (int k = 0; k < d; k++) {
+                    p[k] = coordinate(rand, iter);
+                }
+                double[] expected = new double[clusters];
+                double[] actual = new double[clusters];
+                DistanceKernel.SCALAR.distances(centers, inverseRadii, clusters, p, d, expected);
+                vector.distances(centers, inverseRadii, clusters, p, d, actual);
+                for (int i = 0; i < clusters; i++) {
+                    assertEquals(Double.doubleToLongBits(expected[i]), Double.doubleToLongBits(actual[i]), "d = " + d);
+                    assertEquals(Double.doubleToLongBits(expected[i]), Double.doubleToLongBits(vector.distance(centers, inverseRadii, i * d, p, d)), "d = " + d);
+                }
+            }
+        }
+    }
+
+    @Test
+    void vectorProductsEqualScalarProducts() {
+        DistanceKernel vector = vectorKernel();
+        Random rand = new Random(2);
+        for (int d = 1; d <= 40; d++) {
+            for (int rows : new int[]{1, 3, 4, 15, 16, 17, 32}) {
+                double[] m = new double[d * d];
+                double[] in = new double[d * rows];
+                for (int k = 0; k < m.length; k++) {
+                    m[k] = rand.nextGaussian() * (rand.nextBoolean() ? 1 : 1e6);
+                }
+                for (int k = 0; k < in.length; k++) {
+                    in[k] = rand.nextGaussian();
+                }
+                double[] expected = new double[in.length];
+                double[] actual = new double[in.length];
+                DistanceKernel.SCALAR.multiply(m, d, in, expected, rows, rows);
+                vector.multiply(m, d, in, actual, rows, rows);
+                for (int k = 0; k < in.length; k++) {
+                    assertEquals(Double.doubleToLongBits(expected[k]), Double.doubleToLongBits(actual[k]), "d = " + d + ", rows = " + rows);
+                }
+            }
+        }
+    }
+
+    @Test
+    void selfCheckAcceptsTheVectorKernel() {
+        assertTrue(DistanceKernel.check(vectorKernel()));
+    }
+
+    /**
+     * The distance computed from the int arrays is the same as the one of
+     * the kernels on the converted arrays, and below MIN_DIMENSIONALITY
+     * relativeDistance sums the terms in order, as
+     * ellipticalRelativeDistance.
+     */
+    @Test
+    void relativeDistanceOfIntArrays() {
+        Random rand = new Random(3);
+        for (int d = 1; d <= 40; d++) {
+            for (int iter = 0; iter < 50; iter++) {
+                int[] center = new int[d];
+                int[] radius = new int[d];
+                int[] p = new int[d + 2];
+                double[] centers = new double[d];
+                double[] inverseRadii = new double[d];
+                double[] point = new double[d];
+                for (int k = 0; k < d; k++) {
+                    center[k] = (int) coordinate(rand, iter);
+                    radius[k] = radius(rand, iter);
+                    p[k + 2] = (int) coordinate(rand, iter);
+                    centers[k] = center[k];
+                    inverseRadii[k] = 1.0 / radius[k];
+                    point[k] = p[k + 2];
+                }
+                double kernel = DistanceKernel.distance(center, radius, p, 2);
+                assertEquals(Double.doubleToLongBits(DistanceKernel.SCALAR.distance(centers, inverseRadii, 0, point, d)), Double.doubleToLongBits(kernel));
+                double expected = d >= DistanceKernel.MIN_DIMENSIONALITY ? kernel : MultidimensionalGaussianGenerator.ellipticalRelativeDistance(center, radius, p, 2);
+                assertEquals(Double.doubleToLongBits(expected), Double.doubleToLongBits(DistanceKernel.relativeDistance(center, radius, p, 2)));
+            }
+        }
+    }
+
+    /**
+     * Returns a coordinate, small or close to the limits of int every other
+     * iteration.
+     */
+    static double coordinate(Random rand, int iter) {
+        return iter % 2 == 0 ? rand.nextInt(2001) - 1000 : (rand.nextBoolean() ? 1 : -1) * (Integer.MAX_VALUE - rand.nextInt(1000));
+    }
+
+    static int radius(Random rand, int iter) {
+        return iter % 3 == 0 ? EXTREME_RADII[rand.nextInt(EXTREME_RADII.length)] : 1 + rand.nextInt(500);
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks the disk-backed shuffle: every row is kept, once, together with its
+ * label, and the same seed gives the same output.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+class ExternalShuffleTest {
+
+    static final int ROWS = 10000;
+
+    @TempDir
+    File dir;
+
+    @Test
+    void severalBucketsKeepEveryRowWithItsLabel() throws IOException {
+        String in = write("in", ROWS, true);
+        long budget = budget(in, 8);
+        assertTrue(ExternalShuffle.numberOfBuckets(new File(in).length(), new File(in + "_labels").length(), budget) >= 8);
+        String out = new File(dir, "out").getPath();
+        ExternalShuffle.shuffleDataset(in, in + "_labels", out, out + "_labels", new Random(1), budget, dir);
+        List<String> rows = checkPermutation(in, out);
+        assertFalse(rows.equals(Files.readAllLines(new File(in).toPath())), "the rows were not shuffled");
+        //the bucket files and their directory are deleted
+        assertEquals(4, dir.list().length);
+    }
+
+    /**
+     * The last row is kept also when the files do not end with a newline.
+     */
+    @Test
+    void lastRowWithoutNewline() throws IOException {
+        String in = write("in", ROWS, false);
+        String out = new File(dir, "out").getPath();
+        for (long budget : new long[]{budget(in, 5), ExternalShuffle.DEFAULT_MEMORY_BUDGET}) {
+            ExternalShuffle.shuffleDataset(in, in + "_labels", out, out + "_labels", new Random(2), budget, dir);
+            assertTrue(checkPermutation(in, out).contains(row(ROWS - 1)));
+        }
+    }
+
+    @Test
+    void sameSeedSameOutput() throws IOException {
+        String in = write("in", ROWS, true);
+        long budget = budget(in, 6);
+        byte[][] outputs = new byte[3][];
+        for (int run = 0; run < 3; run++) {
+            String out = new File(dir, "out" + run).getPath();
+            ExternalShuffle.shuffleDataset(in, in + "_labels", out, out + "_labels", new Random(run < 2 ? 3 : 4), budget, dir);
+            outputs[run] = Files.readAllBytes(new File(out).toPath());
+            checkPermutation(in, out);
+        }
+        assertArrayEquals(outputs[0], outputs[1]);
+        assertFalse(Arrays.equals(outputs[0], outputs[2]));
+    }
+
+    /**
+     * With a single bucket, the result is the same as the in-memory shuffle
+     * with the same random generator.
+     */
+    @Test
+    void singleBucketIsTheInMemoryShuffle() throws IOException {
+        String in = write("in", ROWS, true);
+        String expected = new File(dir, "expected").getPath();
+        String actual = new File(dir, "actual").getPath();
+        MultidimensionalGaussianGenerator.shuffleDataset(in, in + "_labels", expected, expected + "_labels", new Random(5));
+        ExternalShuffle.shuffleDataset(in, in + "_labels", actual, actual + "_labels", new Random(5), ExternalShuffle.DEFAULT_MEMORY_BUDGET, dir);
+        assertArrayEquals(Files.readAllBytes(new File(expected).toPath()), Files.readAllBytes(new File(actual).toPath()));
+        assertArrayEquals(Files.readAllBytes(new File(expected + "_labels").toPath()), Files.readAllBytes(new File(actual + "_labels").toPath()));
+    }
+
+    @Test
+    void lengthMismatch() throws IOException {
+        String in = write("in", ROWS, true);
+        Files.write(new File(in + "_labels").toPath(), "1\n2\n".getBytes(StandardCharsets.US_ASCII));
+        String out = new File(dir, "out").getPath();
+        assertThrows(IOException.class, () -> ExternalShuffle.shuffleDataset(in, in + "_labels", out, out + "_labels", new Random(6), budget(in, 4), dir));
+    }
+
+    /**
+     * Returns the row i, whose label is i % 13; the row contains i, so that
+     * the pairing with the label can be checked after the shuffle.
+     */
+    static String row(int i) {
+        return i + "," + (i * 7 % 2000) + ",-" + (1 + i % 100);
+    }
+
+    String write(String name, int rows, boolean lastNewline) throws IOException {
+        StringBuilder data = new StringBuilder();
+        StringBuilder labels = new StringBuilder();
+        for (int i = 0; i < rows; i++) {
+            data.append(row(i));
+            labels.append(i % 13);
+            if (i < rows - 1 || lastNewline) {
+                data.append('\n');
+                labels.append('\n');
+            }
+        }
+        String fileName = new File(dir, name).getPath();
+        Files.write(new File(fileName).toPath(), data.toString().getBytes(StandardCharsets.US_ASCII));
+        Files.write(new File(fileName + "_labels").toPath(), labels.toString().getBytes(StandardCharsets.US_ASCII));
+        return fileName;
+    }
+
+    /**
+     * Returns a memory budget requiring at least the given number of buckets.
+     */
+    static long budget(String fileName, int buckets) {
+        return ExternalShuffle.numberOfBuckets(new File(fileName).length(), new File(fileName + "_labels").length(), 1) / buckets;
+    }
+
+    /**
+     * Checks that the rows of out are a permutation of those of in, with the
+     * same labels, and returns them.
+     */
+    static List<String> checkPermutation(String in, String out) throws IOException {
+        List<String> rows = Files.readAllLines(new File(out).toPath());
+        List<String> labels = Files.readAllLines(new File(out + "_labels").toPath());
+        int n = Files.readAllLines(new File(in).toPath()).size();
+        assertEquals(n, rows.size());
+        assertEquals(n, labels.size());
+        HashSet<Integer> seen = new HashSet<>();
+        for (int j = 0; j < n; j++) {
+            int i = Integer.parseInt(rows.get(j).substring(0, rows.get(j).indexOf(',')));
+            assertTrue(seen.add(i), "row " + i + " repeated");
+            assertEquals(row(i), rows.get(j));
+            assertEquals("" + i % 13, labels.get(j), "label of row " + i);
+        }
+        return new ArrayList<>(rows);
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks that the images rendered by ImageRenderer do not depend on the
+ * number of threads, and are those of the points drawn one by one in order.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+class ImageRendererTest {
+
+    static final Range DOMAIN = new Range(new int[]{0, 0, 0}, new int[]{99, 399, 299});
+
+    @TempDir
+    File dir;
+
+    /**
+     * Files of several chunks, whose labels file has a different layout, with
+     * points outside the domain and labels appearing in every chunk.
+     */
+    @Test
+    void textFiles() throws IOException {
+        Random rand = new Random(1);
+        int rows = 250000;
+        int[] x = new int[rows];
+        int[] y = new int[rows];
+        int[] labels = new int[rows];
+        StringBuilder data = new StringBuilder();
+        StringBuilder labelLines = new StringBuilder();
+        for (int i = 0; i < rows; i++) {
+            x[i] = rand.nextInt(450) - 20;
+            y[i] = rand.nextInt(350) - 20;
+            labels[i] = i % 1000 < 500 ? (i / 1000) % 7 : rand.nextInt(20) - 1;
+            data.append(rand.nextInt(100)).append(',').append(x[i]).append(',').append(y[i]).append(i % 10 == 0 ? "\r\n" : "\n");
+            labelLines.append(labels[i]).append(i % 1000 == 0 ? "\n\n" : "\n");
+        }
+        String fileName = write("data", data.toString());
+        write("data_labels", labelLines.toString());
+        assertTrue(TextDataset.split(fileName, 4, ImageRenderer.CHUNK_SIZE).length >= 3);
+        for (PointRaster.Mode mode : PointRaster.Mode.values()) {
+            ImageRenderer renderer = new ImageRenderer(DOMAIN).setDimensions(2, 3).setMode(mode);
+            int[] expected = drawInOrder(renderer, x, y, labels);
+            for (int threads : new int[]{1, 3, 8}) {
+                PointRaster raster = renderer.setThreads(threads).render(fileName, fileName + "_labels");
+                assertArrayEquals(expected, pixels(raster), mode + ", " + threads + " threads");
+            }
+        }
+    }
+
+    /**
+     * A dataset of several batches.
+     */
+    @Test
+    void dataset() throws IOException {
+        Random rand = new Random(2);
+        int rows = 2 * ImageRenderer.BATCH_SIZE + 12345;
+        int[] x = new int[rows];
+        int[] y = new int[rows];
+        int[] labels = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            x[i] = rand.nextInt(420) - 10;
+            y[i] = rand.nextInt(320) - 10;
+            labels[i] = i < ImageRenderer.BATCH_SIZE ? rand.nextInt(5) : rand.nextInt(30) - 1;
+        }
+        TextDataset dataset = new TextDataset(new int[][]{new int[rows], x, y}, labels);
+        for (PointRaster.Mode mode : PointRaster.Mode.values()) {
+            ImageRenderer renderer = new ImageRenderer(DOMAIN).setDimensions(2, 3).setMode(mode);
+            int[] expected = drawInOrder(renderer, x, y, labels);
+            for (int threads : new int[]{1, 4}) {
+                PointRaster raster = renderer.setThreads(threads).render(dataset);
+                assertArrayEquals(expected, pixels(raster), mode + ", " + threads + " threads");
+            }
+        }
+    }
+
+    @Test
+    void invalidFiles() throws IOException {
+        String fileName = write("short", "1,2,3\n4,5,6\n");
+        write("short_labels", "1\n");
+        IOException e = assertThrows(IOException.class, () -> new ImageRenderer(DOMAIN).render(fileName, fileName + "_labels"));
+        assertEquals("File lengths mismatch", e.getMessage());
+        write("short_labels", "1\n2\n3\n");
+        assertThrows(IOException.class, () -> new ImageRenderer(DOMAIN).render(fileName, fileName + "_labels"));
+        write("short_labels", "1\n2\n");
+        new ImageRenderer(DOMAIN).render(fileName, fileName + "_labels");
+        String narrow = write("narrow", "1,2\n4,5\n");
+        write("narrow_labels", "1\n2\n");
+        assertThrows(IOException.class, () -> new ImageRenderer(DOMAIN).setDimensions(2, 3).render(narrow, narrow + "_labels"));
+    }
+
+    static int[] drawInOrder(ImageRenderer renderer, int[] x, int[] y, int[] labels) {
+        PointRaster raster = renderer.createRaster();
+        for (int i = 0; i < x.length; i++) {
+            raster.draw(x[i], y[i], labels[i]);
+        }
+        return pixels(raster);
+    }
+
+    static int[] pixels(PointRaster raster) {
+        raster.getImage();
+        return raster.pixels.clone();
+    }
+
+    String write(String name, String content) throws IOException {
+        File f = new File(dir, name);
+        Files.write(f.toPath(), content.getBytes(StandardCharsets.US_ASCII));
+        return f.getPath();
+    }
+}
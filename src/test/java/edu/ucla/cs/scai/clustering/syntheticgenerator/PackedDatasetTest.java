@@ -0,0 +1,155 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks that the points and labels written by PackedDatasetWriter are read
+ * back unchanged by PackedDataset, and that the packed files of a plan
+ * contain the same rows as the text files.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+class PackedDatasetTest {
+
+    @TempDir
+    File dir;
+
+    /**
+     * Fields of 0 to 32 bits, negative bounds, and blocks of a few rows, so
+     * that fields and rows cross byte, word and block boundaries.
+     */
+    @Test
+    void roundTrip() throws IOException {
+        Range domain = new Range(
+                new int[]{0, 7, -1000, Integer.MIN_VALUE, -3, 0, 5},
+                new int[]{1999, 7, 1000, Integer.MAX_VALUE, 4, 1, 1 << 20});
+        for (int rowsPerBlock : new int[]{1, 7, 64, PackedDatasetWriter.DEFAULT_ROWS_PER_BLOCK}) {
+            for (int labelMax : new int[]{-1, 0, 40, 1000}) {
+                roundTrip(domain, -1, labelMax, 3000, rowsPerBlock);
+            }
+        }
+    }
+
+    @Test
+    void emptyDataset() throws IOException {
+        String fileName = new File(dir, "empty.packed").getPath();
+        new PackedDatasetWriter(fileName, TruncatedEllipsoidSamplerTest.domain(3, 0, 10), -1, 4).close();
+        try (PackedDataset in = new PackedDataset(fileName)) {
+            assertEquals(0, in.size());
+            assertEquals(3, in.getDimensionality());
+        }
+    }
+
+    @Test
+    void valuesOutsideTheRangeAreRejected() throws IOException {
+        String fileName = new File(dir, "invalid.packed").getPath();
+        try (PackedDatasetWriter out = new PackedDatasetWriter(fileName, TruncatedEllipsoidSamplerTest.domain(2, 0, 10), -1, 4)) {
+            assertThrows(IllegalArgumentException.class, () -> out.write(new int[]{0, 11}, 0, 0));
+            assertThrows(IllegalArgumentException.class, () -> out.write(new int[]{0, 10}, 0, 5));
+        }
+    }
+
+    /**
+     * The packed files of a plan, written directly or converted from the
+     * text files, contain the same rows as the text files.
+     */
+    @Test
+    void sameRowsAsTextFiles() throws IOException {
+        int[][] centers = {{100, 100, 100}, {300, 250, 200}, {600, 600, 500}};
+        int[][] radii = {{40, 30, 50}, {25, 25, 25}, {80, 70, 60}};
+        Range domain = TruncatedEllipsoidSamplerTest.domain(3, 0, 699);
+        String text = new File(dir, "text").getPath();
+        String packed = new File(dir, "data.packed").getPath();
+        String converted = new File(dir, "converted.packed").getPath();
+        MultidimensionalGaussianGenerator.generate(text, new GenerationPlan(domain, 20000, centers, radii, 0.1, 42));
+        MultidimensionalGaussianGenerator.generatePacked(packed, new GenerationPlan(domain, 20000, centers, radii, 0.1, 42));
+        assertEquals(20000, PackedDatasetWriter.convert(text, text + "_labels", domain, converted));
+        TextDataset expected = TextDataset.load(text, text + "_labels");
+        for (String fileName : new String[]{packed, converted}) {
+            try (PackedDataset actual = new PackedDataset(fileName)) {
+                assertSame(expected, actual);
+            }
+        }
+    }
+
+    void roundTrip(Range domain, int labelMin, int labelMax, int n, int rowsPerBlock) throws IOException {
+        int d = domain.getDimensionality();
+        Random rand = new Random(n + rowsPerBlock + labelMax);
+        int[] coords = new int[n * d];
+        int[] labels = new int[n];
+        for (int i = 0; i < n; i++) {
+            for (int k = 0; k < d; k++) {
+                //the bounds of the range, or a value inside it
+                long inf = domain.getInf()[k];
+                long sup = domain.getSup()[k];
+                int choice = rand.nextInt(4);
+                coords[i * d + k] = (int) (choice == 0 ? inf : choice == 1 ? sup : inf + (long) (rand.nextDouble() * (sup - inf + 1)));
+            }
+            labels[i] = labelMin + rand.nextInt(labelMax - labelMin + 1);
+        }
+        String fileName = new File(dir, "roundtrip.packed").getPath();
+        try (PackedDatasetWriter out = new PackedDatasetWriter(fileName, domain, labelMin, labelMax, rowsPerBlock)) {
+            for (int i = 0; i < n; i++) {
+                out.write(coords, i * d, labels[i]);
+            }
+        }
+        try (PackedDataset in = new PackedDataset(fileName)) {
+            assertEquals(n, in.size());
+            assertEquals(d, in.getDimensionality());
+            assertArrayEquals(domain.getInf(), in.getDomain().getInf());
+            assertArrayEquals(domain.getSup(), in.getDomain().getSup());
+            int[] p = new int[d + 1];
+            for (int i = 0; i < n; i++) {
+                assertEquals(labels[i], in.getLabel(i));
+                in.getPoint(i, p, 1);
+                for (int k = 0; k < d; k++) {
+                    assertEquals(coords[i * d + k], p[k + 1]);
+                    assertEquals(coords[i * d + k], in.getCoord(i, k));
+                }
+            }
+            PointBlock block = new PointBlock(d, 100);
+            for (long from = 0; in.fill(from, block) > 0; from += block.getSize()) {
+                for (int j = 0; j < block.getSize(); j++) {
+                    assertEquals(labels[(int) from + j], block.getLabel(j));
+                    assertArrayEquals(Arrays.copyOfRange(coords, ((int) from + j) * d, ((int) from + j + 1) * d), block.getPoint(j));
+                }
+            }
+        }
+    }
+
+    static void assertSame(PointDataset expected, PointDataset actual) {
+        assertEquals(expected.size(), actual.size());
+        int d = expected.getDimensionality();
+        int[] p = new int[d];
+        int[] q = new int[d];
+        for (long i = 0; i < expected.size(); i++) {
+            expected.getPoint(i, p, 0);
+            actual.getPoint(i, q, 0);
+            assertArrayEquals(p, q);
+            assertEquals(expected.getLabel(i), actual.getLabel(i));
+        }
+    }
+}
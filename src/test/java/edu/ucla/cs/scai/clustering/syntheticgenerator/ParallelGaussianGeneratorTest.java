@@ -0,0 +1,66 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks that the parallel generator writes the same files as the sequential
+ * one, whatever the number of threads.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+class ParallelGaussianGeneratorTest {
+
+    @TempDir
+    File dir;
+
+    @Test
+    void sameFilesInChunkedMode() throws IOException {
+        compare(GenerationPlan.Mode.CHUNKED);
+    }
+
+    @Test
+    void sameFilesInCounterMode() throws IOException {
+        compare(GenerationPlan.Mode.COUNTER);
+    }
+
+    void compare(GenerationPlan.Mode mode) throws IOException {
+        String expected = new File(dir, "sequential").getPath();
+        MultidimensionalGaussianGenerator.generate(expected, plan(mode));
+        for (int parallelism : new int[]{1, 4}) {
+            String actual = new File(dir, "parallel" + parallelism).getPath();
+            ParallelGaussianGenerator.generate(actual, plan(mode), parallelism);
+            for (String suffix : new String[]{"", "_labels", "_info"}) {
+                assertArrayEquals(Files.readAllBytes(new File(expected + suffix).toPath()), Files.readAllBytes(new File(actual + suffix).toPath()), mode + " " + parallelism + " threads, file" + suffix);
+            }
+        }
+    }
+
+    static GenerationPlan plan(GenerationPlan.Mode mode) {
+        int[][] centers = {{100, 100, 100, 100, 100}, {300, 250, 200, 150, 100}, {600, 600, 500, 500, 400}};
+        int[][] radii = {{40, 30, 50, 20, 60}, {25, 25, 25, 25, 25}, {80, 70, 60, 50, 40}};
+        GenerationPlan plan = new GenerationPlan(TruncatedEllipsoidSamplerTest.domain(5, 0, 700), 30000, centers, radii, 0.1, 42);
+        plan.setMode(mode);
+        plan.setChunkSize(1000);
+        return plan;
+    }
+}
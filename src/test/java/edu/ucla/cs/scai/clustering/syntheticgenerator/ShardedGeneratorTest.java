@@ -0,0 +1,56 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks that the sharded generator writes the same _info file as the
+ * sequential one, and that its shards can be rebuilt.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+class ShardedGeneratorTest {
+
+    @TempDir
+    File dir;
+
+    @Test
+    void sameInfoInChunkedMode() throws IOException {
+        compare(GenerationPlan.Mode.CHUNKED);
+    }
+
+    @Test
+    void sameInfoInCounterMode() throws IOException {
+        compare(GenerationPlan.Mode.COUNTER);
+    }
+
+    void compare(GenerationPlan.Mode mode) throws IOException {
+        String expected = new File(dir, "sequential").getPath();
+        MultidimensionalGaussianGenerator.generate(expected, ParallelGaussianGeneratorTest.plan(mode));
+        for (int nShards : new int[]{1, 3}) {
+            File shards = new File(dir, mode + "-" + nShards);
+            ShardedGenerator.generate(shards.getPath(), ParallelGaussianGeneratorTest.plan(mode), nShards, 2);
+            assertArrayEquals(Files.readAllBytes(new File(expected + "_info").toPath()), Files.readAllBytes(new File(shards, ShardedGenerator.INFO).toPath()), mode + ", " + nShards + " shards");
+            ShardedGenerator.rebuildShard(shards.getPath(), nShards - 1);
+        }
+    }
+}
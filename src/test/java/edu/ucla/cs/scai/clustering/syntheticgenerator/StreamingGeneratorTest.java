@@ -0,0 +1,263 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the protocol of the subscriptions of StreamingGenerator and the
+ * drift of its clusters.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+class StreamingGeneratorTest {
+
+    static final Range DOMAIN = new Range(new int[]{0, 0}, new int[]{9999, 9999});
+
+    static StreamingGenerator generator(double noiseRatio) {
+        StreamingGenerator generator = new StreamingGenerator(DOMAIN, new int[][]{{2000, 2000}, {7000, 7000}}, new int[][]{{500, 300}, {400, 400}}, noiseRatio, 5);
+        generator.setBlockSize(1000);
+        return generator;
+    }
+
+    @Test
+    void limitAndComplete() throws InterruptedException {
+        StreamingGenerator generator = generator(0.1);
+        generator.setLimit(4321);
+        Collector<LabeledPoint> points = new Collector<>(Long.MAX_VALUE);
+        generator.subscribe(points);
+        assertTrue(points.completed.await(10, TimeUnit.SECONDS));
+        assertEquals(4321, points.items.size());
+        assertNull(points.error);
+        Collector<PointBlock> blocks = new Collector<>(Long.MAX_VALUE);
+        generator.blocks().subscribe(blocks);
+        assertTrue(blocks.completed.await(10, TimeUnit.SECONDS));
+        assertEquals(5, blocks.items.size());
+        assertEquals(321, blocks.items.get(4).getSize());
+        //the points are those of the blocks
+        for (int i = 0; i < points.items.size(); i++) {
+            PointBlock block = blocks.items.get(i / 1000);
+            assertArrayEquals(block.getPoint(i % 1000), points.items.get(i).getCoords());
+            assertEquals(block.getLabel(i % 1000), points.items.get(i).getLabel());
+        }
+    }
+
+    @Test
+    void noItemsBeforeRequest() throws InterruptedException {
+        Collector<LabeledPoint> points = new Collector<>(0);
+        generator(0.1).subscribe(points);
+        assertTrue(points.subscribed.await(10, TimeUnit.SECONDS));
+        Thread.sleep(200);
+        assertEquals(0, points.received.get());
+        points.subscription.request(3);
+        points.awaitItems(3);
+        Thread.sleep(200);
+        assertEquals(3, points.received.get());
+    }
+
+    /**
+     * A subscriber requesting one point at a time, after each point.
+     */
+    @Test
+    void requestOneAtATime() throws InterruptedException {
+        StreamingGenerator generator = generator(0.1);
+        generator.setLimit(2500);
+        AtomicInteger outstanding = new AtomicInteger();
+        AtomicInteger violations = new AtomicInteger();
+        Collector<LabeledPoint> points = new Collector<LabeledPoint>(1) {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                outstanding.set(1);
+                super.onSubscribe(subscription);
+            }
+
+            @Override
+            public void onNext(LabeledPoint item) {
+                if (outstanding.decrementAndGet() < 0) {
+                    violations.incrementAndGet();
+                }
+                super.onNext(item);
+                outstanding.incrementAndGet();
+                subscription.request(1);
+            }
+        };
+        generator.subscribe(points);
+        assertTrue(points.completed.await(10, TimeUnit.SECONDS));
+        assertEquals(2500, points.items.size());
+        assertEquals(0, violations.get());
+    }
+
+    @Test
+    void cancel() throws InterruptedException {
+        StreamingGenerator generator = generator(0.1);
+        Collector<PointBlock> blocks = new Collector<PointBlock>(Long.MAX_VALUE) {
+            @Override
+            public void onNext(PointBlock item) {
+                super.onNext(item);
+                if (received.get() == 3) {
+                    subscription.cancel();
+                }
+            }
+        };
+        generator.blocks().subscribe(blocks);
+        blocks.awaitItems(3);
+        Thread.sleep(200);
+        assertEquals(3, blocks.received.get());
+        assertEquals(1, blocks.completed.getCount());
+    }
+
+    /**
+     * Cancelling while the rate-limited stream waits for the next block wakes
+     * the wait without sending the block.
+     */
+    @Test
+    void cancelWhileWaiting() throws InterruptedException {
+        StreamingGenerator generator = generator(0.1);
+        generator.setRate(1000);
+        Collector<PointBlock> blocks = new Collector<>(Long.MAX_VALUE);
+        generator.blocks().subscribe(blocks);
+        blocks.awaitItems(1);
+        //the second block is due after one second
+        Thread.sleep(100);
+        blocks.subscription.cancel();
+        Thread.sleep(1500);
+        assertEquals(1, blocks.received.get());
+        assertEquals(1, blocks.completed.getCount());
+        assertNull(blocks.error);
+    }
+
+    /**
+     * A cluster appearing and disappearing, and a cluster moving and
+     * changing its radius, without noise.
+     */
+    @Test
+    void appearDisappearAndMove() throws InterruptedException {
+        StreamingGenerator generator = generator(0);
+        int added = generator.addCluster(new int[]{5000, 1000}, new int[]{200, 200}, 3000);
+        generator.removeCluster(added, 7000);
+        generator.moveCluster(0, 2000, 8000, new int[]{8000, 3000}, new int[]{300, 600});
+        generator.setLimit(10000);
+        Collector<PointBlock> blocks = new Collector<>(Long.MAX_VALUE);
+        generator.blocks().subscribe(blocks);
+        assertTrue(blocks.completed.await(10, TimeUnit.SECONDS));
+        assertEquals(10, blocks.items.size());
+        for (int b = 0; b < 10; b++) {
+            long time = b * 1000L;
+            PointBlock block = blocks.items.get(b);
+            boolean[] seen = new boolean[3];
+            for (int i = 0; i < block.getSize(); i++) {
+                int label = block.getLabel(i);
+                seen[label] = true;
+                int[] center = generator.getCenter(label, time);
+                int[] radius = generator.getRadius(label, time);
+                assertTrue(MultidimensionalGaussianGenerator.ellipticalRelativeDistance(center, radius, block.getPoint(i)) <= 1, "block " + b);
+            }
+            assertTrue(seen[0] && seen[1]);
+            assertEquals(time >= 3000 && time < 7000, seen[added], "block " + b);
+        }
+        assertArrayEquals(new int[]{5000, 2500}, generator.getCenter(0, 5000));
+        assertArrayEquals(new int[]{400, 450}, generator.getRadius(0, 5000));
+        assertNull(generator.getCenter(added, 7000));
+    }
+
+    /**
+     * Every subscriber receives the same stream from its beginning.
+     */
+    @Test
+    void sameStreamForEverySubscriber() throws InterruptedException {
+        StreamingGenerator generator = generator(0.2);
+        generator.moveCluster(1, 0, 5000, new int[]{6000, 8000}, new int[]{600, 400});
+        generator.setLimit(6000);
+        Collector<PointBlock> first = new Collector<>(Long.MAX_VALUE);
+        Collector<PointBlock> second = new Collector<>(Long.MAX_VALUE);
+        generator.blocks().subscribe(first);
+        generator.blocks().subscribe(second);
+        assertTrue(first.completed.await(10, TimeUnit.SECONDS));
+        assertTrue(second.completed.await(10, TimeUnit.SECONDS));
+        assertEquals(6, first.items.size());
+        for (int b = 0; b < first.items.size(); b++) {
+            assertArrayEquals(first.items.get(b).getCoords(), second.items.get(b).getCoords());
+            assertArrayEquals(first.items.get(b).getLabels(), second.items.get(b).getLabels());
+        }
+        assertFalse(first.items.get(0) == second.items.get(0));
+    }
+
+    /**
+     * Records the signals received, requesting initialRequest items on
+     * subscription if it is positive.
+     */
+    static class Collector<T> implements Flow.Subscriber<T> {
+
+        final long initialRequest;
+        final List<T> items = new ArrayList<>();
+        final AtomicInteger received = new AtomicInteger();
+        final CountDownLatch subscribed = new CountDownLatch(1);
+        final CountDownLatch completed = new CountDownLatch(1);
+        volatile Flow.Subscription subscription;
+        volatile Throwable error;
+
+        Collector(long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscribed.countDown();
+            if (initialRequest > 0) {
+                subscription.request(initialRequest);
+            }
+        }
+
+        @Override
+        public void onNext(T item) {
+            synchronized (items) {
+                items.add(item);
+            }
+            received.incrementAndGet();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            completed.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed.countDown();
+        }
+
+        void awaitItems(int n) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (received.get() < n && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertTrue(received.get() >= n);
+        }
+    }
+}
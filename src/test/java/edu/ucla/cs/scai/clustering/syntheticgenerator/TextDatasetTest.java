@@ -0,0 +1,202 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks the parser of TextDataset against a line-by-line parse, and the
+ * shuffle of text files.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+class TextDatasetTest {
+
+    @TempDir
+    File dir;
+
+    /**
+     * CRLF and LF lines, empty lines, spaces, tabs and commas, negative
+     * values and the limits of int, and no final newline.
+     */
+    @Test
+    void separatorsAndLineEndings() throws IOException {
+        String data = "\r\n1,2,3\r\n\n-4 -5\t-6\n\n\r\n 7 , 8,9 \r\n" + Integer.MIN_VALUE + ",0," + Integer.MAX_VALUE + "\n-0,-1,-2";
+        String labels = "\n1\r\n-1\n\n2\r\n3\n4";
+        load(data, labels, 1);
+        TextDataset dataset = load(data, labels, 4);
+        assertEquals(5, dataset.size());
+        assertArrayEquals(new int[]{1, -4, 7, Integer.MIN_VALUE, 0}, dataset.getColumn(0));
+        assertArrayEquals(new int[]{3, -6, 9, Integer.MAX_VALUE, -2}, dataset.getColumn(2));
+        assertArrayEquals(new int[]{1, -1, 2, 3, 4}, dataset.getLabels());
+    }
+
+    /**
+     * Lines longer than WINDOW_SIZE, at the beginning of the file and after
+     * short lines.
+     */
+    @Test
+    void linesLongerThanTheWindow() throws IOException {
+        StringBuilder data = new StringBuilder();
+        StringBuilder labels = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            int padding = i % 10 == 0 ? 3 * TextDataset.WINDOW_SIZE + i : 1;
+            data.append(i).append(",").append(" ".repeat(padding)).append(-i).append("\n");
+            labels.append(i % 3).append("\n");
+        }
+        TextDataset dataset = load(data.toString(), labels.toString(), 2);
+        assertEquals(50, dataset.size());
+        for (int i = 0; i < 50; i++) {
+            assertEquals(-i, dataset.getCoord(i, 1));
+        }
+    }
+
+    /**
+     * Files of several chunks, whose chunks end at different rows in the
+     * data and in the labels, so that the labels must be aligned with the
+     * points across the chunk boundaries.
+     */
+    @Test
+    void labelsAlignedAcrossChunks() throws IOException {
+        Random rand = new Random(1);
+        StringBuilder data = new StringBuilder();
+        StringBuilder labels = new StringBuilder();
+        int rows = 0;
+        while (data.length() < 3 * TextDataset.MIN_CHUNK_SIZE + 1000) {
+            data.append(rand.nextInt(2000)).append(',').append(rows).append(',').append(-rand.nextInt(100000));
+            data.append(rand.nextInt(10) == 0 ? "\r\n" : "\n");
+            if (rand.nextInt(100) == 0) {
+                data.append('\n');
+            }
+            labels.append(rows % 37 - 1).append('\n');
+            rows++;
+        }
+        assertTrue(TextDataset.split(write("chunks", data.toString()), 4).length >= 3);
+        for (int threads : new int[]{1, 4}) {
+            TextDataset dataset = load(data.toString(), labels.toString(), threads);
+            assertEquals(rows, dataset.size());
+            for (int i = 0; i < rows; i++) {
+                assertEquals(i, dataset.getCoord(i, 1));
+                assertEquals(i % 37 - 1, dataset.getLabel(i));
+            }
+        }
+    }
+
+    @Test
+    void invalidFiles() throws IOException {
+        assertThrows(IOException.class, () -> load("1,2\n3,x\n", "1\n2\n", 1));
+        assertThrows(IOException.class, () -> load("1,2\n3,4,5\n", "1\n2\n", 1));
+        assertThrows(IOException.class, () -> load("1,2\n3,99999999999\n", "1\n2\n", 1));
+        assertThrows(IOException.class, () -> load("1,2\n3,4\n", "1\n", 1));
+    }
+
+    /**
+     * The lines are shuffled as they are, whatever their format.
+     */
+    @Test
+    void shuffleCopiesTheLines() throws IOException {
+        List<String> rows = new ArrayList<>();
+        List<String> labels = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            rows.add(i + "," + (i * 0.5) + ", -0 , x" + i);
+            labels.add("label" + i);
+        }
+        String in = write("in", String.join("\n", rows) + "\n");
+        write("in_labels", String.join("\n", labels) + "\n");
+        String out = new File(dir, "out").getPath();
+        MultidimensionalGaussianGenerator.shuffleDataset(in, in + "_labels", out, out + "_labels", new Random(2));
+        List<String> shuffled = Files.readAllLines(new File(out).toPath());
+        List<String> shuffledLabels = Files.readAllLines(new File(out + "_labels").toPath());
+        for (int j = 0; j < shuffled.size(); j++) {
+            String row = shuffled.get(j);
+            assertEquals("label" + row.substring(0, row.indexOf(',')), shuffledLabels.get(j));
+        }
+        Collections.sort(rows);
+        Collections.sort(shuffled);
+        assertEquals(rows, shuffled);
+    }
+
+    /**
+     * A generated dataset shuffled line by line and through TextDataset gives
+     * the same files.
+     */
+    @Test
+    void shuffleOfLoadedDataset() throws IOException {
+        int[][] centers = {{100, 100, 100}, {300, 250, 200}};
+        int[][] radii = {{40, 30, 50}, {25, 25, 25}};
+        String in = new File(dir, "generated").getPath();
+        MultidimensionalGaussianGenerator.generate(in, new GenerationPlan(TruncatedEllipsoidSamplerTest.domain(3, 0, 499), 20000, centers, radii, 0.1, 42));
+        String lines = new File(dir, "lines").getPath();
+        String loaded = new File(dir, "loaded").getPath();
+        MultidimensionalGaussianGenerator.shuffleDataset(in, in + "_labels", lines, lines + "_labels", new Random(3));
+        MultidimensionalGaussianGenerator.shuffleDataset(TextDataset.load(in, in + "_labels"), loaded, loaded + "_labels", new Random(3));
+        for (String suffix : new String[]{"", "_labels"}) {
+            assertArrayEquals(Files.readAllBytes(new File(lines + suffix).toPath()), Files.readAllBytes(new File(loaded + suffix).toPath()));
+        }
+    }
+
+    String write(String name, String content) throws IOException {
+        File f = new File(dir, name);
+        Files.write(f.toPath(), content.getBytes(StandardCharsets.US_ASCII));
+        return f.getPath();
+    }
+
+    /**
+     * Loads the files with the given content, checking the result against a
+     * line-by-line parse.
+     */
+    TextDataset load(String data, String labels, int threads) throws IOException {
+        String fileName = write("data", data);
+        write("data_labels", labels);
+        TextDataset dataset = TextDataset.load(fileName, fileName + "_labels", threads);
+        List<int[]> expected = parseLines(data);
+        List<int[]> expectedLabels = parseLines(labels);
+        assertEquals(expected.size(), dataset.size());
+        int[] p = new int[dataset.getDimensionality()];
+        for (int i = 0; i < expected.size(); i++) {
+            dataset.getPoint(i, p, 0);
+            assertArrayEquals(expected.get(i), p, "row " + i);
+            assertEquals(expectedLabels.get(i)[0], dataset.getLabel(i), "label " + i);
+        }
+        return dataset;
+    }
+
+    static List<int[]> parseLines(String s) {
+        List<int[]> rows = new ArrayList<>();
+        for (String line : s.split("\n")) {
+            String[] values = line.trim().split("[ ,\t]+");
+            if (values.length == 1 && values[0].isEmpty()) {
+                continue;
+            }
+            rows.add(Arrays.stream(values).mapToInt(Integer::parseInt).toArray());
+        }
+        return rows;
+    }
+}
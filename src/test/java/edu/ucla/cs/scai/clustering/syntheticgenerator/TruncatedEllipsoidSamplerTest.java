@@ -0,0 +1,243 @@
+/*
+ * Copyright 2014-2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clustering.syntheticgenerator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.function.Function;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that the truncated samplers draw the points of a cluster from the
+ * same distribution as the rejection sampler, comparing the histograms of
+ * the points generated with the two samplers by a two-sample chi-square
+ * test. The seeds are fixed, thus the tests are deterministic.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+class TruncatedEllipsoidSamplerTest {
+
+    /**
+     * A cluster crossing the border of the domain and the zero coordinate,
+     * where the integer truncation maps (-1, 1) to 0, comparing the whole
+     * points.
+     */
+    @Test
+    void sameDistributionNearTheBorder() throws IOException {
+        Range domain = new Range(new int[]{0, 0, 0}, new int[]{50, 50, 6});
+        int[][] centers = {{3, 25, 5}};
+        int[][] radii = {{6, 5, 3}};
+        compare(domain, centers, radii, null, 200000, p -> Arrays.toString(p));
+    }
+
+    @Test
+    void sameDistributionAtDimensionality16() throws IOException {
+        compareHighDimensional(16, 20, 200000);
+    }
+
+    @Test
+    void sameDistributionAtDimensionality24() throws IOException {
+        compareHighDimensional(24, 12, 100000);
+    }
+
+    @Test
+    void sameDistributionOfRotatedClusters() throws IOException {
+        int d = 8;
+        Range domain = domain(d, 0, 30);
+        int[][] centers = {new int[d]};
+        int[][] radii = {new int[d]};
+        for (int k = 0; k < d; k++) {
+            centers[0][k] = k < 2 ? 2 : 15;
+            radii[0][k] = 3 + k / 2;
+        }
+        ClusterCovariance covariance = ClusterCovariance.rotated(radii[0], new Random(7));
+        compareHistograms(domain, centers, radii, covariance, 100000, centers[0], radii[0]);
+    }
+
+    /**
+     * The fallback used when the alias tables would be too large, compared
+     * with the rejection sampler.
+     */
+    @Test
+    void sameDistributionFromTheEnclosingBall() throws IOException {
+        int d = 16;
+        int n = 200000;
+        Range domain = domain(d, 0, 200);
+        int[] center = new int[d];
+        int[] radius = new int[d];
+        for (int k = 0; k < d; k++) {
+            center[k] = k == 0 ? 10 : 100;
+            radius[k] = 12 + k;
+        }
+        TruncatedEllipsoidSampler sampler = new TruncatedEllipsoidSampler(center, radius, domain);
+        RandomSampler rand = RandomSampler.of(new SplittableRandom(3));
+        int[] points = new int[n * d];
+        double[] g = new double[d];
+        long[] rejections = new long[2];
+        for (int i = 0; i < n; i++) {
+            sampler.sampleBall(rand, points, i * d, g, rejections);
+        }
+        int[][] rejection = generate(domain, new int[][]{center}, new int[][]{radius}, null, n, GenerationPlan.ClusterSampling.REJECTION);
+        for (Function<int[], Object> key : keys(center, radius)) {
+            assertSame(histogram(rejection, key), histogram(split(points, d), key));
+        }
+    }
+
+    /**
+     * The acceptance rate of the tilted tables does not decrease
+     * exponentially with the dimensionality.
+     */
+    @Test
+    void fewRejectionsAtHighDimensionality() {
+        int d = 64;
+        Range domain = domain(d, 0, 100);
+        int[] center = new int[d];
+        int[] radius = new int[d];
+        Arrays.fill(center, 50);
+        Arrays.fill(radius, 12);
+        TruncatedEllipsoidSampler sampler = new TruncatedEllipsoidSampler(center, radius, domain);
+        RandomSampler rand = RandomSampler.of(new SplittableRandom(5));
+        int n = 20000;
+        int[] c = new int[d];
+        long[] rejections = new long[2];
+        for (int i = 0; i < n; i++) {
+            sampler.sample(rand, c, 0, new double[d], rejections);
+            assertTrue(DistanceKernel.relativeDistance(center, radius, c, 0) <= 1);
+        }
+        assertEquals(0, rejections[TruncatedEllipsoidSampler.DOMAIN]);
+        assertTrue(sampler.getLambda() > 0);
+        //about sqrt(pi d) attempts per point
+        assertTrue(rejections[TruncatedEllipsoidSampler.ELLIPSE] < 30L * n, "" + rejections[TruncatedEllipsoidSampler.ELLIPSE]);
+    }
+
+    private void compareHighDimensional(int d, int r, int n) throws IOException {
+        Range domain = domain(d, 0, 1000);
+        int[][] centers = {new int[d]};
+        int[][] radii = {new int[d]};
+        Arrays.fill(centers[0], 100);
+        Arrays.fill(radii[0], r);
+        //a coordinate crossing the border of the domain
+        centers[0][d - 1] = 3;
+        compareHistograms(domain, centers, radii, null, n, centers[0], radii[0]);
+    }
+
+    private void compareHistograms(Range domain, int[][] centers, int[][] radii, ClusterCovariance covariance, int n, int[] center, int[] radius) throws IOException {
+        int[][] rejection = generate(domain, centers, radii, covariance, n, GenerationPlan.ClusterSampling.REJECTION);
+        int[][] truncated = generate(domain, centers, radii, covariance, n, GenerationPlan.ClusterSampling.TRUNCATED);
+        for (Function<int[], Object> key : keys(center, radius)) {
+            assertSame(histogram(rejection, key), histogram(truncated, key));
+        }
+    }
+
+    /**
+     * The keys of the histograms compared for high-dimensional points: the
+     * relative distance, in bins of width 0.05, and the first and last
+     * coordinates.
+     */
+    private static Function<int[], Object>[] keys(int[] center, int[] radius) {
+        @SuppressWarnings("unchecked")
+        Function<int[], Object>[] keys = new Function[]{
+            (Function<int[], Object>) p -> (int) (20 * MultidimensionalGaussianGenerator.ellipticalRelativeDistance(center, radius, p)),
+            (Function<int[], Object>) p -> p[0],
+            (Function<int[], Object>) p -> p[p.length - 1]};
+        return keys;
+    }
+
+    private void compare(Range domain, int[][] centers, int[][] radii, ClusterCovariance covariance, int n, Function<int[], Object> key) throws IOException {
+        int[][] rejection = generate(domain, centers, radii, covariance, n, GenerationPlan.ClusterSampling.REJECTION);
+        int[][] truncated = generate(domain, centers, radii, covariance, n, GenerationPlan.ClusterSampling.TRUNCATED);
+        assertSame(histogram(rejection, key), histogram(truncated, key));
+    }
+
+    static Range domain(int d, int inf, int sup) {
+        int[] lo = new int[d];
+        int[] hi = new int[d];
+        Arrays.fill(lo, inf);
+        Arrays.fill(hi, sup);
+        return new Range(lo, hi);
+    }
+
+    static int[][] generate(Range domain, int[][] centers, int[][] radii, ClusterCovariance covariance, int n, GenerationPlan.ClusterSampling sampling) throws IOException {
+        GenerationPlan plan = new GenerationPlan(domain, centers, radii, new int[]{n}, 0, sampling.ordinal() + 11);
+        plan.setClusterSampling(sampling);
+        if (covariance != null) {
+            plan.setCovariance(0, covariance);
+        }
+        int d = domain.getInf().length;
+        int[] points = new int[n * d];
+        int[] size = new int[1];
+        MultidimensionalGaussianGenerator.forEachBlock(plan, 4096, block -> {
+            System.arraycopy(block.getCoords(), 0, points, size[0] * d, block.getSize() * d);
+            size[0] += block.getSize();
+        });
+        assertEquals(n, size[0]);
+        return split(points, d);
+    }
+
+    static int[][] split(int[] points, int d) {
+        int[][] p = new int[points.length / d][];
+        for (int i = 0; i < p.length; i++) {
+            p[i] = Arrays.copyOfRange(points, i * d, (i + 1) * d);
+        }
+        return p;
+    }
+
+    static TreeMap<String, Integer> histogram(int[][] points, Function<int[], Object> key) {
+        TreeMap<String, Integer> h = new TreeMap<>();
+        for (int[] p : points) {
+            h.merge(key.apply(p).toString(), 1, Integer::sum);
+        }
+        return h;
+    }
+
+    /**
+     * Asserts that two histograms with the same number of samples do not
+     * differ significantly: the bins with fewer than 10 samples in total are
+     * pooled, and the two-sample chi-square statistic must be within 5
+     * standard deviations of its mean, i.e., the number of degrees of
+     * freedom.
+     */
+    static void assertSame(TreeMap<String, Integer> h1, TreeMap<String, Integer> h2) {
+        TreeMap<String, Integer> all = new TreeMap<>(h1);
+        h2.forEach((k, v) -> all.merge(k, v, Integer::sum));
+        double statistic = 0;
+        int bins = 0;
+        long pooled1 = 0;
+        long pooled2 = 0;
+        for (String k : all.keySet()) {
+            long a = h1.getOrDefault(k, 0);
+            long b = h2.getOrDefault(k, 0);
+            if (a + b < 10) {
+                pooled1 += a;
+                pooled2 += b;
+            } else {
+                statistic += (double) (a - b) * (a - b) / (a + b);
+                bins++;
+            }
+        }
+        if (pooled1 + pooled2 > 0) {
+            statistic += (double) (pooled1 - pooled2) * (pooled1 - pooled2) / (pooled1 + pooled2);
+            bins++;
+        }
+        int df = Math.max(1, bins - 1);
+        assertTrue(statistic < df + 5 * Math.sqrt(2 * df), "chi-square " + statistic + " with " + df + " degrees of freedom");
+    }
+}